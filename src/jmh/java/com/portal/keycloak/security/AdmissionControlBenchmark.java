@@ -0,0 +1,62 @@
+package com.portal.keycloak.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of an admission check with 4 threads, all on one client (the most contended limiter) or spread over 100
+ * clients, for a client within its rate and for one that is being rejected.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class AdmissionControlBenchmark {
+
+    @Param({"1", "100"})
+    int clientCount;
+
+    @Param({"admitted", "rejected"})
+    String outcome;
+
+    private AdmissionControl admissionControl;
+
+    private String[] clientIds;
+
+    @Setup
+    public void setUp() {
+        double rate = "admitted".equals(outcome) ? 1e9 : 1;
+        admissionControl = new AdmissionControl(new AdmissionControl.Limit(rate, 1, 0), Map.of(), 1000);
+        clientIds = new String[clientCount];
+        for (int i = 0; i < clientCount; i++) {
+            clientIds[i] = "client-" + i;
+        }
+    }
+
+    @Benchmark
+    public AdmissionControl.Outcome acquireAndRelease() {
+        AdmissionControl.Client client = admissionControl.client(clientIds[ThreadLocalRandom.current().nextInt(clientCount)]);
+        AdmissionControl.Outcome result = client.tryAcquire();
+        if (result == AdmissionControl.Outcome.ADMITTED) {
+            client.release();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+package com.portal.keycloak.security;
+
+import com.portal.keycloak.config.ApplicationSecurityProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authority mapping on the request path: the bare {@link CustomJwtGrantedAuthoritiesConverter} with and without
+ * its per-token cache, and the complete {@link CustomJwtAuthenticationConverter} wired by {@link SecurityConfig}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthoritiesConverterBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    int roleCount;
+
+    private CustomJwtGrantedAuthoritiesConverter authoritiesConverter;
+
+    private CustomJwtAuthenticationConverter authenticationConverter;
+
+    private Jwt expiringJwt;
+
+    private Jwt nonExpiringJwt;
+
+    @Setup
+    public void setUp() {
+        SecurityConfig securityConfig = new SecurityConfig();
+        securityConfig.clientName = BenchmarkTokens.CLIENT;
+        securityConfig.securityProperties = new ApplicationSecurityProperties();
+
+        authoritiesConverter = new CustomJwtGrantedAuthoritiesConverter(BenchmarkTokens.CLIENT);
+        authenticationConverter = securityConfig.customJwtAuthenticationConverter();
+        expiringJwt = BenchmarkTokens.jwt(roleCount, true);
+        // Tokens without exp bypass the per-token cache, so this measures the raw claim walk
+        nonExpiringJwt = BenchmarkTokens.jwt(roleCount, false);
+    }
+
+    @Benchmark
+    public Collection<GrantedAuthority> convertCached() {
+        return authoritiesConverter.convert(expiringJwt);
+    }
+
+    @Benchmark
+    public Collection<GrantedAuthority> convertUncached() {
+        return authoritiesConverter.convert(nonExpiringJwt);
+    }
+
+    @Benchmark
+    public AbstractAuthenticationToken authenticationConverter() {
+        return authenticationConverter.convert(expiringJwt);
+    }
+}
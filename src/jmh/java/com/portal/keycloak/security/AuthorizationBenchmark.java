@@ -0,0 +1,93 @@
+package com.portal.keycloak.security;
+
+import com.portal.keycloak.config.ApplicationSecurityProperties;
+import com.portal.keycloak.controller.TestController;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.authorization.method.PreAuthorizeAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * {@code @PreAuthorize} checks on {@link TestController#getProducts()} through Spring Security's SpEL-based
+ * {@link PreAuthorizeAuthorizationManager} and through the {@link PrecompiledAuthorizationManager}, for a caller
+ * that holds the authority and for one that does not (the worst case of a linear scan).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthorizationBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    int roleCount;
+
+    private PreAuthorizeAuthorizationManager expressionManager;
+
+    private PrecompiledAuthorizationManager precompiledManager;
+
+    private Supplier<Authentication> authentication;
+
+    private MethodInvocation granted;
+
+    private MethodInvocation denied;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        SecurityConfig securityConfig = new SecurityConfig();
+        securityConfig.clientName = BenchmarkTokens.CLIENT;
+        securityConfig.securityProperties = new ApplicationSecurityProperties();
+        Authentication token = securityConfig.customJwtAuthenticationConverter().convert(BenchmarkTokens.jwt(roleCount, true));
+        authentication = () -> token;
+
+        expressionManager = new PreAuthorizeAuthorizationManager();
+        precompiledManager = new PrecompiledAuthorizationManager();
+        granted = new SimpleMethodInvocation(new TestController(), TestController.class.getMethod("getProducts"));
+        denied = new SimpleMethodInvocation(new OrdersEndpoint(), OrdersEndpoint.class.getMethod("getOrders"));
+    }
+
+    @Benchmark
+    public AuthorizationResult expressionGranted() {
+        return expressionManager.authorize(authentication, granted);
+    }
+
+    @Benchmark
+    public AuthorizationResult precompiledGranted() {
+        return precompiledManager.authorize(authentication, granted);
+    }
+
+    @Benchmark
+    public AuthorizationResult expressionDenied() {
+        return expressionManager.authorize(authentication, denied);
+    }
+
+    @Benchmark
+    public AuthorizationResult precompiledDenied() {
+        return precompiledManager.authorize(authentication, denied);
+    }
+
+    public static class OrdersEndpoint {
+
+        @PreAuthorize("hasAuthority('orders:write')")
+        public String getOrders() {
+            return "Hello Orders";
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.portal.keycloak.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keycloak shaped tokens and matching decoders built from locally generated keys, shared by the benchmarks.
+ */
+final class BenchmarkTokens {
+
+    static final String ISSUER = "http://localhost:8080/realms/customer";
+
+    static final String CLIENT = "department";
+
+    private BenchmarkTokens() {
+    }
+
+    static JWK generateKey(String algorithm) {
+        try {
+            if (JWSAlgorithm.Family.EC.contains(JWSAlgorithm.parse(algorithm))) {
+                return new ECKeyGenerator(Curve.P_256).keyID(UUID.randomUUID().toString()).generate();
+            }
+            return new RSAKeyGenerator(2048).keyID(UUID.randomUUID().toString()).generate();
+        }
+        catch (JOSEException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static String mint(JWK key, int roleCount) {
+        return mint(key, roleCount, 1);
+    }
+
+    /**
+     * Mint a signed token
+     * @param key Signing key
+     * @param roleCount Total number of realm and client roles of the configured client
+     * @param clientCount Number of clients in resource_access, each with as many roles as the configured client
+     * @return Serialized token
+     */
+    static String mint(JWK key, int roleCount, int clientCount) {
+        Map<String, Object> resourceAccess = new LinkedHashMap<>();
+        for (int i = 1; i < clientCount; i++) {
+            resourceAccess.put("other-client-" + i, Map.of("roles", clientRoles(roleCount)));
+        }
+        resourceAccess.put(CLIENT, Map.of("roles", clientRoles(roleCount)));
+        JWSAlgorithm algorithm = key instanceof ECKey ? JWSAlgorithm.ES256 : JWSAlgorithm.RS256;
+        Instant now = Instant.now();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject("service-account-" + CLIENT)
+                .jwtID(UUID.randomUUID().toString())
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(Duration.ofHours(1))))
+                .claim("azp", CLIENT)
+                .claim("realm_access", Map.of("roles", realmRoles(roleCount)))
+                .claim("resource_access", resourceAccess)
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(algorithm).type(JOSEObjectType.JWT).keyID(key.getKeyID()).build(),
+                claims);
+        try {
+            JWSSigner signer = key instanceof ECKey ecKey ? new ECDSASigner(ecKey) : new RSASSASigner((RSAKey) key);
+            jwt.sign(signer);
+        }
+        catch (JOSEException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return jwt.serialize();
+    }
+
+    static JwtDecoder decoder(JWK key) {
+        return decoder(key, new DefaultJWTProcessor<>());
+    }
+
+    /**
+     * Build a decoder for tokens signed by a key
+     * @param key Signing key
+     * @param jwtProcessor Processor to configure with the key, either Nimbus' own or a {@link RoleClaimsJwtProcessor}
+     * @return Decoder validating the issuer like the application does
+     */
+    static JwtDecoder decoder(JWK key, DefaultJWTProcessor<SecurityContext> jwtProcessor) {
+        JWSAlgorithm algorithm = key instanceof ECKey ? JWSAlgorithm.ES256 : JWSAlgorithm.RS256;
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(algorithm,
+                new ImmutableJWKSet<>(new JWKSet(key.toPublicJWK()))));
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(jwtProcessor);
+        decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(ISSUER));
+        return decoder;
+    }
+
+    /**
+     * Build an already decoded token
+     * @param roleCount Total number of realm and client roles
+     * @param expiring Whether the token carries exp, which makes it eligible for per-token caching
+     * @return Decoded token
+     */
+    static Jwt jwt(int roleCount, boolean expiring) {
+        Instant now = Instant.now();
+        Jwt.Builder builder = Jwt.withTokenValue(UUID.randomUUID().toString())
+                .header("alg", "RS256")
+                .issuer(ISSUER)
+                .subject("service-account-" + CLIENT)
+                .jti(UUID.randomUUID().toString())
+                .issuedAt(now)
+                .claim("azp", CLIENT)
+                .claim("realm_access", Map.of("roles", realmRoles(roleCount)))
+                .claim("resource_access", Map.of(CLIENT, Map.of("roles", clientRoles(roleCount))));
+        if (expiring) {
+            builder.expiresAt(now.plus(Duration.ofHours(1)));
+        }
+        return builder.build();
+    }
+
+    static List<String> realmRoles(int roleCount) {
+        List<String> roles = new ArrayList<>();
+        for (int i = 0; i < roleCount / 2; i++) {
+            roles.add("realm-role-" + i);
+        }
+        return roles;
+    }
+
+    static List<String> clientRoles(int roleCount) {
+        List<String> roles = new ArrayList<>();
+        roles.add("products:read");
+        for (int i = 1; i < roleCount - roleCount / 2; i++) {
+            roles.add("client-role-" + i);
+        }
+        return roles;
+    }
+}
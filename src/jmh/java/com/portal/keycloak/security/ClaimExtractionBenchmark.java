@@ -0,0 +1,62 @@
+package com.portal.keycloak.security;
+
+import com.nimbusds.jose.jwk.JWK;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Claim parsing of large tokens, by Nimbus into a generic map and by the {@link RoleClaimsJwtProcessor} that keeps
+ * only the configured client's roles. Tokens are signed with ES256, whose verification is cheap enough for the
+ * parsing to show; run with {@code -prof gc} to compare the allocation per decoded token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClaimExtractionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int roleCount;
+
+    @Param({"1", "20"})
+    int clientCount;
+
+    private JwtDecoder nimbusDecoder;
+
+    private JwtDecoder streamingDecoder;
+
+    private String token;
+
+    @Setup
+    public void setUp() {
+        JWK key = BenchmarkTokens.generateKey("ES256");
+        nimbusDecoder = BenchmarkTokens.decoder(key);
+        streamingDecoder = BenchmarkTokens.decoder(key, new RoleClaimsJwtProcessor(BenchmarkTokens.CLIENT));
+        token = BenchmarkTokens.mint(key, roleCount, clientCount);
+    }
+
+    @Benchmark
+    public Jwt decodeNimbus() {
+        return nimbusDecoder.decode(token);
+    }
+
+    @Benchmark
+    public Jwt decodeStreaming() {
+        return streamingDecoder.decode(token);
+    }
+}
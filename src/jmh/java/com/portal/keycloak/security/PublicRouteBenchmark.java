@@ -0,0 +1,121 @@
+package com.portal.keycloak.security;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.portal.keycloak.KeycloakApplication;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.servlet.Filter;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of the security filters on the public {@code /api/v2/customers} route, with the dedicated
+ * public filter chain and, as before it, with the route permitted inside the bearer token chain. Requests carry no
+ * token, a valid one or one signed by an unknown key; only the security filters run, not the controller.
+ * <p>
+ * The application context is started against a JWKS served from the benchmark, so the bearer token chain verifies
+ * tokens as in production. Compare the {@code publicChain} parameter values per {@code authorization}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+// The full filter chains take a while to be compiled
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PublicRouteBenchmark {
+
+    @Param({"true", "false"})
+    boolean publicChain;
+
+    @Param({"none", "valid", "invalid"})
+    String authorization;
+
+    private HttpServer keySetServer;
+
+    private ConfigurableApplicationContext context;
+
+    private Filter springSecurityFilterChain;
+
+    private ServletContext servletContext;
+
+    private String header;
+
+    @Setup
+    public void setUp() throws IOException {
+        JWK key = BenchmarkTokens.generateKey("RS256");
+        byte[] keySet = new JWKSet(key.toPublicJWK()).toString().getBytes(StandardCharsets.UTF_8);
+        keySetServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        keySetServer.createContext("/certs", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, keySet.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(keySet);
+            }
+        });
+        keySetServer.start();
+
+        // Passed as arguments, which take precedence over application.yml
+        context = new SpringApplicationBuilder(KeycloakApplication.class)
+                .run("--server.port=-1",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=warn",
+                        "--spring.security.oauth2.resourceserver.jwt.issuer-uri=" + BenchmarkTokens.ISSUER,
+                        "--application.security.issuer.jwk-set-uri=http://" + keySetServer.getAddress().getHostString()
+                                + ":" + keySetServer.getAddress().getPort() + "/certs",
+                        "--application.security.public-chain.enabled=" + publicChain);
+        springSecurityFilterChain = context.getBean("springSecurityFilterChain", Filter.class);
+        servletContext = context.getBean(ServletContext.class);
+        DeferredJwtDecoder decoder = context.getBean(DeferredJwtDecoder.class);
+        while (!decoder.isReady()) {
+            Thread.onSpinWait();
+        }
+
+        header = switch (authorization) {
+            case "valid" -> "Bearer " + BenchmarkTokens.mint(key, 10);
+            case "invalid" -> "Bearer " + BenchmarkTokens.mint(BenchmarkTokens.generateKey("RS256"), 10);
+            default -> null;
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        keySetServer.stop(0);
+    }
+
+    @Benchmark
+    public int customers() throws IOException, ServletException {
+        MockHttpServletRequest request = new MockHttpServletRequest(servletContext, "GET", "/api/v2/customers");
+        if (header != null) {
+            request.addHeader("Authorization", header);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        springSecurityFilterChain.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,589 @@
+package com.portal.keycloak.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "application.security")
+public class ApplicationSecurityProperties {
+
+    private AuthoritiesCache authoritiesCache = new AuthoritiesCache();
+    private JwtCache jwtCache = new JwtCache();
+    private Issuer issuer = new Issuer();
+    private Jwks jwks = new Jwks();
+    private Metrics metrics = new Metrics();
+    private Tenants tenants = new Tenants();
+    private OpaqueToken opaqueToken = new OpaqueToken();
+    private Revocation revocation = new Revocation();
+    private PublicChain publicChain = new PublicChain();
+    private Admission admission = new Admission();
+    private ResponseCache responseCache = new ResponseCache();
+
+    public AuthoritiesCache getAuthoritiesCache() {
+        return authoritiesCache;
+    }
+
+    public void setAuthoritiesCache(AuthoritiesCache authoritiesCache) {
+        this.authoritiesCache = authoritiesCache;
+    }
+
+    public JwtCache getJwtCache() {
+        return jwtCache;
+    }
+
+    public void setJwtCache(JwtCache jwtCache) {
+        this.jwtCache = jwtCache;
+    }
+
+    public Issuer getIssuer() {
+        return issuer;
+    }
+
+    public void setIssuer(Issuer issuer) {
+        this.issuer = issuer;
+    }
+
+    public Jwks getJwks() {
+        return jwks;
+    }
+
+    public void setJwks(Jwks jwks) {
+        this.jwks = jwks;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Tenants getTenants() {
+        return tenants;
+    }
+
+    public void setTenants(Tenants tenants) {
+        this.tenants = tenants;
+    }
+
+    public OpaqueToken getOpaqueToken() {
+        return opaqueToken;
+    }
+
+    public void setOpaqueToken(OpaqueToken opaqueToken) {
+        this.opaqueToken = opaqueToken;
+    }
+
+    public Revocation getRevocation() {
+        return revocation;
+    }
+
+    public void setRevocation(Revocation revocation) {
+        this.revocation = revocation;
+    }
+
+    public PublicChain getPublicChain() {
+        return publicChain;
+    }
+
+    public void setPublicChain(PublicChain publicChain) {
+        this.publicChain = publicChain;
+    }
+
+    public Admission getAdmission() {
+        return admission;
+    }
+
+    public void setAdmission(Admission admission) {
+        this.admission = admission;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public static class AuthoritiesCache {
+        private long maximumSize = 10_000;
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+    }
+
+    public static class JwtCache {
+        private boolean enabled = true;
+        private long maximumSize = 10_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+    }
+
+    public static class Issuer {
+        private String jwkSetUri;
+        private Duration initialBackoff = Duration.ofMillis(500);
+        private Duration maxBackoff = Duration.ofSeconds(30);
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration readTimeout = Duration.ofSeconds(5);
+
+        public String getJwkSetUri() {
+            return jwkSetUri;
+        }
+
+        public void setJwkSetUri(String jwkSetUri) {
+            this.jwkSetUri = jwkSetUri;
+        }
+
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Duration getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+    }
+
+    public static class Jwks {
+        private Duration refreshInterval = Duration.ofMinutes(5);
+        private Duration minRefetchInterval = Duration.ofSeconds(10);
+        private Duration negativeCacheTtl = Duration.ofMinutes(1);
+        private long negativeCacheMaximumSize = 1_000;
+
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
+
+        public Duration getMinRefetchInterval() {
+            return minRefetchInterval;
+        }
+
+        public void setMinRefetchInterval(Duration minRefetchInterval) {
+            this.minRefetchInterval = minRefetchInterval;
+        }
+
+        public Duration getNegativeCacheTtl() {
+            return negativeCacheTtl;
+        }
+
+        public void setNegativeCacheTtl(Duration negativeCacheTtl) {
+            this.negativeCacheTtl = negativeCacheTtl;
+        }
+
+        public long getNegativeCacheMaximumSize() {
+            return negativeCacheMaximumSize;
+        }
+
+        public void setNegativeCacheMaximumSize(long negativeCacheMaximumSize) {
+            this.negativeCacheMaximumSize = negativeCacheMaximumSize;
+        }
+    }
+
+    public static class Metrics {
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    public static class Tenants {
+        private boolean enabled = false;
+        private List<String> trustedIssuers = new ArrayList<>();
+        private Map<String, String> clients = new LinkedHashMap<>();
+        private long maximumSize = 100;
+        private Duration expireAfterAccess = Duration.ofHours(1);
+        private long maximumPerPattern = 20;
+        private Duration negativeCacheTtl = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getTrustedIssuers() {
+            return trustedIssuers;
+        }
+
+        public void setTrustedIssuers(List<String> trustedIssuers) {
+            this.trustedIssuers = trustedIssuers;
+        }
+
+        public Map<String, String> getClients() {
+            return clients;
+        }
+
+        public void setClients(Map<String, String> clients) {
+            this.clients = clients;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getExpireAfterAccess() {
+            return expireAfterAccess;
+        }
+
+        public void setExpireAfterAccess(Duration expireAfterAccess) {
+            this.expireAfterAccess = expireAfterAccess;
+        }
+
+        public long getMaximumPerPattern() {
+            return maximumPerPattern;
+        }
+
+        public void setMaximumPerPattern(long maximumPerPattern) {
+            this.maximumPerPattern = maximumPerPattern;
+        }
+
+        public Duration getNegativeCacheTtl() {
+            return negativeCacheTtl;
+        }
+
+        public void setNegativeCacheTtl(Duration negativeCacheTtl) {
+            this.negativeCacheTtl = negativeCacheTtl;
+        }
+    }
+
+    public static class OpaqueToken {
+        private boolean enabled = false;
+        private String introspectionUri;
+        private String clientId;
+        private String clientSecret;
+        private long maximumSize = 10_000;
+        private Duration maxTimeToLive = Duration.ofMinutes(1);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getIntrospectionUri() {
+            return introspectionUri;
+        }
+
+        public void setIntrospectionUri(String introspectionUri) {
+            this.introspectionUri = introspectionUri;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public void setClientId(String clientId) {
+            this.clientId = clientId;
+        }
+
+        public String getClientSecret() {
+            return clientSecret;
+        }
+
+        public void setClientSecret(String clientSecret) {
+            this.clientSecret = clientSecret;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getMaxTimeToLive() {
+            return maxTimeToLive;
+        }
+
+        public void setMaxTimeToLive(Duration maxTimeToLive) {
+            this.maxTimeToLive = maxTimeToLive;
+        }
+    }
+
+    public static class Revocation {
+        private boolean enabled = false;
+        private Duration tokenLifetime = Duration.ofHours(1);
+        private int expectedRevocations = 10_000;
+        private Events events = new Events();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getTokenLifetime() {
+            return tokenLifetime;
+        }
+
+        public void setTokenLifetime(Duration tokenLifetime) {
+            this.tokenLifetime = tokenLifetime;
+        }
+
+        public int getExpectedRevocations() {
+            return expectedRevocations;
+        }
+
+        public void setExpectedRevocations(int expectedRevocations) {
+            this.expectedRevocations = expectedRevocations;
+        }
+
+        public Events getEvents() {
+            return events;
+        }
+
+        public void setEvents(Events events) {
+            this.events = events;
+        }
+
+        public static class Events {
+            private boolean enabled = false;
+            private String clientId;
+            private String clientSecret;
+            private Duration pollInterval = Duration.ofSeconds(10);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getClientId() {
+                return clientId;
+            }
+
+            public void setClientId(String clientId) {
+                this.clientId = clientId;
+            }
+
+            public String getClientSecret() {
+                return clientSecret;
+            }
+
+            public void setClientSecret(String clientSecret) {
+                this.clientSecret = clientSecret;
+            }
+
+            public Duration getPollInterval() {
+                return pollInterval;
+            }
+
+            public void setPollInterval(Duration pollInterval) {
+                this.pollInterval = pollInterval;
+            }
+        }
+    }
+
+    public static class PublicChain {
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    public static class Admission {
+        private boolean enabled = false;
+        private double rate = 500;
+        private int burst = 100;
+        private int maxConcurrent = 64;
+        private Map<String, ClientLimit> clients = new LinkedHashMap<>();
+        private int maximumClients = 1_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public Map<String, ClientLimit> getClients() {
+            return clients;
+        }
+
+        public void setClients(Map<String, ClientLimit> clients) {
+            this.clients = clients;
+        }
+
+        public int getMaximumClients() {
+            return maximumClients;
+        }
+
+        public void setMaximumClients(int maximumClients) {
+            this.maximumClients = maximumClients;
+        }
+
+        /**
+         * Limits of one client; unset values are taken from the defaults
+         */
+        public static class ClientLimit {
+            private Double rate;
+            private Integer burst;
+            private Integer maxConcurrent;
+
+            public Double getRate() {
+                return rate;
+            }
+
+            public void setRate(Double rate) {
+                this.rate = rate;
+            }
+
+            public Integer getBurst() {
+                return burst;
+            }
+
+            public void setBurst(Integer burst) {
+                this.burst = burst;
+            }
+
+            public Integer getMaxConcurrent() {
+                return maxConcurrent;
+            }
+
+            public void setMaxConcurrent(Integer maxConcurrent) {
+                this.maxConcurrent = maxConcurrent;
+            }
+        }
+    }
+
+    public static class ResponseCache {
+        private boolean enabled = true;
+        private long maximumSize = 10_000;
+        private Duration timeToLive = Duration.ofMinutes(1);
+        private int gzipMinSize = 256;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getTimeToLive() {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        public int getGzipMinSize() {
+            return gzipMinSize;
+        }
+
+        public void setGzipMinSize(int gzipMinSize) {
+            this.gzipMinSize = gzipMinSize;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.portal.keycloak.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Runs the reactive profile on Reactor Netty. Tomcat is on the classpath for the servlet stack and would otherwise
+ * be picked, and its thread-per-request model defeats the point of the reactive pipeline.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServerConfig {
+
+    /**
+     * Number of event-loop threads, 0 keeps Reactor Netty's default of one per CPU
+     */
+    @Value("${application.reactive.event-loop-threads:0}")
+    public int eventLoopThreads;
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory();
+        if (eventLoopThreads > 0) {
+            LoopResources loopResources = LoopResources.create("http", 1, eventLoopThreads, true);
+            factory.addServerCustomizers(server -> server.runOn(loopResources));
+        }
+        return factory;
+    }
+}
@@ -0,0 +1,43 @@
+package com.portal.keycloak.controller;
+
+import com.portal.keycloak.security.BackChannelLogout;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Back-channel logout endpoint, to be set as the backchannel logout URL of the client in Keycloak
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "application.security.revocation", name = "enabled", havingValue = "true")
+public class BackChannelLogoutController {
+
+    public static final String PATH = "/logout/back-channel";
+
+    private final BackChannelLogout backChannelLogout;
+
+    public BackChannelLogoutController(BackChannelLogout backChannelLogout) {
+        this.backChannelLogout = backChannelLogout;
+    }
+
+    @PostMapping(path = PATH, consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<Map<String, String>> logout(@RequestParam("logout_token") String logoutToken) {
+        try {
+            this.backChannelLogout.logout(logoutToken);
+            return ResponseEntity.ok().cacheControl(CacheControl.noStore()).build();
+        }
+        catch (JwtException ex) {
+            return ResponseEntity.badRequest().cacheControl(CacheControl.noStore())
+                    .body(Map.of("error", "invalid_request", "error_description", ex.getMessage()));
+        }
+    }
+}
@@ -1,20 +1,25 @@
 package com.portal.keycloak.controller;
 
+import com.portal.keycloak.web.CachedResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/v2")
 public class TestController {
 
 
+    @CachedResponse
     @GetMapping("/customers")
     public String getCustomers() {
         return "Hello Customers";
     }
 
+    @CachedResponse
     @PreAuthorize("hasAuthority('products:read')")
     @GetMapping("/products")
     public String getProducts() {
@@ -0,0 +1,26 @@
+package com.portal.keycloak.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * Functional routes serving the {@link TestController} endpoints when the application runs on WebFlux.
+ * Authorization of {@code /api/v2/products} is enforced by the {@code SecurityWebFilterChain}.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class TestRoutes {
+
+    @Bean
+    public RouterFunction<ServerResponse> testRouterFunction() {
+        return RouterFunctions.route()
+                .path("/api/v2", builder -> builder
+                        .GET("/customers", request -> ServerResponse.ok().bodyValue("Hello Customers"))
+                        .GET("/products", request -> ServerResponse.ok().bodyValue("Hello Products")))
+                .build();
+    }
+}
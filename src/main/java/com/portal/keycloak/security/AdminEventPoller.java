@@ -0,0 +1,275 @@
+package com.portal.keycloak.security;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestOperations;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Polls the realm's event store for logouts and account changes and adds them to the {@link RevocationList}, for
+ * sessions that end without a back-channel logout, such as users disabled, deleted or logged out by an administrator.
+ * <p>
+ * User {@code LOGOUT} events revoke their session; admin events that delete a user, log them out or disable them
+ * revoke every token of the user issued until then, and deleted user sessions revoke that session. The admin API is
+ * called as a service account with the {@code view-events} and {@code view-users} roles. Disabled users are read from
+ * the representation of the update, which Keycloak only records with "Include representation" enabled for admin
+ * events; without it the user is looked up after each update. After a start the poller catches up on the events of
+ * the last token lifetime, so an instance that was down does not accept tokens revoked in the meantime.
+ */
+public class AdminEventPoller implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(AdminEventPoller.class);
+
+    private static final ParameterizedTypeReference<List<Map<String, Object>>> EVENTS = new ParameterizedTypeReference<>() {
+    };
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC);
+
+    private static final int PAGE_SIZE = 500;
+
+    private final RestOperations restOperations;
+
+    private final String adminRealmUri;
+
+    private final String tokenUri;
+
+    private final String clientId;
+
+    private final String clientSecret;
+
+    private final Duration pollInterval;
+
+    private final Duration tokenLifetime;
+
+    private final RevocationList revocationList;
+
+    private final ThreadFactory threadFactory;
+
+    private String accessToken;
+
+    private long accessTokenExpiresAt;
+
+    // Event times are in milliseconds; events at the watermark itself are read again, which revokes nothing new
+    private long userEventsWatermark;
+
+    private long adminEventsWatermark;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param issuerUri Realm URI, e.g. {@code http://localhost:8080/realms/customer}
+     * @param tokenLifetime Longest access token lifetime, how far back the first poll reads
+     */
+    public AdminEventPoller(RestOperations restOperations, String issuerUri, String clientId, String clientSecret,
+                            Duration pollInterval, Duration tokenLifetime, RevocationList revocationList,
+                            ThreadFactory threadFactory) {
+        this.restOperations = restOperations;
+        this.adminRealmUri = issuerUri.replaceFirst("/realms/", "/admin/realms/");
+        this.tokenUri = issuerUri + "/protocol/openid-connect/token";
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.pollInterval = pollInterval;
+        this.tokenLifetime = tokenLifetime;
+        this.revocationList = revocationList;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Read the events since the last poll and revoke what they name. Only called by the poller thread.
+     */
+    void poll() {
+        this.userEventsWatermark = read("events", this.userEventsWatermark, this::applyUserEvent);
+        this.adminEventsWatermark = read("admin-events", this.adminEventsWatermark, this::applyAdminEvent);
+    }
+
+    private long read(String resource, long watermark, BiConsumer<Map<String, Object>, Instant> handler) {
+        long latest = watermark;
+        for (int first = 0; ; first += PAGE_SIZE) {
+            // The date filter has a resolution of a day, the watermark is applied to the events it returns
+            URI uri = UriComponentsBuilder.fromUriString(this.adminRealmUri)
+                    .path("/" + resource)
+                    .queryParam("dateFrom", DATE.format(Instant.ofEpochMilli(watermark)))
+                    .queryParam("first", first)
+                    .queryParam("max", PAGE_SIZE)
+                    .build()
+                    .toUri();
+            List<Map<String, Object>> events = this.restOperations.exchange(RequestEntity.get(uri)
+                    .headers(headers -> headers.setBearerAuth(accessToken()))
+                    .build(), EVENTS).getBody();
+            if (events == null || events.isEmpty()) {
+                return latest;
+            }
+            // Newest first, so once an event is older than the watermark the remaining pages are as well
+            boolean older = false;
+            for (Map<String, Object> event : events) {
+                long time = event.get("time") instanceof Number number ? number.longValue() : 0;
+                if (time < watermark) {
+                    older = true;
+                    break;
+                }
+                try {
+                    handler.accept(event, Instant.ofEpochMilli(time));
+                }
+                catch (RestClientException | IllegalStateException ex) {
+                    throw ex;
+                }
+                catch (RuntimeException ex) {
+                    // Skipped rather than read again on every poll, which would hold back the events after it
+                    log.error("Failed to apply the {} event of {} at {}", resource, this.adminRealmUri, Instant.ofEpochMilli(time), ex);
+                }
+                latest = Math.max(latest, time);
+            }
+            if (older || events.size() < PAGE_SIZE) {
+                return latest;
+            }
+        }
+    }
+
+    private void applyUserEvent(Map<String, Object> event, Instant time) {
+        if ("LOGOUT".equals(event.get("type")) && event.get("sessionId") instanceof String sessionId) {
+            this.revocationList.revokeSession(sessionId);
+        }
+    }
+
+    private void applyAdminEvent(Map<String, Object> event, Instant time) {
+        if (!(event.get("resourcePath") instanceof String path)) {
+            return;
+        }
+        String[] segments = path.split("/");
+        Object operation = event.get("operationType");
+        if ("USER".equals(event.get("resourceType")) && segments.length >= 2 && "users".equals(segments[0])) {
+            String userId = segments[1];
+            boolean deleted = "DELETE".equals(operation) && segments.length == 2;
+            boolean loggedOut = "ACTION".equals(operation) && segments.length == 3 && "logout".equals(segments[2]);
+            boolean disabled = "UPDATE".equals(operation) && segments.length == 2 && isDisabled(userId, event);
+            if (deleted || loggedOut || disabled) {
+                this.revocationList.revokeSubject(userId, time);
+            }
+        }
+        else if ("USER_SESSION".equals(event.get("resourceType")) && "DELETE".equals(operation)) {
+            this.revocationList.revokeSession(segments[segments.length - 1]);
+        }
+    }
+
+    /**
+     * Check whether a user update disabled the account
+     * @param userId Updated user
+     * @param event Admin event of the update
+     * @return Whether the account is now disabled or gone
+     */
+    private boolean isDisabled(String userId, Map<String, Object> event) {
+        if (event.get("representation") instanceof String representation) {
+            try {
+                JsonNode enabled = JSON.readTree(representation).path("enabled");
+                if (enabled.isBoolean()) {
+                    return !enabled.booleanValue();
+                }
+            }
+            catch (JsonProcessingException ex) {
+                log.debug("Unreadable representation of user {}, looking the user up: {}", userId, ex.getMessage());
+            }
+        }
+        // Without "Include representation" on the realm's admin events, the account is read as it is now
+        URI uri = UriComponentsBuilder.fromUriString(this.adminRealmUri)
+                .path("/users/{id}")
+                .buildAndExpand(userId)
+                .toUri();
+        try {
+            Map<?, ?> user = this.restOperations.exchange(RequestEntity.get(uri)
+                    .headers(headers -> headers.setBearerAuth(accessToken()))
+                    .build(), Map.class).getBody();
+            return user == null || Boolean.FALSE.equals(user.get("enabled"));
+        }
+        catch (HttpClientErrorException.NotFound ex) {
+            return true;
+        }
+    }
+
+    private String accessToken() {
+        if (this.accessToken == null || System.currentTimeMillis() >= this.accessTokenExpiresAt) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+            headers.setBasicAuth(this.clientId, this.clientSecret);
+            MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+            form.add("grant_type", "client_credentials");
+            Map<?, ?> response = this.restOperations.postForObject(this.tokenUri, new HttpEntity<>(form, headers), Map.class);
+            if (response == null || !(response.get("access_token") instanceof String token)) {
+                throw new IllegalStateException("The token response of " + this.tokenUri + " has no access_token");
+            }
+            long expiresIn = response.get("expires_in") instanceof Number number ? number.longValue() : 60;
+            this.accessToken = token;
+            // Renewed a little early, so it does not expire between the two event requests of a poll
+            this.accessTokenExpiresAt = System.currentTimeMillis() + Math.max(expiresIn - 10, 1) * 1000;
+        }
+        return this.accessToken;
+    }
+
+    private void pollInBackground() {
+        try {
+            poll();
+        }
+        catch (RestClientException | IllegalStateException ex) {
+            this.accessToken = null;
+            log.warn("Failed to poll the events of {}, retrying in {}: {}", this.adminRealmUri, this.pollInterval,
+                    ex.getMessage());
+        }
+        catch (RuntimeException ex) {
+            // Caught so the scheduler does not cancel the polling
+            this.accessToken = null;
+            log.error("Failed to poll the events of {}, retrying in {}", this.adminRealmUri, this.pollInterval, ex);
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (this.scheduler != null) {
+            return;
+        }
+        long catchUp = System.currentTimeMillis() - this.tokenLifetime.toMillis();
+        this.userEventsWatermark = Math.max(this.userEventsWatermark, catchUp);
+        this.adminEventsWatermark = Math.max(this.adminEventsWatermark, catchUp);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(this.threadFactory);
+        this.scheduler.scheduleWithFixedDelay(this::pollInBackground, 0, this.pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return this.scheduler != null;
+    }
+}
@@ -0,0 +1,203 @@
+package com.portal.keycloak.security;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-client rate and concurrency limits, keyed by the authorized party ({@code azp}) of the token.
+ * <p>
+ * The rate is enforced with the generic cell rate algorithm: a client's whole bucket is one theoretical arrival time
+ * in an {@link AtomicLong}, advanced by one emission interval per admitted request with a single compare-and-set, so
+ * admission takes no lock and allocates nothing, and a rejection does not even write. Concurrent requests are counted
+ * in an {@link AtomicInteger}. Clients are looked up without locking once they are known; at most
+ * {@code maximumClients} get their own limits, and any further clients share one.
+ */
+public class AdmissionControl {
+
+    /**
+     * Outcome of an admission check
+     */
+    public enum Outcome {
+        ADMITTED, RATE_LIMITED, CONCURRENCY_LIMITED
+    }
+
+    static final String OTHER_CLIENTS = "other";
+
+    private final Limit defaultLimit;
+
+    private final Map<String, Limit> clientLimits;
+
+    private final int maximumClients;
+
+    private final LongSupplier nanoTime;
+
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    private SecurityMetrics metrics = SecurityMetrics.NOOP;
+
+    /**
+     * @param defaultLimit Limit of clients without their own
+     * @param clientLimits Limits per client ID
+     * @param maximumClients Clients tracked separately, bounding the memory and the metric tags
+     */
+    public AdmissionControl(Limit defaultLimit, Map<String, Limit> clientLimits, int maximumClients) {
+        this(defaultLimit, clientLimits, maximumClients, System::nanoTime);
+    }
+
+    AdmissionControl(Limit defaultLimit, Map<String, Limit> clientLimits, int maximumClients, LongSupplier nanoTime) {
+        this.defaultLimit = defaultLimit;
+        this.clientLimits = Map.copyOf(clientLimits);
+        this.maximumClients = maximumClients;
+        this.nanoTime = nanoTime;
+    }
+
+    public void setMetrics(SecurityMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the limiter of a client, created on its first request
+     * @param clientId Authorized party of the token
+     * @return Limiter of the client, or the one shared by the clients beyond the maximum
+     */
+    public Client client(String clientId) {
+        Client client = this.clients.get(clientId);
+        if (client != null) {
+            return client;
+        }
+        String key = this.clients.size() < this.maximumClients || this.clientLimits.containsKey(clientId)
+                ? clientId
+                : OTHER_CLIENTS;
+        return this.clients.computeIfAbsent(key, this::newClient);
+    }
+
+    public int getClientCount() {
+        return this.clients.size();
+    }
+
+    private Client newClient(String clientId) {
+        Client client = new Client(clientId, this.clientLimits.getOrDefault(clientId, this.defaultLimit), this.nanoTime);
+        this.metrics.bindAdmissionClient(client);
+        return client;
+    }
+
+    /**
+     * Limit of a client
+     * @param rate Requests per second, 0 for no rate limit
+     * @param burst Requests admitted at once on top of the rate, at least 1
+     * @param maxConcurrent Requests in progress at once, 0 for no limit
+     */
+    public record Limit(double rate, int burst, int maxConcurrent) {
+    }
+
+    /**
+     * Limiter of one client
+     */
+    public static final class Client {
+
+        private final String clientId;
+
+        private final long emissionInterval;
+
+        private final long burstTolerance;
+
+        private final int maxConcurrent;
+
+        private final LongSupplier nanoTime;
+
+        private final AtomicLong theoreticalArrival;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final LongAdder admitted = new LongAdder();
+
+        private final LongAdder rateLimited = new LongAdder();
+
+        private final LongAdder concurrencyLimited = new LongAdder();
+
+        Client(String clientId, Limit limit, LongSupplier nanoTime) {
+            this.clientId = clientId;
+            this.emissionInterval = limit.rate() > 0 ? Math.max(1, (long) (1_000_000_000L / limit.rate())) : 0;
+            this.burstTolerance = this.emissionInterval * Math.max(1, limit.burst());
+            this.maxConcurrent = limit.maxConcurrent() > 0 ? limit.maxConcurrent() : Integer.MAX_VALUE;
+            this.nanoTime = nanoTime;
+            this.theoreticalArrival = new AtomicLong(nanoTime.getAsLong());
+        }
+
+        /**
+         * Admit a request, which has to be {@link #release() released} when it completes if it was admitted
+         * @return Whether the request may proceed, or which limit it exceeds
+         */
+        public Outcome tryAcquire() {
+            // The concurrency slot is taken first, so a request turned away for it does not spend rate allowance
+            if (this.inFlight.incrementAndGet() > this.maxConcurrent) {
+                this.inFlight.decrementAndGet();
+                this.concurrencyLimited.increment();
+                return Outcome.CONCURRENCY_LIMITED;
+            }
+            if (this.emissionInterval > 0 && !conforms()) {
+                this.inFlight.decrementAndGet();
+                this.rateLimited.increment();
+                return Outcome.RATE_LIMITED;
+            }
+            this.admitted.increment();
+            return Outcome.ADMITTED;
+        }
+
+        public void release() {
+            this.inFlight.decrementAndGet();
+        }
+
+        /**
+         * Get the time until the next request would conform to the rate
+         * @return Nanoseconds to wait, 0 if a request would be admitted now
+         */
+        public long nanosUntilAvailable() {
+            if (this.emissionInterval == 0) {
+                return 0;
+            }
+            long now = this.nanoTime.getAsLong();
+            long wait = this.theoreticalArrival.get() + this.emissionInterval - now - this.burstTolerance;
+            return Math.max(0, wait);
+        }
+
+        private boolean conforms() {
+            long now = this.nanoTime.getAsLong();
+            while (true) {
+                long arrival = this.theoreticalArrival.get();
+                // Idle clients have an arrival time in the past, they start again from now with a full burst
+                long next = (arrival - now < 0 ? now : arrival) + this.emissionInterval;
+                if (next - now > this.burstTolerance) {
+                    return false;
+                }
+                if (this.theoreticalArrival.compareAndSet(arrival, next)) {
+                    return true;
+                }
+            }
+        }
+
+        public String getClientId() {
+            return this.clientId;
+        }
+
+        public int getInFlight() {
+            return this.inFlight.get();
+        }
+
+        public long getAdmittedCount() {
+            return this.admitted.sum();
+        }
+
+        public long getRateLimitedCount() {
+            return this.rateLimited.sum();
+        }
+
+        public long getConcurrencyLimitedCount() {
+            return this.concurrencyLimited.sum();
+        }
+    }
+}
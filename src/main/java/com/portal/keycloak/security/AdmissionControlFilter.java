@@ -0,0 +1,69 @@
+package com.portal.keycloak.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.oauth2.server.resource.authentication.AbstractOAuth2TokenAuthenticationToken;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies {@link AdmissionControl} right after the bearer token has been authenticated, before authorization and
+ * the controller. Requests over a client's limit are answered with a bare 429 and a {@code Retry-After} header from
+ * a fixed set of strings, without a body or an error dispatch, so turning them away stays cheap under overload.
+ * Unauthenticated requests pass through and are rejected by authorization as before.
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final String[] RETRY_AFTER_SECONDS = new String[61];
+
+    static {
+        for (int seconds = 0; seconds < RETRY_AFTER_SECONDS.length; seconds++) {
+            RETRY_AFTER_SECONDS[seconds] = Integer.toString(Math.max(seconds, 1));
+        }
+    }
+
+    private final AdmissionControl admissionControl;
+
+    private final SecurityContextHolderStrategy securityContextHolderStrategy = SecurityContextHolder.getContextHolderStrategy();
+
+    public AdmissionControlFilter(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Authentication authentication = this.securityContextHolderStrategy.getContext().getAuthentication();
+        if (!(authentication instanceof AbstractOAuth2TokenAuthenticationToken<?> token)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        String clientId = token.getTokenAttributes().get("azp") instanceof String authorizedParty
+                ? authorizedParty
+                : AdmissionControl.OTHER_CLIENTS;
+
+        AdmissionControl.Client client = this.admissionControl.client(clientId);
+        AdmissionControl.Outcome outcome = client.tryAcquire();
+        if (outcome != AdmissionControl.Outcome.ADMITTED) {
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(client.nanosUntilAvailable() + 999_999_999L);
+            response.setStatus(TOO_MANY_REQUESTS);
+            response.setHeader("Retry-After", RETRY_AFTER_SECONDS[(int) Math.min(seconds, RETRY_AFTER_SECONDS.length - 1)]);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        }
+        finally {
+            client.release();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.portal.keycloak.security;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns the authority names required by authorization rules a stable, dense index, so a token's authorities can
+ * be stored as a bitset and a required authority checked with a single bit test. Names are only registered while
+ * compiling rules, so the index is bounded by the rules of its owner; looking up any other name, such as a role
+ * that only appears in tokens, finds nothing and registers nothing.
+ */
+final class AuthorityIndex {
+
+    static final int ABSENT = -1;
+
+    private final Map<String, Integer> indices = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    /**
+     * Get the index of an authority required by a rule, assigned the first time it is registered
+     * @param authority Authority name
+     * @return Index of the authority
+     */
+    synchronized int register(String authority) {
+        Integer index = this.indices.get(authority);
+        if (index == null) {
+            index = this.nextIndex.get();
+            this.indices.put(authority, index);
+            // Counted only once the name can be found, so a bitset covering size() misses no registered name
+            this.nextIndex.incrementAndGet();
+        }
+        return index;
+    }
+
+    /**
+     * Get the index of an authority without registering it
+     * @param authority Authority name
+     * @return Index of the authority, {@link #ABSENT} if no rule requires it
+     */
+    int find(String authority) {
+        Integer index = this.indices.get(authority);
+        return index != null ? index : ABSENT;
+    }
+
+    /**
+     * Get the number of registered authorities, every index is below it
+     * @return Number of registered authorities
+     */
+    int size() {
+        return this.nextIndex.get();
+    }
+}
@@ -0,0 +1,97 @@
+package com.portal.keycloak.security;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list of a token's authorities, backed by a bitset over an {@link AuthorityIndex} so that checking for an
+ * authority required by a rule is a constant-time bit test that does not allocate. It is built once per token by
+ * {@link CustomJwtGrantedAuthoritiesConverter} and cached with the token's authorities; the bitset is computed on
+ * the first check and again only when the index has grown since.
+ */
+public final class AuthoritySet extends AbstractList<GrantedAuthority> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final GrantedAuthority[] authorities;
+
+    private transient volatile Bits bits;
+
+    private AuthoritySet(GrantedAuthority[] authorities) {
+        this.authorities = authorities;
+    }
+
+    public static AuthoritySet of(Collection<? extends GrantedAuthority> authorities) {
+        return new AuthoritySet(authorities.toArray(new GrantedAuthority[0]));
+    }
+
+    /**
+     * Check for an authority by its index
+     * @param authorityIndex Index the rule was compiled against
+     * @param index Index of the authority in it
+     * @return {@code true} if the token holds the authority
+     */
+    boolean contains(AuthorityIndex authorityIndex, int index) {
+        Bits current = this.bits;
+        if (current == null || current.authorityIndex != authorityIndex || index >= current.size) {
+            current = new Bits(authorityIndex, this.authorities);
+            this.bits = current;
+        }
+        int word = index >>> 6;
+        return word < current.words.length && (current.words[word] & (1L << index)) != 0;
+    }
+
+    public boolean containsAuthority(String authority) {
+        for (GrantedAuthority granted : this.authorities) {
+            if (authority.equals(granted.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public GrantedAuthority get(int index) {
+        return this.authorities[index];
+    }
+
+    @Override
+    public int size() {
+        return this.authorities.length;
+    }
+
+    /**
+     * Bits of the authorities known to an index, covering the indices below {@code size}
+     */
+    private static final class Bits {
+
+        private final AuthorityIndex authorityIndex;
+
+        private final int size;
+
+        private final long[] words;
+
+        Bits(AuthorityIndex authorityIndex, GrantedAuthority[] authorities) {
+            this.authorityIndex = authorityIndex;
+            // Read before the lookups, so an authority registered meanwhile makes the next check recompute
+            this.size = authorityIndex.size();
+            long[] words = new long[0];
+            for (GrantedAuthority authority : authorities) {
+                int index = authorityIndex.find(authority.getAuthority());
+                if (index == AuthorityIndex.ABSENT) {
+                    continue;
+                }
+                if ((index >>> 6) >= words.length) {
+                    words = Arrays.copyOf(words, (index >>> 6) + 1);
+                }
+                words[index >>> 6] |= 1L << index;
+            }
+            this.words = words;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.portal.keycloak.security;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+/**
+ * {@link JwtAuthenticationToken} that keeps the token's {@link AuthoritySet}, so authorization checks can test
+ * authorities by index instead of scanning {@link #getAuthorities()}.
+ */
+public class AuthoritySetJwtAuthenticationToken extends JwtAuthenticationToken {
+
+    private static final long serialVersionUID = 1L;
+
+    private final AuthoritySet authoritySet;
+
+    public AuthoritySetJwtAuthenticationToken(Jwt jwt, AuthoritySet authoritySet) {
+        super(jwt, authoritySet);
+        this.authoritySet = authoritySet;
+    }
+
+    public AuthoritySet getAuthoritySet() {
+        return this.authoritySet;
+    }
+}
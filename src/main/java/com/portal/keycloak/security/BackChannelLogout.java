@@ -0,0 +1,109 @@
+package com.portal.keycloak.security;
+
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.proc.DefaultJOSEObjectTypeVerifier;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Applies OpenID Connect back-channel logout tokens, which Keycloak posts when a session ends, to the
+ * {@link RevocationList}. A token naming a session revokes that session; a token naming only a subject revokes
+ * every token the subject was issued until the logout.
+ * <p>
+ * Logout tokens are typed {@code logout+jwt}, which the decoders of access tokens reject, so each issuer has a
+ * logout token decoder of its own, built by {@link #decoder(String, JWSKeySelector)} on the issuer's keys.
+ */
+public class BackChannelLogout {
+
+    static final String LOGOUT_EVENT = "http://schemas.openid.net/event/backchannel-logout";
+
+    static final JOSEObjectType LOGOUT_TOKEN_TYPE = new JOSEObjectType("logout+jwt");
+
+    private final JwtDecoder decoder;
+
+    private final Function<Jwt, String> clientOfToken;
+
+    private final RevocationList revocationList;
+
+    /**
+     * @param decoder Decoder of logout tokens, built by {@link #decoder(String, JWSKeySelector)} for each issuer
+     * @param clientOfToken Client a decoded logout token must be addressed to, the one mapped for its issuer
+     * @param revocationList Revocations to add to
+     */
+    public BackChannelLogout(JwtDecoder decoder, Function<Jwt, String> clientOfToken, RevocationList revocationList) {
+        this.decoder = decoder;
+        this.clientOfToken = clientOfToken;
+        this.revocationList = revocationList;
+    }
+
+    /**
+     * Build the decoder of an issuer's logout tokens
+     * @param issuerUri Issuer URI
+     * @param keySelector Keys of the issuer
+     * @return Decoder checking the type, signature, issuer, lifetime and logout event of logout tokens
+     */
+    public static JwtDecoder decoder(String issuerUri, JWSKeySelector<SecurityContext> keySelector) {
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSTypeVerifier(new DefaultJOSEObjectTypeVerifier<>(LOGOUT_TOKEN_TYPE));
+        jwtProcessor.setJWSKeySelector(keySelector);
+        // Claims are checked by the Spring Security validators below
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(jwtProcessor);
+        decoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(JwtValidators.createDefaultWithIssuer(issuerUri),
+                BackChannelLogout::validateLogoutClaims));
+        return decoder;
+    }
+
+    private static OAuth2TokenValidatorResult validateLogoutClaims(Jwt jwt) {
+        if (!(jwt.getClaims().get("events") instanceof Map<?, ?> events) || !events.containsKey(LOGOUT_EVENT)) {
+            return invalid("The token has no back-channel logout event");
+        }
+        if (jwt.hasClaim("nonce")) {
+            return invalid("A logout token must not contain a nonce");
+        }
+        return OAuth2TokenValidatorResult.success();
+    }
+
+    private static OAuth2TokenValidatorResult invalid(String description) {
+        return OAuth2TokenValidatorResult.failure(new OAuth2Error(OAuth2ErrorCodes.INVALID_TOKEN, description, null));
+    }
+
+    /**
+     * Validate a logout token and revoke what it names
+     * @param logoutToken Serialized logout token
+     * @throws JwtException if the token is invalid or is not a logout token for this client
+     */
+    public void logout(String logoutToken) throws JwtException {
+        Jwt jwt = this.decoder.decode(logoutToken);
+        String client = this.clientOfToken.apply(jwt);
+        if (jwt.getAudience() == null || !jwt.getAudience().contains(client)) {
+            throw new BadJwtException("The logout token is not addressed to " + client);
+        }
+        String sessionId = jwt.getClaimAsString("sid");
+        if (sessionId != null) {
+            this.revocationList.revokeSession(sessionId);
+        }
+        else if (jwt.getSubject() != null && jwt.getIssuedAt() != null) {
+            this.revocationList.revokeSubject(jwt.getSubject(), jwt.getIssuedAt());
+        }
+        else {
+            throw new BadJwtException("A logout token must name a session or a subject");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.portal.keycloak.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link JwtDecoder} decorator that remembers already verified tokens.
+ * <p>
+ * The raw bearer token is mapped to the validated {@link Jwt} until the token's {@code exp}, so a client
+ * reusing its access token pays for signature verification only once. Tokens without {@code exp} or whose
+ * {@code nbf} still lies in the future are never cached, and failed decodes are not remembered.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private final JwtDecoder delegate;
+
+    private final Cache<String, Jwt> cache;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public CachingJwtDecoder(JwtDecoder delegate, long maximumSize) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new JwtExpiry())
+                .build();
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        Jwt jwt = this.cache.getIfPresent(token);
+        if (jwt != null) {
+            this.hits.increment();
+            return jwt;
+        }
+
+        this.misses.increment();
+        jwt = this.delegate.decode(token);
+        if (isCacheable(jwt)) {
+            this.cache.put(token, jwt);
+        }
+        return jwt;
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getSize() {
+        return this.cache.estimatedSize();
+    }
+
+    private static boolean isCacheable(Jwt jwt) {
+        Instant notBefore = jwt.getNotBefore();
+        return jwt.getExpiresAt() != null && (notBefore == null || !notBefore.isAfter(Instant.now()));
+    }
+
+    private static final class JwtExpiry implements Expiry<String, Jwt> {
+
+        @Override
+        public long expireAfterCreate(String key, Jwt value, long currentTime) {
+            long millis = value.getExpiresAt().toEpochMilli() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Jwt value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Jwt value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.portal.keycloak.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link OpaqueTokenIntrospector} decorator that remembers active introspection results and coalesces concurrent
+ * introspections of the same token.
+ * <p>
+ * A result is kept until the token's {@code exp}, but never longer than the maximum time to live, which bounds how
+ * long a revoked token is still accepted. Requests arriving while a token is being introspected wait for that call
+ * instead of starting their own, so a burst of requests with a new token costs the issuer one call. Inactive tokens
+ * and failed introspections are never remembered.
+ */
+public class CachingOpaqueTokenIntrospector implements OpaqueTokenIntrospector {
+
+    private final OpaqueTokenIntrospector delegate;
+
+    private final Cache<String, OAuth2AuthenticatedPrincipal> cache;
+
+    private final ConcurrentMap<String, CompletableFuture<OAuth2AuthenticatedPrincipal>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder introspections = new LongAdder();
+
+    public CachingOpaqueTokenIntrospector(OpaqueTokenIntrospector delegate, long maximumSize, Duration maxTimeToLive) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new IntrospectionExpiry(maxTimeToLive))
+                .build();
+    }
+
+    @Override
+    public OAuth2AuthenticatedPrincipal introspect(String token) {
+        OAuth2AuthenticatedPrincipal principal = this.cache.getIfPresent(token);
+        if (principal != null) {
+            this.hits.increment();
+            return principal;
+        }
+
+        this.misses.increment();
+        CompletableFuture<OAuth2AuthenticatedPrincipal> introspection = new CompletableFuture<>();
+        CompletableFuture<OAuth2AuthenticatedPrincipal> running = this.inFlight.putIfAbsent(token, introspection);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            // Another request may have finished introspecting the token since the cache lookup
+            principal = this.cache.getIfPresent(token);
+            if (principal == null) {
+                this.introspections.increment();
+                principal = this.delegate.introspect(token);
+                this.cache.put(token, principal);
+            }
+            introspection.complete(principal);
+            return principal;
+        }
+        catch (RuntimeException ex) {
+            introspection.completeExceptionally(ex);
+            throw ex;
+        }
+        finally {
+            this.inFlight.remove(token, introspection);
+        }
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getIntrospectionCount() {
+        return this.introspections.sum();
+    }
+
+    public long getSize() {
+        return this.cache.estimatedSize();
+    }
+
+    private static OAuth2AuthenticatedPrincipal await(CompletableFuture<OAuth2AuthenticatedPrincipal> introspection) {
+        try {
+            return introspection.join();
+        }
+        catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private record IntrospectionExpiry(Duration maxTimeToLive) implements Expiry<String, OAuth2AuthenticatedPrincipal> {
+
+        @Override
+        public long expireAfterCreate(String key, OAuth2AuthenticatedPrincipal value, long currentTime) {
+            long maxNanos = this.maxTimeToLive.toNanos();
+            if (!(value.getAttribute(OAuth2TokenIntrospectionClaimNames.EXP) instanceof Instant expiresAt)) {
+                return maxNanos;
+            }
+            long millis = expiresAt.toEpochMilli() - System.currentTimeMillis();
+            return Math.min(maxNanos, TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis)));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, OAuth2AuthenticatedPrincipal value, long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, OAuth2AuthenticatedPrincipal value, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.portal.keycloak.security;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.util.Collection;
+
+/**
+ * Converts a decoded token into an {@link AuthoritySetJwtAuthenticationToken} named after its subject, like
+ * Spring Security's {@code JwtAuthenticationConverter} but carrying the token's {@link AuthoritySet}.
+ */
+public class CustomJwtAuthenticationConverter implements Converter<Jwt, AbstractAuthenticationToken> {
+
+    private final Converter<Jwt, Collection<GrantedAuthority>> jwtGrantedAuthoritiesConverter;
+
+    public CustomJwtAuthenticationConverter(Converter<Jwt, Collection<GrantedAuthority>> jwtGrantedAuthoritiesConverter) {
+        this.jwtGrantedAuthoritiesConverter = jwtGrantedAuthoritiesConverter;
+    }
+
+    @Override
+    public AbstractAuthenticationToken convert(Jwt jwt) {
+        Collection<GrantedAuthority> authorities = this.jwtGrantedAuthoritiesConverter.convert(jwt);
+        AuthoritySet authoritySet = authorities instanceof AuthoritySet set ? set : AuthoritySet.of(authorities);
+        return new AuthoritySetJwtAuthenticationToken(jwt, authoritySet);
+    }
+}
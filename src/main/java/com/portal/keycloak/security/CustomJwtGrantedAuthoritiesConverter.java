@@ -1,23 +1,51 @@
 package com.portal.keycloak.security;
 
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Maps Keycloak realm roles and the configured client's roles to authorities.
+ * <p>
+ * Access tokens are reused for their whole lifetime, so the decoded authorities are cached per token
+ * (keyed by {@code jti}, falling back to the raw token value) until the token's {@code exp}, as an
+ * {@link AuthoritySet} that authorization checks can query by index. Every role string is interned into a
+ * single shared {@link GrantedAuthority} instance.
+ */
 public class CustomJwtGrantedAuthoritiesConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
 
+    public static final long DEFAULT_CACHE_SIZE = 10_000;
+
+    private static final Map<String, GrantedAuthority> INTERNED_AUTHORITIES = new ConcurrentHashMap<>();
+
     String clientName;
 
+    private final Cache<String, CachedAuthorities> authoritiesCache;
+
     public CustomJwtGrantedAuthoritiesConverter(String clientName) {
+        this(clientName, DEFAULT_CACHE_SIZE);
+    }
+
+    public CustomJwtGrantedAuthoritiesConverter(String clientName, long maximumCacheSize) {
         super();
         this.clientName = clientName;
+        this.authoritiesCache = Caffeine.newBuilder()
+                .maximumSize(maximumCacheSize)
+                .expireAfter(new TokenExpiry())
+                .build();
     }
 
     @Override
@@ -27,36 +55,86 @@ public class CustomJwtGrantedAuthoritiesConverter implements Converter<Jwt, Coll
 
     @Override
     public Collection<GrantedAuthority> convert(Jwt jwt) {
-        Collection<GrantedAuthority> finalRoles = new ArrayList<>();
-        extractRealmRoles(jwt.getClaim("realm_access"), finalRoles);
-        extractClientRoles(jwt, finalRoles);
+        Instant expiresAt = jwt.getExpiresAt();
+        if (expiresAt == null) {
+            return extractAuthorities(jwt);
+        }
+
+        String cacheKey = cacheKey(jwt);
+        CachedAuthorities cached = this.authoritiesCache.getIfPresent(cacheKey);
+        if (cached != null) {
+            return cached.authorities();
+        }
+
+        Collection<GrantedAuthority> authorities = extractAuthorities(jwt);
+        this.authoritiesCache.put(cacheKey, new CachedAuthorities(authorities, expiresAt));
+        return authorities;
+    }
+
+    private Collection<GrantedAuthority> extractAuthorities(Jwt jwt) {
+        return authoritiesOf(jwt.getClaims(), this.clientName);
+    }
+
+    /**
+     * Map the role claims of a token to authorities, without caching, for claims that do not come from a
+     * decoded JWT such as an introspection response
+     * @param claims Claims carrying realm_access and resource_access
+     * @param clientName Client whose roles are mapped from resource_access
+     * @return Authorities of the realm roles and the client's roles
+     */
+    public static AuthoritySet authoritiesOf(Map<String, Object> claims, String clientName) {
+        List<GrantedAuthority> finalRoles = new ArrayList<>();
+        extractRoles(claims.get("realm_access"), finalRoles);
+        if (claims.get("resource_access") instanceof Map<?, ?> resourceAccessMap) {
+            extractRoles(resourceAccessMap.get(clientName), finalRoles);
+        }
 
-        return finalRoles;
+        return AuthoritySet.of(finalRoles);
     }
 
-    private void extractRealmRoles(Object mapObject, Collection<GrantedAuthority> finalRoles) {
-        if (mapObject instanceof Map) {
-            Map<String, List<String>> rolesMap = (Map<String, List<String>>) mapObject;
-            List<String> roles = rolesMap.get("roles");
-            if (roles != null) {
-                roles.forEach(role -> finalRoles.add(new SimpleGrantedAuthority(role)));
+    // Checked element by element rather than cast, since decoders may hand out any list or map implementation
+    private static void extractRoles(Object accessObject, Collection<GrantedAuthority> finalRoles) {
+        if (accessObject instanceof Map<?, ?> accessMap && accessMap.get("roles") instanceof List<?> roles) {
+            for (Object role : roles) {
+                if (role instanceof String roleName) {
+                    finalRoles.add(intern(roleName));
+                }
             }
         }
     }
 
-    private void extractClientRoles(Jwt jwt, Collection<GrantedAuthority> finalRoles) {
-        Map<String, Map<String, List<String>>> resourceAccessMap = jwt.getClaim("resource_access");
+    private static GrantedAuthority intern(String role) {
+        GrantedAuthority authority = INTERNED_AUTHORITIES.get(role);
+        if (authority == null) {
+            authority = INTERNED_AUTHORITIES.computeIfAbsent(role, SimpleGrantedAuthority::new);
+        }
+        return authority;
+    }
 
-        if (resourceAccessMap != null) {
-            Map<String, List<String>> clientAccessMap = resourceAccessMap.get(this.clientName);
+    private static String cacheKey(Jwt jwt) {
+        String jti = jwt.getId();
+        return jti != null ? jti : jwt.getTokenValue();
+    }
 
-            if (clientAccessMap != null) {
-                List<String> roles = clientAccessMap.get("roles");
+    private record CachedAuthorities(Collection<GrantedAuthority> authorities, Instant expiresAt) {
+    }
 
-                if (roles != null) {
-                    roles.forEach(role -> finalRoles.add(new SimpleGrantedAuthority(role)));
-                }
-            }
+    private static final class TokenExpiry implements Expiry<String, CachedAuthorities> {
+
+        @Override
+        public long expireAfterCreate(String key, CachedAuthorities value, long currentTime) {
+            long millis = value.expiresAt().toEpochMilli() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedAuthorities value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedAuthorities value, long currentTime, long currentDuration) {
+            return currentDuration;
         }
     }
 }
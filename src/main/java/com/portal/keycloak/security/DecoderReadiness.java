@@ -0,0 +1,20 @@
+package com.portal.keycloak.security;
+
+/**
+ * Implemented by the JWT decoders that load the issuer's keys off the startup path, so the readiness probe can
+ * report on whichever one the current web stack uses.
+ */
+public interface DecoderReadiness {
+
+    /**
+     * Check whether tokens can be validated
+     * @return {@code true} once the issuer's keys have been loaded
+     */
+    boolean isReady();
+
+    /**
+     * Get the failure of the last attempt to load the issuer's keys
+     * @return Failure of the last attempt, {@code null} if it succeeded or none was made yet
+     */
+    Exception getLastFailure();
+}
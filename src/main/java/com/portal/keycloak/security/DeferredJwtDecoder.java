@@ -0,0 +1,154 @@
+package com.portal.keycloak.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * {@link JwtDecoder} whose delegate is built off the startup path.
+ * <p>
+ * Building the real decoder talks to the issuer (discovery document and key set), so it is attempted in the
+ * background once the context has started, retried with exponential backoff, and attempted again by the first
+ * request that arrives after the current backoff window. Until then requests are rejected with a 401
+ * {@code invalid_token} instead of blocking, and {@link #isReady()} reports {@code false} so the readiness probe keeps the instance out of rotation.
+ */
+public class DeferredJwtDecoder implements JwtDecoder, DecoderReadiness, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(DeferredJwtDecoder.class);
+
+    private final Supplier<JwtDecoder> decoderFactory;
+
+    private final Duration initialBackoff;
+
+    private final Duration maxBackoff;
+
+    private final ThreadFactory threadFactory;
+
+    private final ReentrantLock initializationLock = new ReentrantLock();
+
+    private volatile JwtDecoder delegate;
+
+    private volatile Exception lastFailure;
+
+    private volatile long nextAttemptAt;
+
+    private volatile Duration backoff;
+
+    private volatile ScheduledExecutorService scheduler;
+
+    public DeferredJwtDecoder(Supplier<JwtDecoder> decoderFactory, Duration initialBackoff, Duration maxBackoff) {
+        this(decoderFactory, initialBackoff, maxBackoff, Thread.ofPlatform().name("jwt-decoder-init").daemon(true).factory());
+    }
+
+    public DeferredJwtDecoder(Supplier<JwtDecoder> decoderFactory, Duration initialBackoff, Duration maxBackoff,
+                              ThreadFactory threadFactory) {
+        this.decoderFactory = decoderFactory;
+        this.threadFactory = threadFactory;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.backoff = initialBackoff;
+        this.nextAttemptAt = System.nanoTime();
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        JwtDecoder decoder = this.delegate;
+        if (decoder == null) {
+            decoder = initializeOnRequest();
+        }
+        return decoder.decode(token);
+    }
+
+    @Override
+    public boolean isReady() {
+        return this.delegate != null;
+    }
+
+    @Override
+    public Exception getLastFailure() {
+        return this.lastFailure;
+    }
+
+    private JwtDecoder initializeOnRequest() {
+        if (System.nanoTime() - this.nextAttemptAt >= 0 && attemptInitialization()) {
+            return this.delegate;
+        }
+        // A BadJwtException is answered with a plain 401 invalid_token; other JwtExceptions escape the filter chain
+        throw new BadJwtException("Token issuer is not available yet", this.lastFailure);
+    }
+
+    boolean attemptInitialization() {
+        if (!this.initializationLock.tryLock()) {
+            return this.delegate != null;
+        }
+        try {
+            if (this.delegate != null) {
+                return true;
+            }
+            this.delegate = this.decoderFactory.get();
+            this.lastFailure = null;
+            log.info("JWT decoder initialized");
+            return true;
+        }
+        catch (RuntimeException ex) {
+            this.lastFailure = ex;
+            this.nextAttemptAt = System.nanoTime() + this.backoff.toNanos();
+            log.warn("JWT decoder initialization failed, retrying in {}: {}", this.backoff, ex.getMessage());
+            return false;
+        }
+        finally {
+            this.initializationLock.unlock();
+        }
+    }
+
+    private void initializeInBackground() {
+        if (attemptInitialization()) {
+            return;
+        }
+        Duration delay = this.backoff;
+        this.backoff = min(this.backoff.multipliedBy(2), this.maxBackoff);
+        ScheduledExecutorService executor = this.scheduler;
+        if (executor != null && !executor.isShutdown()) {
+            executor.schedule(this::initializeInBackground, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (this.scheduler != null || this.delegate != null) {
+            return;
+        }
+        this.backoff = this.initialBackoff;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(this.threadFactory);
+        this.scheduler.execute(this::initializeInBackground);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return this.scheduler != null;
+    }
+}
@@ -0,0 +1,34 @@
+package com.portal.keycloak.security;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+/**
+ * {@link JwtDecoder} decorator that times every decode, cache hits included, by outcome.
+ */
+public class InstrumentedJwtDecoder implements JwtDecoder {
+
+    private final JwtDecoder delegate;
+
+    private final SecurityMetrics metrics;
+
+    public InstrumentedJwtDecoder(JwtDecoder delegate, SecurityMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        long start = System.nanoTime();
+        try {
+            Jwt jwt = this.delegate.decode(token);
+            this.metrics.recordDecode(start, true);
+            return jwt;
+        }
+        catch (JwtException ex) {
+            this.metrics.recordDecode(start, false);
+            throw ex;
+        }
+    }
+}
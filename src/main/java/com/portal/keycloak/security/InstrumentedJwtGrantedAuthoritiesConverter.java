@@ -0,0 +1,31 @@
+package com.portal.keycloak.security;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.util.Collection;
+
+/**
+ * Decorator that times the authority mapping and records how many authorities each token carries.
+ */
+public class InstrumentedJwtGrantedAuthoritiesConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
+
+    private final Converter<Jwt, Collection<GrantedAuthority>> delegate;
+
+    private final SecurityMetrics metrics;
+
+    public InstrumentedJwtGrantedAuthoritiesConverter(Converter<Jwt, Collection<GrantedAuthority>> delegate,
+                                                      SecurityMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Collection<GrantedAuthority> convert(Jwt jwt) {
+        long start = System.nanoTime();
+        Collection<GrantedAuthority> authorities = this.delegate.convert(jwt);
+        this.metrics.recordAuthoritiesConversion(start, authorities != null ? authorities.size() : 0);
+        return authorities;
+    }
+}
@@ -0,0 +1,86 @@
+package com.portal.keycloak.security;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.RequestEntity;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestOperations;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Builds the issuer's {@link JwtDecoder}, reading the JWKS location from the OpenID discovery document unless
+ * a JWK set URI is configured. The key set is loaded into the {@link JwkSetManager} before the decoder is
+ * returned, so a decoder is only handed out when the issuer's keys are actually available. Claims are read by a
+ * {@link RoleClaimsJwtProcessor} that only keeps the roles of the configured client.
+ */
+public class IssuerJwtDecoderFactory implements Supplier<JwtDecoder> {
+
+    private static final ParameterizedTypeReference<Map<String, Object>> JSON_OBJECT = new ParameterizedTypeReference<>() {
+    };
+
+    private final String issuerUri;
+
+    private final String jwkSetUri;
+
+    private final RestOperations restOperations;
+
+    private final JwkSetManager jwkSetManager;
+
+    private final String clientName;
+
+    public IssuerJwtDecoderFactory(String issuerUri, String jwkSetUri, RestOperations restOperations,
+                                   JwkSetManager jwkSetManager) {
+        this(issuerUri, jwkSetUri, restOperations, jwkSetManager, null);
+    }
+
+    /**
+     * @param clientName Client whose roles are kept from {@code resource_access}, or null to keep every client
+     */
+    public IssuerJwtDecoderFactory(String issuerUri, String jwkSetUri, RestOperations restOperations,
+                                   JwkSetManager jwkSetManager, String clientName) {
+        this.issuerUri = issuerUri;
+        this.jwkSetUri = jwkSetUri;
+        this.restOperations = restOperations;
+        this.jwkSetManager = jwkSetManager;
+        this.clientName = clientName;
+    }
+
+    @Override
+    public JwtDecoder get() {
+        String keySetUri = StringUtils.hasText(this.jwkSetUri) ? this.jwkSetUri : discoverJwkSetUri();
+        this.jwkSetManager.load(keySetUri);
+
+        RoleClaimsJwtProcessor jwtProcessor = new RoleClaimsJwtProcessor(this.clientName);
+        jwtProcessor.setJWSKeySelector(this.jwkSetManager);
+        // Claims are checked by the Spring Security validators below
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(jwtProcessor);
+        decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(this.issuerUri));
+        return decoder;
+    }
+
+    private String discoverJwkSetUri() {
+        URI discoveryUri = UriComponentsBuilder.fromUriString(this.issuerUri)
+                .path("/.well-known/openid-configuration")
+                .build()
+                .toUri();
+        Map<String, Object> configuration = this.restOperations.exchange(RequestEntity.get(discoveryUri).build(), JSON_OBJECT)
+                .getBody();
+        if (configuration == null || !this.issuerUri.equals(configuration.get("issuer"))) {
+            throw new IllegalStateException("The issuer in the discovery document does not match " + this.issuerUri);
+        }
+        Object jwksUri = configuration.get("jwks_uri");
+        if (!(jwksUri instanceof String)) {
+            throw new IllegalStateException("The discovery document of " + this.issuerUri + " has no jwks_uri");
+        }
+        return (String) jwksUri;
+    }
+}
@@ -0,0 +1,311 @@
+package com.portal.keycloak.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.AsymmetricJWK;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyType;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.web.client.RestOperations;
+
+import java.security.Key;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Owns the issuer's signing keys and selects the verification key for incoming tokens.
+ * <p>
+ * Public keys are parsed once per fetch and indexed by {@code kid}, so selecting a key is a single map lookup.
+ * The key set is refreshed in the background before it goes stale. A token with an unknown {@code kid} (a key
+ * rotation) triggers at most one concurrent refetch that every waiting request shares, refetches are spaced by
+ * a minimum interval, and {@code kid}s that are still unknown afterwards are remembered for a while so bogus
+ * tokens cannot stampede the certs endpoint.
+ */
+public class JwkSetManager implements JWSKeySelector<SecurityContext>, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(JwkSetManager.class);
+
+    private static final KeySet EMPTY = new KeySet(Map.of(), List.of(), 0);
+
+    private final RestOperations restOperations;
+
+    private final Duration refreshInterval;
+
+    private final Duration minRefetchInterval;
+
+    private final Duration refetchTimeout;
+
+    private final Cache<String, Boolean> unknownKeyIds;
+
+    private final ThreadFactory threadFactory;
+
+    private final AtomicReference<CompletableFuture<KeySet>> inFlight = new AtomicReference<>();
+
+    private volatile KeySet keySet = EMPTY;
+
+    private volatile String jwkSetUri;
+
+    private SecurityMetrics metrics = SecurityMetrics.NOOP;
+
+    private ScheduledExecutorService scheduler;
+
+    public JwkSetManager(RestOperations restOperations, Duration refreshInterval, Duration minRefetchInterval,
+                         Duration refetchTimeout, Duration negativeCacheTtl, long negativeCacheMaximumSize) {
+        this(restOperations, refreshInterval, minRefetchInterval, refetchTimeout, negativeCacheTtl,
+                negativeCacheMaximumSize, Thread.ofPlatform().name("jwks-refresh").daemon(true).factory());
+    }
+
+    public JwkSetManager(RestOperations restOperations, Duration refreshInterval, Duration minRefetchInterval,
+                         Duration refetchTimeout, Duration negativeCacheTtl, long negativeCacheMaximumSize,
+                         ThreadFactory threadFactory) {
+        this.restOperations = restOperations;
+        this.threadFactory = threadFactory;
+        this.refreshInterval = refreshInterval;
+        this.minRefetchInterval = minRefetchInterval;
+        this.refetchTimeout = refetchTimeout;
+        this.unknownKeyIds = Caffeine.newBuilder()
+                .expireAfterWrite(negativeCacheTtl)
+                .maximumSize(negativeCacheMaximumSize)
+                .build();
+    }
+
+    public void setMetrics(SecurityMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Point the manager at a key set and load it
+     * @param jwkSetUri Location of the issuer's JWKS
+     */
+    public void load(String jwkSetUri) {
+        this.jwkSetUri = jwkSetUri;
+        KeySet loaded = refresh();
+        if (loaded.all().isEmpty()) {
+            throw new IllegalStateException("The key set at " + jwkSetUri + " has no signing keys");
+        }
+        scheduleRefresh(this.refreshInterval.toMillis());
+    }
+
+    public boolean isLoaded() {
+        return this.keySet != EMPTY;
+    }
+
+    @Override
+    public List<? extends Key> selectJWSKeys(JWSHeader header, SecurityContext context) {
+        JWSAlgorithm algorithm = header.getAlgorithm();
+        String keyId = header.getKeyID();
+        KeySet keys = this.keySet;
+        if (keyId == null) {
+            return keys.matching(algorithm);
+        }
+
+        VerificationKey key = keys.byKeyId().get(keyId);
+        if (key == null) {
+            key = refetchFor(keyId);
+        }
+        return key != null && key.supports(algorithm) ? key.asList() : List.of();
+    }
+
+    private VerificationKey refetchFor(String keyId) {
+        if (this.unknownKeyIds.getIfPresent(keyId) != null) {
+            return null;
+        }
+        if (System.nanoTime() - this.keySet.fetchedAt() < this.minRefetchInterval.toNanos()) {
+            return null;
+        }
+        KeySet keys = awaitRefresh();
+        if (keys == null) {
+            return null;
+        }
+        VerificationKey key = keys.byKeyId().get(keyId);
+        if (key == null) {
+            this.unknownKeyIds.put(keyId, Boolean.TRUE);
+        }
+        return key;
+    }
+
+    private KeySet awaitRefresh() {
+        try {
+            CompletableFuture<KeySet> refresh = this.inFlight.get();
+            if (refresh == null) {
+                return refresh();
+            }
+            return refresh.get(this.refetchTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (RuntimeException | ExecutionException | TimeoutException ex) {
+            log.warn("Failed to refetch the key set at {}: {}", this.jwkSetUri, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Fetch the key set now, or join a fetch that is already in flight
+     * @return Key set in use after the fetch
+     */
+    KeySet refresh() {
+        CompletableFuture<KeySet> refresh = new CompletableFuture<>();
+        CompletableFuture<KeySet> existing = this.inFlight.compareAndExchange(null, refresh);
+        if (existing != null) {
+            return existing.join();
+        }
+        long start = System.nanoTime();
+        try {
+            KeySet fetched = fetch();
+            this.metrics.recordKeySetFetch(start, true);
+            this.keySet = fetched;
+            refresh.complete(fetched);
+            return fetched;
+        }
+        catch (RuntimeException ex) {
+            this.metrics.recordKeySetFetch(start, false);
+            refresh.completeExceptionally(ex);
+            throw ex;
+        }
+        finally {
+            this.inFlight.set(null);
+        }
+    }
+
+    private KeySet fetch() {
+        String body = this.restOperations.getForObject(this.jwkSetUri, String.class);
+        JWKSet parsed;
+        try {
+            parsed = JWKSet.parse(body);
+        }
+        catch (ParseException ex) {
+            throw new IllegalStateException("Failed to parse the key set at " + this.jwkSetUri, ex);
+        }
+
+        Map<String, VerificationKey> byKeyId = new HashMap<>();
+        List<VerificationKey> all = new ArrayList<>();
+        for (JWK jwk : parsed.getKeys()) {
+            VerificationKey key = VerificationKey.from(jwk);
+            if (key == null) {
+                continue;
+            }
+            all.add(key);
+            if (jwk.getKeyID() != null) {
+                byKeyId.put(jwk.getKeyID(), key);
+            }
+        }
+        this.unknownKeyIds.invalidateAll(byKeyId.keySet());
+        log.debug("Loaded {} signing keys from {}", all.size(), this.jwkSetUri);
+        return new KeySet(Map.copyOf(byKeyId), List.copyOf(all), System.nanoTime());
+    }
+
+    private void refreshInBackground() {
+        try {
+            refresh();
+        }
+        catch (RuntimeException ex) {
+            log.warn("Failed to refresh the key set at {}, keeping the current keys: {}", this.jwkSetUri, ex.getMessage());
+        }
+    }
+
+    private synchronized void scheduleRefresh(long initialDelayMillis) {
+        if (this.scheduler != null || this.jwkSetUri == null) {
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(this.threadFactory);
+        long period = this.refreshInterval.toMillis();
+        this.scheduler.scheduleWithFixedDelay(this::refreshInBackground, initialDelayMillis, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resume the background refresh. Lifecycle beans are stopped before a CRaC checkpoint and started again after
+     * restore, possibly much later, so a key set that is already loaded is refetched right away and the remembered
+     * unknown {@code kid}s are forgotten.
+     */
+    @Override
+    public void start() {
+        if (isLoaded()) {
+            this.unknownKeyIds.invalidateAll();
+            scheduleRefresh(0);
+        }
+        else {
+            scheduleRefresh(this.refreshInterval.toMillis());
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return this.scheduler != null;
+    }
+
+    record KeySet(Map<String, VerificationKey> byKeyId, List<VerificationKey> all, long fetchedAt) {
+
+        List<? extends Key> matching(JWSAlgorithm algorithm) {
+            List<Key> keys = new ArrayList<>();
+            for (VerificationKey key : this.all) {
+                if (key.supports(algorithm)) {
+                    keys.add(key.key());
+                }
+            }
+            return keys;
+        }
+    }
+
+    record VerificationKey(Key key, KeyType keyType, JWSAlgorithm algorithm, List<Key> asList) {
+
+        static VerificationKey from(JWK jwk) {
+            if (jwk.getKeyUse() != null && !KeyUse.SIGNATURE.equals(jwk.getKeyUse())) {
+                return null;
+            }
+            if (!(jwk instanceof AsymmetricJWK asymmetric)) {
+                return null;
+            }
+            try {
+                Key key = asymmetric.toPublicKey();
+                JWSAlgorithm algorithm = jwk.getAlgorithm() != null ? JWSAlgorithm.parse(jwk.getAlgorithm().getName()) : null;
+                return new VerificationKey(key, jwk.getKeyType(), algorithm, List.of(key));
+            }
+            catch (JOSEException ex) {
+                log.warn("Ignoring key {} that cannot be converted to a public key", jwk.getKeyID());
+                return null;
+            }
+        }
+
+        boolean supports(JWSAlgorithm requested) {
+            if (this.algorithm != null) {
+                return this.algorithm.equals(requested);
+            }
+            if (KeyType.RSA.equals(this.keyType)) {
+                return JWSAlgorithm.Family.RSA.contains(requested);
+            }
+            return KeyType.EC.equals(this.keyType) && JWSAlgorithm.Family.EC.contains(requested);
+        }
+    }
+}
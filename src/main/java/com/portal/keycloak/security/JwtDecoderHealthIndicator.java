@@ -0,0 +1,38 @@
+package com.portal.keycloak.security;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the JWT decoder as out of service until the issuer's keys have been loaded. It is part of the
+ * readiness group, so traffic is only routed to the instance once tokens can actually be validated. With opaque
+ * tokens there is no decoder and nothing to load up front, as every token is introspected at the issuer.
+ */
+@Component
+public class JwtDecoderHealthIndicator implements HealthIndicator {
+
+    private final ObjectProvider<DecoderReadiness> decoder;
+
+    public JwtDecoderHealthIndicator(ObjectProvider<DecoderReadiness> decoder) {
+        this.decoder = decoder;
+    }
+
+    @Override
+    public Health health() {
+        DecoderReadiness readiness = this.decoder.getIfAvailable();
+        if (readiness == null) {
+            return Health.up().withDetail("mode", "opaque-token").build();
+        }
+        if (readiness.isReady()) {
+            return Health.up().build();
+        }
+        Health.Builder builder = Health.outOfService();
+        Exception lastFailure = readiness.getLastFailure();
+        if (lastFailure != null) {
+            builder.withDetail("error", lastFailure.getMessage());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,157 @@
+package com.portal.keycloak.security;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jwt.JWTClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming reader of a Keycloak access token payload. {@code realm_access} and {@code resource_access} are read
+ * straight from the JSON into compact, immutable role lists of interned names, keeping only the roles of the
+ * configured client, and the role arrays of every other client are skipped without being materialized. All
+ * remaining claims are read as generic values, and the result is checked by Nimbus like a parsed payload.
+ */
+final class KeycloakClaimsReader {
+
+    static final String REALM_ACCESS = "realm_access";
+
+    static final String RESOURCE_ACCESS = "resource_access";
+
+    private static final String ROLES = "roles";
+
+    // Whole numbers are read as Long, as Nimbus does, so claims keep their types whichever way they were parsed
+    private static final JsonFactory JSON = new ObjectMapper()
+            .enable(DeserializationFeature.USE_LONG_FOR_INTS)
+            .getFactory();
+
+    private final String clientName;
+
+    private final RoleNames roleNames = new RoleNames();
+
+    /**
+     * @param clientName Client whose roles are kept from {@code resource_access}, or null to keep every client
+     */
+    KeycloakClaimsReader(String clientName) {
+        this.clientName = clientName;
+    }
+
+    /**
+     * Read the claims of a token payload
+     * @param payload UTF-8 JSON payload of the token
+     * @return Claims set
+     * @throws ParseException if the payload is not a JSON object or a registered claim has the wrong type
+     */
+    JWTClaimsSet read(byte[] payload) throws ParseException {
+        Map<String, Object> claims = new LinkedHashMap<>();
+        try (JsonParser parser = JSON.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ParseException("Payload of JWT is not a JSON object", 0);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                claims.put(name, switch (name) {
+                    case REALM_ACCESS -> readAccess(parser);
+                    case RESOURCE_ACCESS -> readResourceAccess(parser);
+                    default -> parser.readValueAs(Object.class);
+                });
+            }
+        }
+        catch (IOException ex) {
+            throw new ParseException("Payload of JWT is not valid JSON: " + ex.getMessage(), 0);
+        }
+        return JWTClaimsSet.parse(claims);
+    }
+
+    /**
+     * Read only the issuer of a token payload, stopping at the {@code iss} claim
+     * @param payload UTF-8 JSON payload of the token
+     * @return Issuer, or null if the payload has no string {@code iss} claim
+     * @throws ParseException if the payload is not a JSON object
+     */
+    static String readIssuer(byte[] payload) throws ParseException {
+        try (JsonParser parser = JSON.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ParseException("Payload of JWT is not a JSON object", 0);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                boolean issuer = JwtClaimNames.ISS.equals(parser.currentName());
+                if (parser.nextToken() == JsonToken.VALUE_STRING && issuer) {
+                    return parser.getText();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+        catch (IOException ex) {
+            throw new ParseException("Payload of JWT is not valid JSON: " + ex.getMessage(), 0);
+        }
+    }
+
+    int internedRoleCount() {
+        return this.roleNames.size();
+    }
+
+    private Object readResourceAccess(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return parser.readValueAs(Object.class);
+        }
+        Map<String, Object> resourceAccess = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String client = parser.currentName();
+            parser.nextToken();
+            if (this.clientName == null || this.clientName.equals(client)) {
+                resourceAccess.put(client, readAccess(parser));
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+        return resourceAccess;
+    }
+
+    private Object readAccess(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return parser.readValueAs(Object.class);
+        }
+        List<String> roles = List.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            boolean rolesField = ROLES.equals(parser.currentName());
+            if (parser.nextToken() == JsonToken.START_ARRAY && rolesField) {
+                roles = readRoles(parser);
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+        return Map.of(ROLES, roles);
+    }
+
+    private List<String> readRoles(JsonParser parser) throws IOException {
+        String[] roles = new String[16];
+        int count = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.VALUE_STRING) {
+                parser.skipChildren();
+                continue;
+            }
+            if (count == roles.length) {
+                roles = Arrays.copyOf(roles, count * 2);
+            }
+            roles[count++] = this.roleNames.intern(parser.getTextCharacters(), parser.getTextOffset(),
+                    parser.getTextLength());
+        }
+        return List.of(count == roles.length ? roles : Arrays.copyOf(roles, count));
+    }
+}
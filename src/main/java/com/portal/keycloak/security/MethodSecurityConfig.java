@@ -0,0 +1,61 @@
+package com.portal.keycloak.security;
+
+import org.springframework.aop.Advisor;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.security.authorization.SpringAuthorizationEventPublisher;
+import org.springframework.security.authorization.method.AuthorizationManagerAfterMethodInterceptor;
+import org.springframework.security.authorization.method.AuthorizationManagerBeforeMethodInterceptor;
+import org.springframework.security.authorization.method.PostFilterAuthorizationMethodInterceptor;
+import org.springframework.security.authorization.method.PreFilterAuthorizationMethodInterceptor;
+import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
+
+/**
+ * Method security with {@code @PreAuthorize} evaluated by the {@link PrecompiledAuthorizationManager}.
+ * The built-in pre/post support is switched off so the annotation is not checked twice, and the
+ * {@code @PostAuthorize}, {@code @PreFilter} and {@code @PostFilter} interceptors are registered here instead.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableMethodSecurity(prePostEnabled = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class MethodSecurityConfig {
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static PrecompiledAuthorizationManager precompiledAuthorizationManager() {
+        return new PrecompiledAuthorizationManager();
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static Advisor preAuthorizeAuthorizationMethodInterceptor(PrecompiledAuthorizationManager precompiledAuthorizationManager,
+                                                             ApplicationEventPublisher applicationEventPublisher) {
+        AuthorizationManagerBeforeMethodInterceptor interceptor =
+                AuthorizationManagerBeforeMethodInterceptor.preAuthorize(precompiledAuthorizationManager);
+        // Denials are published so they are counted per endpoint
+        interceptor.setAuthorizationEventPublisher(new SpringAuthorizationEventPublisher(applicationEventPublisher));
+        return interceptor;
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static Advisor postAuthorizeAuthorizationMethodInterceptor() {
+        return AuthorizationManagerAfterMethodInterceptor.postAuthorize();
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static Advisor preFilterAuthorizationMethodInterceptor() {
+        return new PreFilterAuthorizationMethodInterceptor();
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static Advisor postFilterAuthorizationMethodInterceptor() {
+        return new PostFilterAuthorizationMethodInterceptor();
+    }
+}
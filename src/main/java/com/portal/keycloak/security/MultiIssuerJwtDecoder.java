@@ -0,0 +1,83 @@
+package com.portal.keycloak.security;
+
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.text.ParseException;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * {@link JwtDecoder} that hands each token to the decoder of its issuer. The issuer is read from the still
+ * unverified payload, reading no further than the {@code iss} claim, and only selects the {@link TenantRegistry}
+ * entry; the tenant's decoder then verifies the signature against that issuer's keys and validates the issuer.
+ * The decoded token carries the tenant it was decoded by, see {@link #tenantOf(Jwt)}, so later steps such as
+ * mapping authorities do not resolve the issuer again.
+ */
+public class MultiIssuerJwtDecoder implements JwtDecoder {
+
+    private final TenantRegistry tenantRegistry;
+
+    private final Function<TenantRegistry.Tenant, JwtDecoder> decoderOfTenant;
+
+    public MultiIssuerJwtDecoder(TenantRegistry tenantRegistry) {
+        this(tenantRegistry, TenantRegistry.Tenant::decoder);
+    }
+
+    /**
+     * @param decoderOfTenant Decoder of a tenant to hand the tokens to, such as its logout token decoder
+     */
+    public MultiIssuerJwtDecoder(TenantRegistry tenantRegistry, Function<TenantRegistry.Tenant, JwtDecoder> decoderOfTenant) {
+        this.tenantRegistry = tenantRegistry;
+        this.decoderOfTenant = decoderOfTenant;
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        TenantRegistry.Tenant tenant = this.tenantRegistry.resolve(issuer(token));
+        return new TenantJwt(this.decoderOfTenant.apply(tenant).decode(token), tenant);
+    }
+
+    /**
+     * Get the tenant a token was decoded by
+     * @param jwt Token decoded by a {@link MultiIssuerJwtDecoder}
+     * @return Tenant of the token's issuer
+     */
+    public static TenantRegistry.Tenant tenantOf(Jwt jwt) {
+        if (!(jwt instanceof TenantJwt tenantJwt) || tenantJwt.tenant == null) {
+            throw new IllegalArgumentException("The token was not decoded by a MultiIssuerJwtDecoder");
+        }
+        return tenantJwt.tenant;
+    }
+
+    private static String issuer(String token) {
+        int payloadStart = token.indexOf('.') + 1;
+        int payloadEnd = token.indexOf('.', payloadStart);
+        if (payloadStart == 0 || payloadEnd < 0) {
+            throw new BadJwtException("The token is not a signed JWT");
+        }
+        try {
+            return KeycloakClaimsReader.readIssuer(Base64.getUrlDecoder().decode(token.substring(payloadStart, payloadEnd)));
+        }
+        catch (IllegalArgumentException | ParseException ex) {
+            throw new BadJwtException("The token payload cannot be read: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Decoded token with the tenant that decoded it
+     */
+    private static final class TenantJwt extends Jwt {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient TenantRegistry.Tenant tenant;
+
+        TenantJwt(Jwt jwt, TenantRegistry.Tenant tenant) {
+            super(jwt.getTokenValue(), jwt.getIssuedAt(), jwt.getExpiresAt(), jwt.getHeaders(), jwt.getClaims());
+            this.tenant = tenant;
+        }
+    }
+}
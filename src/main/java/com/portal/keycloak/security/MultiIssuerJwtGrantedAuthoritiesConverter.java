@@ -0,0 +1,19 @@
+package com.portal.keycloak.security;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.util.Collection;
+
+/**
+ * Maps a token to authorities with the converter of the tenant that decoded it, which reads the roles of the client
+ * configured for that issuer's realm. Tokens have to come from a {@link MultiIssuerJwtDecoder}.
+ */
+public class MultiIssuerJwtGrantedAuthoritiesConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
+
+    @Override
+    public Collection<GrantedAuthority> convert(Jwt jwt) {
+        return MultiIssuerJwtDecoder.tenantOf(jwt).authoritiesConverter().convert(jwt);
+    }
+}
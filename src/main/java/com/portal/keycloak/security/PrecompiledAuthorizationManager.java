@@ -0,0 +1,240 @@
+package com.portal.keycloak.security;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.authorization.method.MethodAuthorizationDeniedHandler;
+import org.springframework.security.authorization.method.PreAuthorizeAuthorizationManager;
+import org.springframework.security.config.core.GrantedAuthorityDefaults;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates {@link PreAuthorize} without SpEL for the expressions that only test authorities.
+ * <p>
+ * {@code hasAuthority}, {@code hasAnyAuthority}, {@code hasRole} and {@code hasAnyRole}, optionally joined with
+ * {@code or}, are compiled into the indices they accept in this manager's own {@link AuthorityIndex}, which only
+ * holds the authorities its rules name. Controllers are compiled once the context has started and any other
+ * annotated method on its first call. A check against an {@link AuthoritySetJwtAuthenticationToken} is then one bit
+ * test per accepted authority and returns a shared decision, so once the token's bitset is built it does not
+ * allocate. Every other expression is handed to Spring Security's
+ * {@link PreAuthorizeAuthorizationManager}, so the annotations keep their usual meaning.
+ */
+public class PrecompiledAuthorizationManager implements AuthorizationManager<MethodInvocation>,
+        MethodAuthorizationDeniedHandler, SmartInitializingSingleton, ApplicationContextAware {
+
+    private static final Logger log = LoggerFactory.getLogger(PrecompiledAuthorizationManager.class);
+
+    private static final Pattern AUTHORITY_CHECK = Pattern.compile("(hasAuthority|hasAnyAuthority|hasRole|hasAnyRole)\\((.*)\\)");
+
+    private static final Pattern QUOTED = Pattern.compile("\\s*'([^']*)'\\s*(,|$)");
+
+    private static final Pattern OR = Pattern.compile("\\s+or\\s+|\\s*\\|\\|\\s*");
+
+    private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+
+    private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+    private final PreAuthorizeAuthorizationManager expressionManager = new PreAuthorizeAuthorizationManager();
+
+    private final Map<Method, AuthorizationManager<MethodInvocation>> managers = new ConcurrentHashMap<>();
+
+    private final AuthorityIndex authorityIndex = new AuthorityIndex();
+
+    private ApplicationContext applicationContext;
+
+    private String rolePrefix = "ROLE_";
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+        this.expressionManager.setApplicationContext(applicationContext);
+        applicationContext.getBeanProvider(GrantedAuthorityDefaults.class)
+                .ifAvailable(defaults -> this.rolePrefix = defaults.getRolePrefix());
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (this.applicationContext == null) {
+            return;
+        }
+        int compiled = 0;
+        for (String beanName : this.applicationContext.getBeanNamesForAnnotation(Controller.class)) {
+            Class<?> beanType = this.applicationContext.getType(beanName);
+            if (beanType == null) {
+                continue;
+            }
+            Class<?> targetClass = ClassUtils.getUserClass(beanType);
+            for (Method method : ReflectionUtils.getUniqueDeclaredMethods(targetClass, ReflectionUtils.USER_DECLARED_METHODS)) {
+                if (findPreAuthorize(method, targetClass) != null) {
+                    this.managers.computeIfAbsent(method, key -> compile(key, targetClass));
+                    compiled++;
+                }
+            }
+        }
+        log.info("Precompiled {} @PreAuthorize rules", compiled);
+    }
+
+    @Override
+    public AuthorizationResult authorize(Supplier<Authentication> authentication, MethodInvocation invocation) {
+        Method method = invocation.getMethod();
+        AuthorizationManager<MethodInvocation> manager = this.managers.get(method);
+        if (manager == null) {
+            Class<?> targetClass = invocation.getThis() != null ? AopUtils.getTargetClass(invocation.getThis()) : method.getDeclaringClass();
+            manager = this.managers.computeIfAbsent(method, key -> compile(key, targetClass));
+        }
+        return manager.authorize(authentication, invocation);
+    }
+
+    /**
+     * @deprecated Use {@link #authorize(Supplier, MethodInvocation)}
+     */
+    @Deprecated
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, MethodInvocation invocation) {
+        return decision(authorize(authentication, invocation));
+    }
+
+    @Override
+    public Object handleDeniedInvocation(MethodInvocation invocation, AuthorizationResult result) {
+        return this.expressionManager.handleDeniedInvocation(invocation, result);
+    }
+
+    private AuthorizationManager<MethodInvocation> compile(Method method, Class<?> targetClass) {
+        PreAuthorize preAuthorize = findPreAuthorize(method, targetClass);
+        if (preAuthorize == null) {
+            return this.expressionManager;
+        }
+        String[] authorities = compileExpression(preAuthorize.value().trim());
+        if (authorities == null) {
+            log.debug("Evaluating @PreAuthorize(\"{}\") on {} with SpEL", preAuthorize.value(), method);
+            return this.expressionManager;
+        }
+        int[] indices = new int[authorities.length];
+        for (int i = 0; i < authorities.length; i++) {
+            indices[i] = this.authorityIndex.register(authorities[i]);
+        }
+        return new RequiredAuthorities(targetClass, authorities, this.authorityIndex, indices, this.expressionManager);
+    }
+
+    private static AuthorizationDecision decision(AuthorizationResult result) {
+        if (result == null || result instanceof AuthorizationDecision) {
+            return (AuthorizationDecision) result;
+        }
+        return result.isGranted() ? GRANTED : DENIED;
+    }
+
+    private static PreAuthorize findPreAuthorize(Method method, Class<?> targetClass) {
+        Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+        PreAuthorize preAuthorize = AnnotatedElementUtils.findMergedAnnotation(specificMethod, PreAuthorize.class);
+        if (preAuthorize == null) {
+            preAuthorize = AnnotatedElementUtils.findMergedAnnotation(targetClass, PreAuthorize.class);
+        }
+        return preAuthorize;
+    }
+
+    /**
+     * Compile an expression into the authorities it accepts
+     * @param expression {@code @PreAuthorize} expression
+     * @return Accepted authorities, {@code null} if the expression needs SpEL
+     */
+    String[] compileExpression(String expression) {
+        List<String> authorities = new ArrayList<>();
+        for (String alternative : OR.split(expression)) {
+            Matcher check = AUTHORITY_CHECK.matcher(alternative.trim());
+            if (!check.matches()) {
+                return null;
+            }
+            boolean role = check.group(1).endsWith("Role");
+            boolean single = !check.group(1).startsWith("hasAny");
+            List<String> arguments = quotedArguments(check.group(2));
+            if (arguments == null || (single && arguments.size() != 1)) {
+                return null;
+            }
+            for (String argument : arguments) {
+                authorities.add(role && !argument.startsWith(this.rolePrefix) ? this.rolePrefix + argument : argument);
+            }
+        }
+        return authorities.stream().distinct().toArray(String[]::new);
+    }
+
+    private static List<String> quotedArguments(String arguments) {
+        List<String> values = new ArrayList<>();
+        Matcher quoted = QUOTED.matcher(arguments);
+        int position = 0;
+        while (position < arguments.length()) {
+            if (!quoted.find(position) || quoted.start() != position) {
+                return null;
+            }
+            values.add(quoted.group(1));
+            position = quoted.end();
+        }
+        return values.isEmpty() ? null : values;
+    }
+
+    /**
+     * Compiled form of an expression that grants access when the caller holds any of a set of authorities.
+     */
+    private record RequiredAuthorities(Class<?> targetClass, String[] authorities, AuthorityIndex authorityIndex,
+                                       int[] indices, AuthorizationManager<MethodInvocation> expressionManager)
+            implements AuthorizationManager<MethodInvocation> {
+
+        @Override
+        public AuthorizationResult authorize(Supplier<Authentication> authentication, MethodInvocation invocation) {
+            // A method inherited by several beans can carry different class-level rules per bean
+            Object target = invocation.getThis();
+            if (target != null && target.getClass() != this.targetClass && AopUtils.getTargetClass(target) != this.targetClass) {
+                return this.expressionManager.authorize(authentication, invocation);
+            }
+            Authentication current = authentication.get();
+            if (current instanceof AuthoritySetJwtAuthenticationToken token) {
+                AuthoritySet authorities = token.getAuthoritySet();
+                for (int index : this.indices) {
+                    if (authorities.contains(this.authorityIndex, index)) {
+                        return GRANTED;
+                    }
+                }
+                return DENIED;
+            }
+            // Other authentication types keep the plain scan, without registering their authorities
+            for (GrantedAuthority authority : current.getAuthorities()) {
+                for (String required : this.authorities) {
+                    if (required.equals(authority.getAuthority())) {
+                        return GRANTED;
+                    }
+                }
+            }
+            return DENIED;
+        }
+
+        /**
+         * @deprecated Use {@link #authorize(Supplier, MethodInvocation)}
+         */
+        @Deprecated
+        @Override
+        public AuthorizationDecision check(Supplier<Authentication> authentication, MethodInvocation invocation) {
+            return decision(authorize(authentication, invocation));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.portal.keycloak.security;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.jwk.source.JWKSecurityContextJWKSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reactive counterpart of {@link DeferredJwtDecoder} and {@link IssuerJwtDecoderFactory}.
+ * <p>
+ * Once the context has started, the JWKS location is discovered and the key set loaded on the {@link WebClient},
+ * retried with exponential backoff, and refreshed periodically afterwards. None of it blocks an event-loop thread.
+ * Until the keys are loaded tokens are rejected with a 401 {@code invalid_token} and {@link #isReady()} keeps the
+ * instance out of rotation.
+ */
+public class ReactiveIssuerJwtDecoder implements ReactiveJwtDecoder, DecoderReadiness, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveIssuerJwtDecoder.class);
+
+    private static final Set<JWSAlgorithm> SIGNATURE_ALGORITHMS = Stream.of(JWSAlgorithm.Family.RSA, JWSAlgorithm.Family.EC)
+            .flatMap(Set::stream)
+            .collect(Collectors.toUnmodifiableSet());
+
+    private static final ParameterizedTypeReference<Map<String, Object>> JSON_OBJECT = new ParameterizedTypeReference<>() {
+    };
+
+    private final String issuerUri;
+
+    private final String jwkSetUri;
+
+    private final WebClient webClient;
+
+    private final ReactiveJwkSetSource jwkSetSource;
+
+    private final Duration initialBackoff;
+
+    private final Duration maxBackoff;
+
+    private final Duration refreshInterval;
+
+    private volatile ReactiveJwtDecoder delegate;
+
+    private volatile Exception lastFailure;
+
+    private volatile Disposable initialization;
+
+    private volatile Disposable refresh;
+
+    public ReactiveIssuerJwtDecoder(String issuerUri, String jwkSetUri, WebClient webClient,
+                                    ReactiveJwkSetSource jwkSetSource, Duration initialBackoff, Duration maxBackoff,
+                                    Duration refreshInterval) {
+        this.issuerUri = issuerUri;
+        this.jwkSetUri = jwkSetUri;
+        this.webClient = webClient;
+        this.jwkSetSource = jwkSetSource;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) throws JwtException {
+        ReactiveJwtDecoder decoder = this.delegate;
+        if (decoder == null) {
+            // A BadJwtException is answered with a plain 401 invalid_token; other JwtExceptions end up as a 500
+            return Mono.error(new BadJwtException("Token issuer is not available yet", this.lastFailure));
+        }
+        return decoder.decode(token);
+    }
+
+    @Override
+    public boolean isReady() {
+        return this.delegate != null;
+    }
+
+    @Override
+    public Exception getLastFailure() {
+        return this.lastFailure;
+    }
+
+    private Mono<ReactiveJwtDecoder> initialize() {
+        Mono<String> keySetUri = StringUtils.hasText(this.jwkSetUri) ? Mono.just(this.jwkSetUri) : discoverJwkSetUri();
+        return keySetUri
+                .flatMap(this.jwkSetSource::load)
+                .map(keys -> createDecoder());
+    }
+
+    private ReactiveJwtDecoder createDecoder() {
+        NimbusReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withJwkSource(this.jwkSetSource)
+                .jwtProcessorCustomizer(processor -> {
+                    // Keys are matched on their type and alg, so every asymmetric algorithm can be accepted here
+                    processor.setJWSKeySelector(new JWSVerificationKeySelector<>(SIGNATURE_ALGORITHMS,
+                            new JWKSecurityContextJWKSet()));
+                    // Claims are checked by the Spring Security validators below
+                    processor.setJWTClaimsSetVerifier((claims, context) -> {
+                    });
+                })
+                .build();
+        decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(this.issuerUri));
+        return decoder;
+    }
+
+    private Mono<String> discoverJwkSetUri() {
+        URI discoveryUri = UriComponentsBuilder.fromUriString(this.issuerUri)
+                .path("/.well-known/openid-configuration")
+                .build()
+                .toUri();
+        return this.webClient.get()
+                .uri(discoveryUri)
+                .retrieve()
+                .bodyToMono(JSON_OBJECT)
+                .handle((configuration, sink) -> {
+                    if (!this.issuerUri.equals(configuration.get("issuer"))) {
+                        sink.error(new IllegalStateException("The issuer in the discovery document does not match " + this.issuerUri));
+                    }
+                    else if (configuration.get("jwks_uri") instanceof String jwksUri) {
+                        sink.next(jwksUri);
+                    }
+                    else {
+                        sink.error(new IllegalStateException("The discovery document of " + this.issuerUri + " has no jwks_uri"));
+                    }
+                });
+    }
+
+    private void onInitialized(ReactiveJwtDecoder decoder) {
+        this.delegate = decoder;
+        this.lastFailure = null;
+        log.info("Reactive JWT decoder initialized");
+        this.refresh = Flux.interval(this.refreshInterval, this.refreshInterval)
+                .concatMap(tick -> this.jwkSetSource.refresh()
+                        .onErrorResume(ex -> {
+                            log.warn("Failed to refresh the key set, keeping the current keys: {}", ex.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    private void onFailure(Throwable ex) {
+        this.lastFailure = ex instanceof Exception exception ? exception : new IllegalStateException(ex);
+        log.warn("Reactive JWT decoder initialization failed: {}", ex.getMessage());
+    }
+
+    @Override
+    public synchronized void start() {
+        if (this.initialization != null || this.delegate != null) {
+            return;
+        }
+        this.initialization = Mono.defer(this::initialize)
+                .doOnError(this::onFailure)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, this.initialBackoff).maxBackoff(this.maxBackoff))
+                .subscribe(this::onInitialized);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (this.initialization != null) {
+            this.initialization.dispose();
+            this.initialization = null;
+        }
+        if (this.refresh != null) {
+            this.refresh.dispose();
+            this.refresh = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return this.initialization != null;
+    }
+}
@@ -0,0 +1,157 @@
+package com.portal.keycloak.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jwt.SignedJWT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Non-blocking counterpart of {@link JwkSetManager} for the reactive decoder.
+ * <p>
+ * Keys are selected from the last fetched key set without any I/O. A token with an unknown {@code kid} triggers
+ * at most one concurrent refetch on the {@link WebClient}, which every waiting request subscribes to instead of
+ * parking a thread. Refetches are spaced by a minimum interval and {@code kid}s that are still unknown afterwards
+ * are remembered for a while.
+ */
+public class ReactiveJwkSetSource implements Function<SignedJWT, Flux<JWK>> {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveJwkSetSource.class);
+
+    private final WebClient webClient;
+
+    private final Duration minRefetchInterval;
+
+    private final Cache<String, Boolean> unknownKeyIds;
+
+    private final AtomicReference<Mono<JWKSet>> inFlight = new AtomicReference<>();
+
+    private volatile JWKSet keySet;
+
+    private volatile long fetchedAt;
+
+    private volatile String jwkSetUri;
+
+    public ReactiveJwkSetSource(WebClient webClient, Duration minRefetchInterval, Duration negativeCacheTtl,
+                                long negativeCacheMaximumSize) {
+        this.webClient = webClient;
+        this.minRefetchInterval = minRefetchInterval;
+        this.unknownKeyIds = Caffeine.newBuilder()
+                .expireAfterWrite(negativeCacheTtl)
+                .maximumSize(negativeCacheMaximumSize)
+                .build();
+    }
+
+    /**
+     * Point the source at a key set and load it
+     * @param jwkSetUri Location of the issuer's JWKS
+     * @return Loaded key set, an error if it cannot be fetched or has no signing keys
+     */
+    public Mono<JWKSet> load(String jwkSetUri) {
+        this.jwkSetUri = jwkSetUri;
+        return refresh().flatMap(keys -> signingKeys(keys).isEmpty()
+                ? Mono.error(new IllegalStateException("The key set at " + jwkSetUri + " has no signing keys"))
+                : Mono.just(keys));
+    }
+
+    public boolean isLoaded() {
+        return this.keySet != null;
+    }
+
+    @Override
+    public Flux<JWK> apply(SignedJWT jwt) {
+        JWKSelector selector = new JWKSelector(JWKMatcher.forJWSHeader(jwt.getHeader()));
+        JWKSet keys = this.keySet;
+        List<JWK> selected = keys != null ? selector.select(keys) : List.of();
+        String keyId = jwt.getHeader().getKeyID();
+        if (!selected.isEmpty() || keyId == null) {
+            return Flux.fromIterable(selected);
+        }
+        return refetchFor(keyId).flatMapIterable(selector::select);
+    }
+
+    private Mono<JWKSet> refetchFor(String keyId) {
+        if (this.unknownKeyIds.getIfPresent(keyId) != null) {
+            return Mono.empty();
+        }
+        if (System.nanoTime() - this.fetchedAt < this.minRefetchInterval.toNanos()) {
+            return Mono.empty();
+        }
+        return refresh()
+                .doOnNext(keys -> {
+                    if (keys.getKeyByKeyId(keyId) == null) {
+                        this.unknownKeyIds.put(keyId, Boolean.TRUE);
+                    }
+                })
+                .onErrorResume(ex -> {
+                    log.warn("Failed to refetch the key set at {}: {}", this.jwkSetUri, ex.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Fetch the key set now, or join a fetch that is already in flight
+     * @return Key set in use after the fetch
+     */
+    Mono<JWKSet> refresh() {
+        while (true) {
+            Mono<JWKSet> existing = this.inFlight.get();
+            if (existing != null) {
+                return existing;
+            }
+            Mono<JWKSet> fetch = fetch()
+                    .doOnNext(keys -> {
+                        this.keySet = keys;
+                        this.fetchedAt = System.nanoTime();
+                    })
+                    .doFinally(signal -> this.inFlight.set(null))
+                    .cache();
+            if (this.inFlight.compareAndSet(null, fetch)) {
+                return fetch;
+            }
+        }
+    }
+
+    private Mono<JWKSet> fetch() {
+        String uri = this.jwkSetUri;
+        return this.webClient.get()
+                .uri(uri)
+                .retrieve()
+                .bodyToMono(String.class)
+                .handle((body, sink) -> {
+                    try {
+                        JWKSet parsed = JWKSet.parse(body);
+                        for (JWK key : parsed.getKeys()) {
+                            if (key.getKeyID() != null) {
+                                this.unknownKeyIds.invalidate(key.getKeyID());
+                            }
+                        }
+                        log.debug("Loaded {} keys from {}", parsed.getKeys().size(), uri);
+                        sink.next(parsed);
+                    }
+                    catch (ParseException ex) {
+                        sink.error(new IllegalStateException("Failed to parse the key set at " + uri, ex));
+                    }
+                });
+    }
+
+    private static List<JWK> signingKeys(JWKSet keys) {
+        return keys.getKeys().stream()
+                .filter(key -> key.getKeyUse() == null || KeyUse.SIGNATURE.equals(key.getKeyUse()))
+                .toList();
+    }
+}
@@ -0,0 +1,123 @@
+package com.portal.keycloak.security;
+
+import com.portal.keycloak.config.ApplicationSecurityProperties;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.reactive.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtGrantedAuthoritiesConverterAdapter;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.reactive.CorsConfigurationSource;
+import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * WebFlux counterpart of {@link SecurityConfig}, active when the application runs as a reactive web application
+ * (the {@code reactive} profile). Tokens are decoded and mapped to authorities without blocking, so a handful of
+ * event-loop threads can serve every connection.
+ */
+@Configuration
+@EnableWebFluxSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSecurityConfig {
+    @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}")
+    public String issuerUri;
+
+    @Value("${application.client}")
+    public String clientName;
+
+    @Autowired
+    ApplicationSecurityProperties securityProperties;
+
+    @Bean
+    public SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity http,
+                                                            ReactiveIssuerJwtDecoder jwtDecoder) {
+        http.csrf(ServerHttpSecurity.CsrfSpec::disable);
+        http
+                .cors(Customizer.withDefaults());
+
+        // Functional routes carry no @PreAuthorize, so the product authority is checked here
+        http.authorizeExchange((authorize) -> authorize
+                .pathMatchers("/api/v2/customers").permitAll()
+                .matchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+                .pathMatchers("/api/v2/products").hasAuthority("products:read")
+                .anyExchange().authenticated());
+
+        http.oauth2ResourceServer(oauth2 -> oauth2
+                .jwt(jwt -> jwt
+                        .jwtDecoder(jwtDecoder)
+                        .jwtAuthenticationConverter(reactiveJwtAuthenticationConverter())));
+
+        http.securityContextRepository(NoOpServerSecurityContextRepository.getInstance());
+
+        return http.build();
+    }
+
+    @Bean
+    public ReactiveJwkSetSource reactiveJwkSetSource(WebClient.Builder webClientBuilder) {
+        ApplicationSecurityProperties.Jwks jwks = securityProperties.getJwks();
+        return new ReactiveJwkSetSource(issuerWebClient(webClientBuilder),
+                jwks.getMinRefetchInterval(),
+                jwks.getNegativeCacheTtl(),
+                jwks.getNegativeCacheMaximumSize());
+    }
+
+    @Bean
+    public ReactiveIssuerJwtDecoder reactiveJwtDecoder(WebClient.Builder webClientBuilder,
+                                                       ReactiveJwkSetSource jwkSetSource) {
+        ApplicationSecurityProperties.Issuer issuer = securityProperties.getIssuer();
+        return new ReactiveIssuerJwtDecoder(issuerUri, issuer.getJwkSetUri(),
+                issuerWebClient(webClientBuilder),
+                jwkSetSource,
+                issuer.getInitialBackoff(),
+                issuer.getMaxBackoff(),
+                securityProperties.getJwks().getRefreshInterval());
+    }
+
+    @Bean
+    public ReactiveJwtAuthenticationConverter reactiveJwtAuthenticationConverter() {
+        ReactiveJwtAuthenticationConverter converter = new ReactiveJwtAuthenticationConverter();
+        converter.setJwtGrantedAuthoritiesConverter(reactiveJwtGrantedAuthoritiesConverter());
+        return converter;
+    }
+
+    @Bean
+    public Converter<Jwt, Flux<GrantedAuthority>> reactiveJwtGrantedAuthoritiesConverter() {
+        // Role mapping is pure CPU work on the cached authorities, so the blocking converter is safe to adapt
+        return new ReactiveJwtGrantedAuthoritiesConverterAdapter(new CustomJwtGrantedAuthoritiesConverter(clientName,
+                securityProperties.getAuthoritiesCache().getMaximumSize()));
+    }
+
+    private WebClient issuerWebClient(WebClient.Builder webClientBuilder) {
+        ApplicationSecurityProperties.Issuer issuer = securityProperties.getIssuer();
+        HttpClient httpClient = HttpClient.create()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) issuer.getConnectTimeout().toMillis())
+                .responseTimeout(issuer.getReadTimeout());
+        return webClientBuilder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    @Bean
+    protected CorsConfigurationSource corsConfigurationSource() {
+        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
+        source.registerCorsConfiguration("/**", new CorsConfiguration().applyPermitDefaultValues());
+        return source;
+    }
+}
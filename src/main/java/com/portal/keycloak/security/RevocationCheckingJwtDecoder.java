@@ -0,0 +1,31 @@
+package com.portal.keycloak.security;
+
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+/**
+ * {@link JwtDecoder} decorator that rejects tokens of revoked sessions and subjects. It sits in front of the
+ * {@link CachingJwtDecoder}, so tokens that were verified before their revocation are rejected on cache hits too.
+ */
+public class RevocationCheckingJwtDecoder implements JwtDecoder {
+
+    private final JwtDecoder delegate;
+
+    private final RevocationList revocationList;
+
+    public RevocationCheckingJwtDecoder(JwtDecoder delegate, RevocationList revocationList) {
+        this.delegate = delegate;
+        this.revocationList = revocationList;
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        Jwt jwt = this.delegate.decode(token);
+        if (this.revocationList.isRevoked(jwt)) {
+            throw new BadJwtException("The token has been revoked");
+        }
+        return jwt;
+    }
+}
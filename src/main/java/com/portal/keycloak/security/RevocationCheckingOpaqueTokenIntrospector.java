@@ -0,0 +1,37 @@
+package com.portal.keycloak.security;
+
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.introspection.BadOpaqueTokenException;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+
+import java.time.Instant;
+
+/**
+ * {@link OpaqueTokenIntrospector} decorator that rejects tokens of revoked sessions and subjects. It sits in front of
+ * the {@link CachingOpaqueTokenIntrospector}, so tokens that were introspected before their revocation are rejected
+ * on cache hits too.
+ */
+public class RevocationCheckingOpaqueTokenIntrospector implements OpaqueTokenIntrospector {
+
+    private final OpaqueTokenIntrospector delegate;
+
+    private final RevocationList revocationList;
+
+    public RevocationCheckingOpaqueTokenIntrospector(OpaqueTokenIntrospector delegate, RevocationList revocationList) {
+        this.delegate = delegate;
+        this.revocationList = revocationList;
+    }
+
+    @Override
+    public OAuth2AuthenticatedPrincipal introspect(String token) {
+        OAuth2AuthenticatedPrincipal principal = this.delegate.introspect(token);
+        Instant issuedAt = principal.getAttribute(OAuth2TokenIntrospectionClaimNames.IAT) instanceof Instant instant
+                ? instant
+                : null;
+        if (this.revocationList.isRevoked(principal.getAttributes(), issuedAt)) {
+            throw new BadOpaqueTokenException("The token has been revoked");
+        }
+        return principal;
+    }
+}
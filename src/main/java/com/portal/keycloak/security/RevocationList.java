@@ -0,0 +1,249 @@
+package com.portal.keycloak.security;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sessions, tokens and subjects that were logged out or disabled while their access tokens are still valid.
+ * <p>
+ * A token is checked against its {@code sid}, {@code jti} and {@code sub} with a Bloom filter first, so the common
+ * case of a token that was never revoked costs a few bit reads and no allocation; only a filter match, revoked or a
+ * false positive, is confirmed in the exact map. Revocations are rare and added under the lock, which also drops
+ * entries older than the longest access token lifetime, as every token they could match has expired by then, and
+ * rebuilds the filter from the remaining entries when it has to shed or grow.
+ */
+public class RevocationList {
+
+    // False positive rate of the filter at its capacity, each of which costs one map lookup
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final Duration tokenLifetime;
+
+    private final Clock clock;
+
+    private final Map<Key, Revocation> revoked = new ConcurrentHashMap<>();
+
+    private final LongAdder rejections = new LongAdder();
+
+    private volatile BloomFilter filter;
+
+    private long nextPurge;
+
+    /**
+     * @param tokenLifetime Longest lifetime of an access token, for which revocations are kept
+     * @param expectedRevocations Revocations the filter is sized for; it doubles when they are exceeded
+     */
+    public RevocationList(Duration tokenLifetime, int expectedRevocations) {
+        this(tokenLifetime, expectedRevocations, Clock.systemUTC());
+    }
+
+    RevocationList(Duration tokenLifetime, int expectedRevocations, Clock clock) {
+        this.tokenLifetime = tokenLifetime;
+        this.clock = clock;
+        this.filter = new BloomFilter(Math.max(expectedRevocations, 64));
+    }
+
+    /**
+     * Revoke every token of a session
+     * @param sessionId {@code sid} of the session
+     */
+    public void revokeSession(String sessionId) {
+        revoke(new Key(Type.SESSION, sessionId), Long.MAX_VALUE, expiry(null));
+    }
+
+    /**
+     * Revoke a single token
+     * @param tokenId {@code jti} of the token
+     * @param expiresAt Expiry of the token, or null if unknown
+     */
+    public void revokeToken(String tokenId, Instant expiresAt) {
+        revoke(new Key(Type.TOKEN, tokenId), Long.MAX_VALUE, expiry(expiresAt));
+    }
+
+    /**
+     * Revoke the tokens of a subject that were issued up to a point in time, so that tokens obtained after the user
+     * logs in again or is enabled again are accepted
+     * @param subject {@code sub} of the tokens
+     * @param revokedAt Time of the logout or change; tokens issued in the same second are revoked too
+     */
+    public void revokeSubject(String subject, Instant revokedAt) {
+        revoke(new Key(Type.SUBJECT, subject), revokedAt.getEpochSecond(), expiry(null));
+    }
+
+    /**
+     * Check a decoded token
+     * @param jwt Token whose signature and claims were already verified
+     * @return Whether its session, the token itself or its subject has been revoked
+     */
+    public boolean isRevoked(Jwt jwt) {
+        return isRevoked(jwt.getClaims(), jwt.getIssuedAt());
+    }
+
+    /**
+     * Check the claims of a token that was verified by other means, such as an introspection response
+     * @param claims Claims carrying {@code sid} or {@code session_state}, {@code jti} and {@code sub}
+     * @param issuedAt Issue time of the token, or null if unknown
+     * @return Whether its session, the token itself or its subject has been revoked
+     */
+    public boolean isRevoked(Map<String, Object> claims, Instant issuedAt) {
+        BloomFilter current = this.filter;
+        if (current.isEmpty()) {
+            return false;
+        }
+        Object sessionId = claims.get("sid") != null ? claims.get("sid") : claims.get("session_state");
+        boolean revoked = isRevoked(current, Type.SESSION, sessionId, issuedAt)
+                || isRevoked(current, Type.TOKEN, claims.get("jti"), issuedAt)
+                || isRevoked(current, Type.SUBJECT, claims.get("sub"), issuedAt);
+        if (revoked) {
+            this.rejections.increment();
+        }
+        return revoked;
+    }
+
+    public int getSize() {
+        return this.revoked.size();
+    }
+
+    public long getRejectionCount() {
+        return this.rejections.sum();
+    }
+
+    private boolean isRevoked(BloomFilter current, Type type, Object value, Instant issuedAt) {
+        if (!(value instanceof String string) || !current.mightContain(type, string)) {
+            return false;
+        }
+        Revocation revocation = this.revoked.get(new Key(type, string));
+        if (revocation == null) {
+            return false;
+        }
+        return issuedAt == null || issuedAt.getEpochSecond() <= revocation.issuedUntil();
+    }
+
+    private long expiry(Instant expiresAt) {
+        long latest = this.clock.millis() + this.tokenLifetime.toMillis();
+        return expiresAt != null ? Math.min(expiresAt.toEpochMilli(), latest) : latest;
+    }
+
+    private synchronized void revoke(Key key, long issuedUntil, long expiresAt) {
+        Revocation previous = this.revoked.get(key);
+        if (previous != null && previous.issuedUntil() >= issuedUntil && previous.expiresAt() >= expiresAt) {
+            return;
+        }
+        if (previous != null) {
+            issuedUntil = Math.max(issuedUntil, previous.issuedUntil());
+            expiresAt = Math.max(expiresAt, previous.expiresAt());
+        }
+        // The entry is in the map before its bits are set, so a reader that sees the bits finds the entry
+        this.revoked.put(key, new Revocation(issuedUntil, expiresAt));
+        long now = this.clock.millis();
+        boolean purged = false;
+        if (now >= this.nextPurge) {
+            purged = this.revoked.values().removeIf(revocation -> revocation.expiresAt() <= now);
+            this.nextPurge = now + Math.max(this.tokenLifetime.toMillis() / 10, 1_000);
+        }
+        BloomFilter current = this.filter;
+        if (purged || this.revoked.size() > current.capacity()) {
+            int capacity = current.capacity();
+            while (this.revoked.size() > capacity) {
+                capacity *= 2;
+            }
+            BloomFilter rebuilt = new BloomFilter(capacity);
+            this.revoked.keySet().forEach(existing -> rebuilt.add(existing.type(), existing.value()));
+            this.filter = rebuilt;
+        }
+        else {
+            current.add(key.type(), key.value());
+        }
+    }
+
+    private enum Type {
+        SESSION, TOKEN, SUBJECT
+    }
+
+    private record Key(Type type, String value) {
+    }
+
+    /**
+     * @param issuedUntil Epoch second up to which tokens are revoked, {@link Long#MAX_VALUE} for all of them
+     * @param expiresAt Epoch millisecond after which no matching token is valid anymore
+     */
+    private record Revocation(long issuedUntil, long expiresAt) {
+    }
+
+    /**
+     * Bloom filter over the type and value of a revocation. Bits are only set under the lock of the list, and read
+     * with volatile semantics so a revocation is visible to the next request.
+     */
+    private static final class BloomFilter {
+
+        private final int capacity;
+
+        private final AtomicLongArray bits;
+
+        private final long bitCount;
+
+        private final int hashCount;
+
+        private volatile boolean empty = true;
+
+        BloomFilter(int capacity) {
+            this.capacity = capacity;
+            long optimalBits = (long) (-capacity * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+            this.bits = new AtomicLongArray((int) ((optimalBits + 63) >>> 6));
+            this.bitCount = this.bits.length() * 64L;
+            this.hashCount = Math.max(1, (int) Math.round((double) optimalBits / capacity * Math.log(2)));
+        }
+
+        int capacity() {
+            return this.capacity;
+        }
+
+        boolean isEmpty() {
+            return this.empty;
+        }
+
+        void add(Type type, String value) {
+            long hash = hash(type, value);
+            int first = (int) hash;
+            int second = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < this.hashCount; i++) {
+                long bit = index(first + i * second);
+                int word = (int) (bit >>> 6);
+                this.bits.set(word, this.bits.get(word) | (1L << bit));
+            }
+            this.empty = false;
+        }
+
+        boolean mightContain(Type type, String value) {
+            long hash = hash(type, value);
+            int first = (int) hash;
+            int second = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < this.hashCount; i++) {
+                long bit = index(first + i * second);
+                if ((this.bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long index(int combined) {
+            return (combined & 0xFFFFFFFFL) % this.bitCount;
+        }
+
+        // String hash codes are cached, so spreading one over 64 bits costs a few multiplications per lookup
+        private static long hash(Type type, String value) {
+            long hash = value.hashCode() * 0x9E3779B97F4A7C15L + type.ordinal();
+            hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+            hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+            return hash ^ (hash >>> 33);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.portal.keycloak.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jose.proc.BadJWSException;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.BadJWTException;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+
+import java.security.Key;
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * JWT processor that reads the claims of a signed token with a {@link KeycloakClaimsReader} instead of letting
+ * Nimbus build the generic claims map, so the role arrays of clients other than the configured one are never
+ * materialized and the roles that are kept are compact lists of interned names.
+ * <p>
+ * The signature is verified before the payload is read at all, hence tokens with a bad signature cost no claim
+ * parsing. Key selection relies on a plain {@link JWSKeySelector}; with a claims aware key selector, or for
+ * unsigned and encrypted tokens, processing is left to {@link DefaultJWTProcessor}.
+ */
+public class RoleClaimsJwtProcessor extends DefaultJWTProcessor<SecurityContext> {
+
+    private final KeycloakClaimsReader claimsReader;
+
+    /**
+     * @param clientName Client whose roles are kept from {@code resource_access}, or null to keep every client
+     */
+    public RoleClaimsJwtProcessor(String clientName) {
+        this.claimsReader = new KeycloakClaimsReader(clientName);
+    }
+
+    @Override
+    public JWTClaimsSet process(SignedJWT signedJWT, SecurityContext context) throws BadJOSEException, JOSEException {
+        JWSKeySelector<SecurityContext> keySelector = getJWSKeySelector();
+        if (keySelector == null) {
+            return super.process(signedJWT, context);
+        }
+        JWSHeader header = signedJWT.getHeader();
+        if (getJWSTypeVerifier() != null) {
+            getJWSTypeVerifier().verify(header.getType(), context);
+        }
+
+        List<? extends Key> keyCandidates = keySelector.selectJWSKeys(header, context);
+        if (keyCandidates == null || keyCandidates.isEmpty()) {
+            throw new BadJOSEException("Signed JWT rejected: Another algorithm expected, or no matching key(s) found");
+        }
+        if (!verify(signedJWT, keyCandidates)) {
+            throw new BadJWSException("Signed JWT rejected: Invalid signature");
+        }
+
+        JWTClaimsSet claimsSet;
+        try {
+            claimsSet = this.claimsReader.read(signedJWT.getPayload().toBytes());
+        }
+        catch (ParseException ex) {
+            throw new BadJWTException(ex.getMessage(), ex);
+        }
+        if (getJWTClaimsSetVerifier() != null) {
+            getJWTClaimsSetVerifier().verify(claimsSet, context);
+        }
+        return claimsSet;
+    }
+
+    private boolean verify(SignedJWT signedJWT, List<? extends Key> keyCandidates) throws JOSEException {
+        for (Key key : keyCandidates) {
+            JWSVerifier verifier = getJWSVerifierFactory().createJWSVerifier(signedJWT.getHeader(), key);
+            if (verifier != null && signedJWT.verify(verifier)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
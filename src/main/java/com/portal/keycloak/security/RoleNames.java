@@ -0,0 +1,98 @@
+package com.portal.keycloak.security;
+
+/**
+ * Interned role names, looked up straight from a parser's character buffer so a role that was seen before costs no
+ * allocation. Readers probe an open-addressing table without locking; names are only added under the lock, and
+ * the table stops growing at {@link #MAXIMUM_SIZE} names, after which unknown names are returned as new strings.
+ */
+final class RoleNames {
+
+    static final int MAXIMUM_SIZE = 1 << 16;
+
+    private volatile String[] table = new String[1024];
+
+    private int size;
+
+    /**
+     * Get the interned name for a slice of characters
+     * @param chars Character buffer
+     * @param offset Offset of the name in the buffer
+     * @param length Length of the name
+     * @return Shared instance of the name
+     */
+    String intern(char[] chars, int offset, int length) {
+        int hash = hash(chars, offset, length);
+        String[] current = this.table;
+        int mask = current.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            String candidate = current[i];
+            if (candidate == null) {
+                return add(new String(chars, offset, length), hash);
+            }
+            if (candidate.hashCode() == hash && matches(candidate, chars, offset, length)) {
+                return candidate;
+            }
+        }
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    private synchronized String add(String name, int hash) {
+        String[] current = this.table;
+        int slot = slot(current, name, hash);
+        if (current[slot] != null) {
+            // Added by another thread since the lock-free probe
+            return current[slot];
+        }
+        if (this.size >= MAXIMUM_SIZE) {
+            return name;
+        }
+        if ((this.size + 1) * 2 > current.length) {
+            String[] grown = new String[current.length * 2];
+            for (String existing : current) {
+                if (existing != null) {
+                    grown[slot(grown, existing, existing.hashCode())] = existing;
+                }
+            }
+            grown[slot(grown, name, hash)] = name;
+            this.table = grown;
+        }
+        else {
+            current[slot] = name;
+        }
+        this.size++;
+        return name;
+    }
+
+    private static int slot(String[] table, String name, int hash) {
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != null && !table[i].equals(name)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    // Same hash as String#hashCode, so interned names compare by their cached hash first
+    private static int hash(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    private static boolean matches(String candidate, char[] chars, int offset, int length) {
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,27 +1,48 @@
 package com.portal.keycloak.security;
 
+import com.portal.keycloak.config.ApplicationSecurityProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.annotation.Order;
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.Customizer;
-import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
-import org.springframework.security.oauth2.jwt.JwtDecoders;
-import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionAuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+import org.springframework.security.oauth2.server.resource.introspection.SpringOpaqueTokenIntrospector;
+import org.springframework.security.oauth2.server.resource.web.authentication.BearerTokenAuthenticationFilter;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestOperations;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 
 @Configuration
-@EnableMethodSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class SecurityConfig {
     @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}")
     public String issuerUri;
@@ -29,38 +50,308 @@ public class SecurityConfig {
     @Value("${application.client}")
     public String clientName;
 
+    @Value("${spring.threads.virtual.enabled:false}")
+    public boolean virtualThreads;
+
+    @Autowired
+    ApplicationSecurityProperties securityProperties;
+
+    @Autowired
+    SecurityMetrics securityMetrics = SecurityMetrics.NOOP;
+
+    @Autowired
+    RestTemplateBuilder restTemplateBuilder;
+
+    /**
+     * Serves the public routes ahead of {@link #filterChain}, without bearer token processing, security context or
+     * session handling, so an {@code Authorization} header sent to them is neither decoded nor rejected. CORS stays
+     * on, as browsers call these routes too; it only does work for requests with an {@code Origin} header.
+     */
+    @Bean
+    @Order(1)
+    @ConditionalOnProperty(prefix = "application.security.public-chain", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public SecurityFilterChain publicFilterChain(HttpSecurity http) throws Exception {
+        http.securityMatchers(matchers -> matchers
+                .requestMatchers("/api/v2/customers")
+                .requestMatchers(HttpMethod.POST, "/logout/back-channel")
+                .requestMatchers(EndpointRequest.to(HealthEndpoint.class)));
+        http.cors(Customizer.withDefaults());
+        http.authorizeHttpRequests(authorize -> authorize.anyRequest().permitAll());
+        http.csrf(AbstractHttpConfigurer::disable)
+                .securityContext(AbstractHttpConfigurer::disable)
+                .sessionManagement(AbstractHttpConfigurer::disable)
+                .requestCache(AbstractHttpConfigurer::disable)
+                .anonymous(AbstractHttpConfigurer::disable)
+                .servletApi(AbstractHttpConfigurer::disable)
+                .exceptionHandling(AbstractHttpConfigurer::disable)
+                .logout(AbstractHttpConfigurer::disable);
+        return http.build();
+    }
+
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, ObjectProvider<JwtDecoder> jwtDecoder) throws Exception {
         http.csrf(AbstractHttpConfigurer::disable);
         http
                 .cors(Customizer.withDefaults());
 
-        // Allow unauthenticated access to /api/v2/customers
+        // Allow unauthenticated access to /api/v2/customers; only reached with the public chain disabled
         http.authorizeHttpRequests((authorize) -> authorize
                 .requestMatchers("/api/v2/customers").permitAll()
+                // Keycloak posts logout tokens without credentials, they are verified by the endpoint
+                .requestMatchers(HttpMethod.POST, "/logout/back-channel").permitAll()
+                .requestMatchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
                 .anyRequest().authenticated());
 
-        http.oauth2ResourceServer(oauth2 -> oauth2
-                .jwt(jwt -> jwt
-                        .decoder(JwtDecoders.fromIssuerLocation(issuerUri))
-                        .jwtAuthenticationConverter(customJwtAuthenticationConverter())));
+        if (securityProperties.getOpaqueToken().isEnabled()) {
+            http.oauth2ResourceServer(oauth2 -> oauth2
+                    .opaqueToken(opaqueToken -> opaqueToken
+                            .introspector(opaqueTokenIntrospector())));
+        }
+        else {
+            http.oauth2ResourceServer(oauth2 -> oauth2
+                    .jwt(jwt -> jwt
+                            .decoder(jwtDecoder.getObject())
+                            .jwtAuthenticationConverter(customJwtAuthenticationConverter())));
+        }
 
         http.sessionManagement(sessionAuthenticationStrategy -> sessionAuthenticationStrategy
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS));
 
+        if (securityProperties.getAdmission().isEnabled()) {
+            http.addFilterAfter(new AdmissionControlFilter(admissionControl()), BearerTokenAuthenticationFilter.class);
+        }
+
         return http.build();
     }
 
     @Bean
-    public JwtAuthenticationConverter customJwtAuthenticationConverter() {
-        JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
-        converter.setJwtGrantedAuthoritiesConverter(customJwtGrantedAuthoritiesConverter());
-        return converter;
+    public JwkSetManager jwkSetManager(RestTemplateBuilder restTemplateBuilder) {
+        ApplicationSecurityProperties.Jwks jwks = securityProperties.getJwks();
+        JwkSetManager jwkSetManager = new JwkSetManager(issuerRestOperations(restTemplateBuilder),
+                jwks.getRefreshInterval(),
+                jwks.getMinRefetchInterval(),
+                securityProperties.getIssuer().getReadTimeout(),
+                jwks.getNegativeCacheTtl(),
+                jwks.getNegativeCacheMaximumSize(),
+                backgroundThreadFactory("jwks-refresh"));
+        jwkSetManager.setMetrics(securityMetrics);
+        return jwkSetManager;
     }
 
+    /**
+     * The JWT decoding beans are only built without opaque tokens, so introspection neither waits for nor fetches
+     * the issuer's discovery document and keys
+     */
     @Bean
+    @ConditionalOnProperty(prefix = "application.security.opaque-token", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public DeferredJwtDecoder issuerJwtDecoder(RestTemplateBuilder restTemplateBuilder, JwkSetManager jwkSetManager) {
+        ApplicationSecurityProperties.Issuer issuer = securityProperties.getIssuer();
+        return new DeferredJwtDecoder(
+                new IssuerJwtDecoderFactory(issuerUri, issuer.getJwkSetUri(),
+                        issuerRestOperations(restTemplateBuilder), jwkSetManager, clientName),
+                issuer.getInitialBackoff(),
+                issuer.getMaxBackoff(),
+                backgroundThreadFactory("jwt-decoder-init"));
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = "application.security.opaque-token", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public JwtDecoder jwtDecoder(DeferredJwtDecoder decoder) {
+        ApplicationSecurityProperties.JwtCache jwtCache = securityProperties.getJwtCache();
+        JwtDecoder jwtDecoder = verifyingJwtDecoder(decoder);
+        if (jwtCache.isEnabled()) {
+            CachingJwtDecoder cachingDecoder = new CachingJwtDecoder(jwtDecoder, jwtCache.getMaximumSize());
+            securityMetrics.bindJwtCache(cachingDecoder);
+            jwtDecoder = cachingDecoder;
+        }
+        if (securityProperties.getRevocation().isEnabled()) {
+            jwtDecoder = new RevocationCheckingJwtDecoder(jwtDecoder, revocationList());
+        }
+        if (securityMetrics.isEnabled()) {
+            jwtDecoder = new InstrumentedJwtDecoder(jwtDecoder, securityMetrics);
+        }
+        return jwtDecoder;
+    }
+
+    private JwtDecoder verifyingJwtDecoder(DeferredJwtDecoder decoder) {
+        return securityProperties.getTenants().isEnabled() ? new MultiIssuerJwtDecoder(tenantRegistry()) : decoder;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "application.security.opaque-token", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public CustomJwtAuthenticationConverter customJwtAuthenticationConverter() {
+        return new CustomJwtAuthenticationConverter(customJwtGrantedAuthoritiesConverter());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "application.security.opaque-token", name = "enabled", havingValue = "false", matchIfMissing = true)
     public Converter<Jwt, Collection<GrantedAuthority>> customJwtGrantedAuthoritiesConverter() {
-        return new CustomJwtGrantedAuthoritiesConverter(clientName);
+        Converter<Jwt, Collection<GrantedAuthority>> converter = securityProperties.getTenants().isEnabled()
+                ? new MultiIssuerJwtGrantedAuthoritiesConverter()
+                : new CustomJwtGrantedAuthoritiesConverter(clientName, securityProperties.getAuthoritiesCache().getMaximumSize());
+        if (securityMetrics.isEnabled()) {
+            converter = new InstrumentedJwtGrantedAuthoritiesConverter(converter, securityMetrics);
+        }
+        return converter;
+    }
+
+    /**
+     * Tenants of the issuers in {@code application.security.tenants.trusted-issuers}, each with its own key set.
+     * The configured issuer URI is always trusted and served by the {@link #issuerJwtDecoder} bean, which the
+     * readiness probe watches. Opaque tokens are introspected at the configured issuer only.
+     */
+    @Bean
+    @ConditionalOnExpression("${application.security.tenants.enabled:false} and !${application.security.opaque-token.enabled:false}")
+    public TenantRegistry tenantRegistry() {
+        ApplicationSecurityProperties.Tenants tenants = securityProperties.getTenants();
+        TrustedIssuers issuers = new TrustedIssuers(tenants.getTrustedIssuers(), tenants.getClients(), clientName);
+        RestOperations restOperations = issuerRestOperations(restTemplateBuilder);
+        ApplicationSecurityProperties.Issuer issuer = securityProperties.getIssuer();
+        ApplicationSecurityProperties.Jwks jwks = securityProperties.getJwks();
+        long authoritiesCacheSize = securityProperties.getAuthoritiesCache().getMaximumSize();
+        TenantRegistry.Tenant defaultTenant = new TenantRegistry.Tenant(issuerUri, clientName,
+                issuerJwtDecoder(restTemplateBuilder, jwkSetManager(restTemplateBuilder)),
+                BackChannelLogout.decoder(issuerUri, jwkSetManager(restTemplateBuilder)),
+                new CustomJwtGrantedAuthoritiesConverter(clientName, authoritiesCacheSize),
+                () -> {
+                });
+        return new TenantRegistry(issuers, defaultTenant, tenantIssuer -> {
+            String client = issuers.clientFor(tenantIssuer);
+            JwkSetManager jwkSetManager = new JwkSetManager(restOperations,
+                    jwks.getRefreshInterval(),
+                    jwks.getMinRefetchInterval(),
+                    issuer.getReadTimeout(),
+                    jwks.getNegativeCacheTtl(),
+                    jwks.getNegativeCacheMaximumSize(),
+                    backgroundThreadFactory("jwks-refresh"));
+            jwkSetManager.setMetrics(securityMetrics);
+            JwtDecoder decoder;
+            try {
+                decoder = new IssuerJwtDecoderFactory(tenantIssuer, null, restOperations, jwkSetManager, client).get();
+            }
+            catch (RuntimeException ex) {
+                jwkSetManager.stop();
+                throw ex;
+            }
+            return new TenantRegistry.Tenant(tenantIssuer, client, decoder,
+                    BackChannelLogout.decoder(tenantIssuer, jwkSetManager),
+                    new CustomJwtGrantedAuthoritiesConverter(client, authoritiesCacheSize),
+                    jwkSetManager::stop);
+        }, tenants.getMaximumSize(), tenants.getExpireAfterAccess(), tenants.getMaximumPerPattern(),
+                tenants.getNegativeCacheTtl());
+    }
+
+    /**
+     * Introspects tokens at the issuer's introspection endpoint, authenticated as the configured client, and maps
+     * the realm and client roles of active tokens like {@link CustomJwtGrantedAuthoritiesConverter}. Revoked tokens
+     * are rejected behind the cache, like JWTs.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "application.security.opaque-token", name = "enabled", havingValue = "true")
+    public OpaqueTokenIntrospector opaqueTokenIntrospector() {
+        ApplicationSecurityProperties.OpaqueToken opaqueToken = securityProperties.getOpaqueToken();
+        String introspectionUri = StringUtils.hasText(opaqueToken.getIntrospectionUri())
+                ? opaqueToken.getIntrospectionUri()
+                : issuerUri + "/protocol/openid-connect/token/introspect";
+        String clientId = StringUtils.hasText(opaqueToken.getClientId()) ? opaqueToken.getClientId() : clientName;
+        SpringOpaqueTokenIntrospector introspector = new SpringOpaqueTokenIntrospector(introspectionUri,
+                issuerRestOperations(restTemplateBuilder.basicAuthentication(clientId, opaqueToken.getClientSecret())));
+        introspector.setAuthenticationConverter(claims -> new OAuth2IntrospectionAuthenticatedPrincipal(
+                claims.getClaims(), CustomJwtGrantedAuthoritiesConverter.authoritiesOf(claims.getClaims(), clientName)));
+
+        CachingOpaqueTokenIntrospector cachingIntrospector = new CachingOpaqueTokenIntrospector(introspector,
+                opaqueToken.getMaximumSize(), opaqueToken.getMaxTimeToLive());
+        securityMetrics.bindIntrospectionCache(cachingIntrospector);
+        if (securityProperties.getRevocation().isEnabled()) {
+            return new RevocationCheckingOpaqueTokenIntrospector(cachingIntrospector, revocationList());
+        }
+        return cachingIntrospector;
+    }
+
+    /**
+     * Sessions and users logged out or disabled while their tokens are still valid, checked on every decode or
+     * introspection
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "application.security.revocation", name = "enabled", havingValue = "true")
+    public RevocationList revocationList() {
+        ApplicationSecurityProperties.Revocation revocation = securityProperties.getRevocation();
+        RevocationList revocationList = new RevocationList(revocation.getTokenLifetime(),
+                revocation.getExpectedRevocations());
+        securityMetrics.bindRevocationList(revocationList);
+        return revocationList;
+    }
+
+    /**
+     * Logout tokens are verified against the keys of their issuer, with a decoder of their own as they are typed
+     * {@code logout+jwt}, and have to be addressed to the client whose roles are mapped for that issuer. With opaque
+     * tokens nothing else loads the issuer's keys, so the first logout token does.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "application.security.revocation", name = "enabled", havingValue = "true")
+    public BackChannelLogout backChannelLogout(JwkSetManager jwkSetManager) {
+        if (securityProperties.getOpaqueToken().isEnabled()) {
+            ApplicationSecurityProperties.Issuer issuer = securityProperties.getIssuer();
+            IssuerJwtDecoderFactory keyLoader = new IssuerJwtDecoderFactory(issuerUri, issuer.getJwkSetUri(),
+                    issuerRestOperations(restTemplateBuilder), jwkSetManager);
+            return new BackChannelLogout(new DeferredJwtDecoder(() -> {
+                keyLoader.get();
+                return BackChannelLogout.decoder(issuerUri, jwkSetManager);
+            }, issuer.getInitialBackoff(), issuer.getMaxBackoff()), jwt -> clientName, revocationList());
+        }
+        if (securityProperties.getTenants().isEnabled()) {
+            return new BackChannelLogout(new MultiIssuerJwtDecoder(tenantRegistry(), TenantRegistry.Tenant::logoutDecoder),
+                    jwt -> MultiIssuerJwtDecoder.tenantOf(jwt).clientName(), revocationList());
+        }
+        return new BackChannelLogout(BackChannelLogout.decoder(issuerUri, jwkSetManager), jwt -> clientName,
+                revocationList());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "application.security.revocation.events", name = "enabled", havingValue = "true")
+    public AdminEventPoller adminEventPoller() {
+        ApplicationSecurityProperties.Revocation revocation = securityProperties.getRevocation();
+        ApplicationSecurityProperties.Revocation.Events events = revocation.getEvents();
+        String clientId = StringUtils.hasText(events.getClientId()) ? events.getClientId() : clientName;
+        return new AdminEventPoller(issuerRestOperations(restTemplateBuilder), issuerUri, clientId,
+                events.getClientSecret(), events.getPollInterval(), revocation.getTokenLifetime(), revocationList(),
+                backgroundThreadFactory("revocation-events"));
+    }
+
+    /**
+     * Rate and concurrency limits per client, applied to authenticated requests before authorization
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "application.security.admission", name = "enabled", havingValue = "true")
+    public AdmissionControl admissionControl() {
+        ApplicationSecurityProperties.Admission admission = securityProperties.getAdmission();
+        Map<String, AdmissionControl.Limit> clientLimits = new HashMap<>();
+        admission.getClients().forEach((clientId, limit) -> clientLimits.put(clientId, new AdmissionControl.Limit(
+                limit.getRate() != null ? limit.getRate() : admission.getRate(),
+                limit.getBurst() != null ? limit.getBurst() : admission.getBurst(),
+                limit.getMaxConcurrent() != null ? limit.getMaxConcurrent() : admission.getMaxConcurrent())));
+        AdmissionControl admissionControl = new AdmissionControl(new AdmissionControl.Limit(admission.getRate(),
+                admission.getBurst(), admission.getMaxConcurrent()), clientLimits, admission.getMaximumClients());
+        admissionControl.setMetrics(securityMetrics);
+        return admissionControl;
+    }
+
+    private RestOperations issuerRestOperations(RestTemplateBuilder restTemplateBuilder) {
+        ApplicationSecurityProperties.Issuer issuer = securityProperties.getIssuer();
+        // The JDK client blocks without pinning, so key fetches on request threads are safe with virtual threads
+        return restTemplateBuilder
+                .requestFactoryBuilder(ClientHttpRequestFactoryBuilder.jdk())
+                .connectTimeout(issuer.getConnectTimeout())
+                .readTimeout(issuer.getReadTimeout())
+                .build();
+    }
+
+    private ThreadFactory backgroundThreadFactory(String name) {
+        if (virtualThreads) {
+            return Thread.ofVirtual().name(name).factory();
+        }
+        return Thread.ofPlatform().name(name).daemon(true).factory();
     }
 
     @Bean
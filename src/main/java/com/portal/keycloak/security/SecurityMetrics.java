@@ -0,0 +1,220 @@
+package com.portal.keycloak.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.authorization.event.AuthorizationDeniedEvent;
+import org.springframework.util.ClassUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Meters of the authentication hot path: token decoding, JWKS fetches, authority mapping and authorization
+ * denials.
+ * <p>
+ * The decoding and mapping timers are recorded by {@link InstrumentedJwtDecoder} and
+ * {@link InstrumentedJwtGrantedAuthoritiesConverter}, which are only put in front of the real components when
+ * metrics are enabled, so a disabled instance adds no work to a request. All meters are registered up front,
+ * except the denial counters which are registered once per endpoint.
+ */
+public class SecurityMetrics {
+
+    /**
+     * Instance that records nothing, used when metrics are disabled
+     */
+    public static final SecurityMetrics NOOP = new SecurityMetrics();
+
+    private final MeterRegistry registry;
+
+    private final Timer decodeSuccess;
+
+    private final Timer decodeFailure;
+
+    private final Timer keySetFetchSuccess;
+
+    private final Timer keySetFetchFailure;
+
+    private final Timer authoritiesConversion;
+
+    private final DistributionSummary roleCount;
+
+    private final Map<Object, Counter> denials = new ConcurrentHashMap<>();
+
+    private SecurityMetrics() {
+        this.registry = null;
+        this.decodeSuccess = null;
+        this.decodeFailure = null;
+        this.keySetFetchSuccess = null;
+        this.keySetFetchFailure = null;
+        this.authoritiesConversion = null;
+        this.roleCount = null;
+    }
+
+    public SecurityMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.decodeSuccess = latencyTimer("security.jwt.decode", "JWT decoding and verification latency", "success");
+        this.decodeFailure = latencyTimer("security.jwt.decode", "JWT decoding and verification latency", "failure");
+        this.keySetFetchSuccess = latencyTimer("security.jwks.fetch", "JWKS fetch latency", "success");
+        this.keySetFetchFailure = latencyTimer("security.jwks.fetch", "JWKS fetch latency", "failure");
+        this.authoritiesConversion = Timer.builder("security.authorities.conversion")
+                .description("Latency of mapping token roles to authorities")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.roleCount = DistributionSummary.builder("security.authorities.roles")
+                .description("Number of authorities mapped from a token")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Timer latencyTimer(String name, String description, String outcome) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(this.registry);
+    }
+
+    public boolean isEnabled() {
+        return this.registry != null;
+    }
+
+    void recordDecode(long startNanos, boolean success) {
+        (success ? this.decodeSuccess : this.decodeFailure).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordAuthoritiesConversion(long startNanos, int authorities) {
+        this.authoritiesConversion.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        this.roleCount.record(authorities);
+    }
+
+    void recordKeySetFetch(long startNanos, boolean success) {
+        if (this.registry == null) {
+            return;
+        }
+        (success ? this.keySetFetchSuccess : this.keySetFetchFailure).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Expose the hit and miss counts and the size of the decoded token cache
+     * @param decoder Caching decoder on the request path
+     */
+    void bindJwtCache(CachingJwtDecoder decoder) {
+        if (this.registry == null) {
+            return;
+        }
+        FunctionCounter.builder("security.jwt.cache.requests", decoder, CachingJwtDecoder::getHitCount)
+                .description("Decoded token cache lookups")
+                .tag("result", "hit")
+                .register(this.registry);
+        FunctionCounter.builder("security.jwt.cache.requests", decoder, CachingJwtDecoder::getMissCount)
+                .description("Decoded token cache lookups")
+                .tag("result", "miss")
+                .register(this.registry);
+        Gauge.builder("security.jwt.cache.size", decoder, CachingJwtDecoder::getSize)
+                .description("Decoded tokens currently cached")
+                .register(this.registry);
+    }
+
+    /**
+     * Expose the hit and miss counts and the size of the introspection cache, and the calls made to the issuer
+     * @param introspector Caching introspector on the request path
+     */
+    void bindIntrospectionCache(CachingOpaqueTokenIntrospector introspector) {
+        if (this.registry == null) {
+            return;
+        }
+        FunctionCounter.builder("security.introspection.cache.requests", introspector,
+                        CachingOpaqueTokenIntrospector::getHitCount)
+                .description("Introspection cache lookups")
+                .tag("result", "hit")
+                .register(this.registry);
+        FunctionCounter.builder("security.introspection.cache.requests", introspector,
+                        CachingOpaqueTokenIntrospector::getMissCount)
+                .description("Introspection cache lookups")
+                .tag("result", "miss")
+                .register(this.registry);
+        FunctionCounter.builder("security.introspection.calls", introspector,
+                        CachingOpaqueTokenIntrospector::getIntrospectionCount)
+                .description("Introspection requests sent to the issuer, after coalescing")
+                .register(this.registry);
+        Gauge.builder("security.introspection.cache.size", introspector, CachingOpaqueTokenIntrospector::getSize)
+                .description("Introspection results currently cached")
+                .register(this.registry);
+    }
+
+    /**
+     * Expose the number of revocations kept and the tokens rejected because of them
+     * @param revocationList Revocations checked on the request path
+     */
+    void bindRevocationList(RevocationList revocationList) {
+        if (this.registry == null) {
+            return;
+        }
+        FunctionCounter.builder("security.revocation.rejections", revocationList, RevocationList::getRejectionCount)
+                .description("Tokens rejected because their session or subject was revoked")
+                .register(this.registry);
+        Gauge.builder("security.revocation.size", revocationList, RevocationList::getSize)
+                .description("Revoked sessions, tokens and subjects currently kept")
+                .register(this.registry);
+    }
+
+    /**
+     * Expose the admitted and rejected requests and the requests in progress of a client, registered when the
+     * client sends its first request
+     * @param client Limiter of the client
+     */
+    void bindAdmissionClient(AdmissionControl.Client client) {
+        if (this.registry == null) {
+            return;
+        }
+        admissionCounter(client, "admitted", AdmissionControl.Client::getAdmittedCount);
+        admissionCounter(client, "rate_limited", AdmissionControl.Client::getRateLimitedCount);
+        admissionCounter(client, "concurrency_limited", AdmissionControl.Client::getConcurrencyLimitedCount);
+        Gauge.builder("security.admission.in.flight", client, AdmissionControl.Client::getInFlight)
+                .description("Requests of a client in progress")
+                .tag("client", client.getClientId())
+                .register(this.registry);
+    }
+
+    private void admissionCounter(AdmissionControl.Client client, String outcome,
+                                  ToDoubleFunction<AdmissionControl.Client> count) {
+        FunctionCounter.builder("security.admission.requests", client, count)
+                .description("Authenticated requests by admission outcome")
+                .tag("client", client.getClientId())
+                .tag("outcome", outcome)
+                .register(this.registry);
+    }
+
+    @EventListener
+    public void onAuthorizationDenied(AuthorizationDeniedEvent<?> event) {
+        if (this.registry == null) {
+            return;
+        }
+        Object object = event.getObject();
+        Object key = object instanceof MethodInvocation invocation ? invocation.getMethod() : "http";
+        this.denials.computeIfAbsent(key, endpoint -> Counter.builder("security.authorization.denials")
+                .description("Requests denied by an authorization rule")
+                .tag("endpoint", endpointName(object))
+                .register(this.registry))
+                .increment();
+    }
+
+    private static String endpointName(Object object) {
+        if (object instanceof MethodInvocation invocation) {
+            Class<?> targetClass = invocation.getThis() != null
+                    ? ClassUtils.getUserClass(invocation.getThis())
+                    : invocation.getMethod().getDeclaringClass();
+            return targetClass.getSimpleName() + "#" + invocation.getMethod().getName();
+        }
+        // URL rules are evaluated before a handler is resolved, so they share one bounded tag value
+        return "http";
+    }
+}
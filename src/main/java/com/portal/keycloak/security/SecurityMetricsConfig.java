@@ -0,0 +1,39 @@
+package com.portal.keycloak.security;
+
+import com.portal.keycloak.config.ApplicationSecurityProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authorization.AuthorizationEventPublisher;
+import org.springframework.security.authorization.SpringAuthorizationEventPublisher;
+
+/**
+ * Meters for the servlet security chain. With {@code application.security.metrics.enabled=false} the
+ * {@link SecurityMetrics#NOOP} instance is used and {@link SecurityConfig} leaves the decoder and the authority
+ * converter undecorated.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class SecurityMetricsConfig {
+
+    @Bean
+    public SecurityMetrics securityMetrics(ApplicationSecurityProperties securityProperties,
+                                           ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (!securityProperties.getMetrics().isEnabled() || registry == null) {
+            return SecurityMetrics.NOOP;
+        }
+        return new SecurityMetrics(registry);
+    }
+
+    /**
+     * Publishes denied URL authorizations as events, so they are counted by {@link SecurityMetrics}
+     */
+    @Bean
+    public AuthorizationEventPublisher authorizationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        return new SpringAuthorizationEventPublisher(applicationEventPublisher);
+    }
+}
@@ -0,0 +1,218 @@
+package com.portal.keycloak.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Decoders and authority converters of the trusted issuers, built on the first token of an issuer.
+ * <p>
+ * The configured issuer is a permanent tenant served by the application's own decoder. Other tenants are kept in a
+ * bounded cache keyed by issuer URI, so resolving a known issuer is a single hash lookup; tenants idle for longer
+ * than the configured time, or pushed out by the size bound, are shut down and built again when their issuer shows
+ * up anew. Issuers are checked against the {@link TrustedIssuers} before a tenant is built, and a tenant is only
+ * cached once its issuer's keys are loaded. Issuers whose tenant could not be built are rejected for a short while
+ * without contacting them again, and each issuer pattern is limited in how many tenants it creates; failed builds
+ * count against that limit until their negative entry expires. Tokens with made-up issuers therefore can neither
+ * grow the cache without bound, nor push out the tenants of real issuers, nor make more than
+ * {@code maximumPerPattern} calls to an issuer host per negative cache period.
+ */
+public class TenantRegistry implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantRegistry.class);
+
+    private final TrustedIssuers trustedIssuers;
+
+    private final Tenant defaultTenant;
+
+    private final Function<String, Tenant> tenantFactory;
+
+    private final long maximumPerPattern;
+
+    private final Cache<String, Tenant> tenants;
+
+    private final Cache<String, Exception> failedIssuers;
+
+    private final Map<String, AtomicInteger> tenantsPerPattern = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<Tenant>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param trustedIssuers Issuers tokens are accepted from
+     * @param defaultTenant Tenant of the configured issuer, never evicted nor shut down; null if there is none
+     * @param tenantFactory Builds the tenant of a trusted issuer, with its keys loaded, or throws if the issuer is
+     *                      not available; runs on the thread of the first token of the issuer
+     * @param maximumSize Maximum number of tenants kept
+     * @param expireAfterAccess Time after which an unused tenant is shut down
+     * @param maximumPerPattern Maximum number of tenants of issuers matching the same pattern
+     * @param negativeCacheTtl Time during which an issuer whose tenant could not be built is rejected outright, and
+     *                         counted against the maximum of its pattern
+     */
+    public TenantRegistry(TrustedIssuers trustedIssuers, Tenant defaultTenant, Function<String, Tenant> tenantFactory,
+                          long maximumSize, Duration expireAfterAccess, long maximumPerPattern,
+                          Duration negativeCacheTtl) {
+        this.trustedIssuers = trustedIssuers;
+        this.defaultTenant = defaultTenant;
+        this.tenantFactory = tenantFactory;
+        this.maximumPerPattern = maximumPerPattern;
+        this.tenants = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccess)
+                // Shut evicted tenants down right away rather than on the common pool
+                .executor(Runnable::run)
+                .<String, Tenant>removalListener((issuer, tenant, cause) -> {
+                    if (tenant != null) {
+                        release(tenant.issuer());
+                        tenant.shutdown().run();
+                    }
+                })
+                .build();
+        this.failedIssuers = Caffeine.newBuilder()
+                .expireAfterWrite(negativeCacheTtl)
+                .maximumSize(maximumSize)
+                // Expired promptly, so the pattern gets its budget back without waiting for other cache activity
+                .scheduler(Scheduler.systemScheduler())
+                .executor(Runnable::run)
+                .<String, Exception>removalListener((issuer, failure, cause) -> {
+                    if (issuer != null) {
+                        release(issuer);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Get the tenant of an issuer, building it if needed
+     * @param issuer Issuer URI from the token
+     * @return Tenant of the issuer
+     * @throws BadJwtException if the issuer is missing, not trusted or not available, or its pattern has reached
+     *                         the maximum number of tenants
+     */
+    public Tenant resolve(String issuer) {
+        if (issuer == null) {
+            throw new BadJwtException("The token has no issuer");
+        }
+        if (this.defaultTenant != null && this.defaultTenant.issuer().equals(issuer)) {
+            return this.defaultTenant;
+        }
+        Tenant tenant = this.tenants.getIfPresent(issuer);
+        if (tenant != null) {
+            return tenant;
+        }
+        if (!this.trustedIssuers.isTrusted(issuer)) {
+            throw new BadJwtException("The token issuer is not trusted");
+        }
+        if (this.failedIssuers.getIfPresent(issuer) != null) {
+            throw new BadJwtException("The token issuer is not available");
+        }
+        return build(issuer);
+    }
+
+    /**
+     * Build the tenant of an issuer once, tokens of the same issuer arriving meanwhile wait for it
+     */
+    private Tenant build(String issuer) {
+        CompletableFuture<Tenant> building = new CompletableFuture<>();
+        CompletableFuture<Tenant> pending = this.inFlight.putIfAbsent(issuer, building);
+        if (pending != null) {
+            try {
+                return pending.join();
+            }
+            catch (CompletionException ex) {
+                throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+            }
+        }
+        try {
+            Tenant tenant = buildTenant(issuer);
+            building.complete(tenant);
+            return tenant;
+        }
+        catch (RuntimeException | Error ex) {
+            building.completeExceptionally(ex);
+            throw ex;
+        }
+        finally {
+            this.inFlight.remove(issuer, building);
+        }
+    }
+
+    private Tenant buildTenant(String issuer) {
+        // Cached by a build that completed between the lookup in resolve and claiming the build
+        Tenant cached = this.tenants.getIfPresent(issuer);
+        if (cached != null) {
+            return cached;
+        }
+        String pattern = this.trustedIssuers.patternFor(issuer);
+        if (pattern != null && !reserve(pattern)) {
+            throw new BadJwtException("The token issuer matches a pattern that has reached its maximum number of tenants");
+        }
+        Tenant tenant;
+        try {
+            tenant = this.tenantFactory.apply(issuer);
+        }
+        catch (RuntimeException ex) {
+            // Keeps the reservation of the pattern until the entry expires
+            this.failedIssuers.put(issuer, ex);
+            log.warn("Tenant of issuer {} could not be built: {}", issuer, ex.getMessage());
+            throw new BadJwtException("The token issuer is not available", ex);
+        }
+        this.tenants.put(issuer, tenant);
+        return tenant;
+    }
+
+    private boolean reserve(String pattern) {
+        AtomicInteger count = this.tenantsPerPattern.computeIfAbsent(pattern, key -> new AtomicInteger());
+        if (count.incrementAndGet() > this.maximumPerPattern) {
+            count.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private void release(String issuer) {
+        String pattern = this.trustedIssuers.patternFor(issuer);
+        if (pattern != null) {
+            this.tenantsPerPattern.get(pattern).decrementAndGet();
+        }
+    }
+
+    public long getSize() {
+        return this.tenants.estimatedSize();
+    }
+
+    @Override
+    public void close() {
+        this.tenants.invalidateAll();
+        this.tenants.cleanUp();
+        this.failedIssuers.invalidateAll();
+    }
+
+    /**
+     * Token processing of one issuer
+     * @param issuer Issuer URI
+     * @param clientName Client whose roles are mapped to authorities
+     * @param decoder Decoder validating the issuer's tokens
+     * @param logoutDecoder Decoder validating the issuer's back-channel logout tokens
+     * @param authoritiesConverter Converter of the issuer's tokens to authorities
+     * @param shutdown Releases the background work of the decoder when the tenant is evicted
+     */
+    public record Tenant(String issuer, String clientName, JwtDecoder decoder, JwtDecoder logoutDecoder,
+                         Converter<Jwt, Collection<GrantedAuthority>> authoritiesConverter, Runnable shutdown) {
+    }
+}
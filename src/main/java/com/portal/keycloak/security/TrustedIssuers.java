@@ -0,0 +1,72 @@
+package com.portal.keycloak.security;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Allow-list of token issuers, and the client whose roles are mapped for each of them.
+ * <p>
+ * Entries are either exact issuer URIs or patterns in which {@code *} stands for one path segment, such as
+ * {@code https://sso.example.com/realms/*}, so realms created later on a trusted Keycloak are accepted without a
+ * configuration change. The client of an issuer is looked up by its realm name, the last path segment of the
+ * issuer URI, and falls back to the default client.
+ */
+public class TrustedIssuers {
+
+    private final Set<String> exactIssuers = new HashSet<>();
+
+    private final Map<String, Pattern> issuerPatterns = new LinkedHashMap<>();
+
+    private final Map<String, String> clientsByRealm;
+
+    private final String defaultClient;
+
+    public TrustedIssuers(Collection<String> trustedIssuers, Map<String, String> clientsByRealm, String defaultClient) {
+        for (String trustedIssuer : trustedIssuers) {
+            if (trustedIssuer.contains("*")) {
+                this.issuerPatterns.put(trustedIssuer, Pattern.compile(Pattern.quote(trustedIssuer).replace("*", "\\E[^/]+\\Q")));
+            }
+            else {
+                this.exactIssuers.add(trustedIssuer);
+            }
+        }
+        this.clientsByRealm = Map.copyOf(clientsByRealm);
+        this.defaultClient = defaultClient;
+    }
+
+    public boolean isTrusted(String issuer) {
+        return this.exactIssuers.contains(issuer) || matchingPattern(issuer) != null;
+    }
+
+    /**
+     * Get the pattern an issuer is trusted by
+     * @param issuer Issuer URI
+     * @return Configured pattern matching the issuer, or null if the issuer is listed as is or not trusted
+     */
+    public String patternFor(String issuer) {
+        return this.exactIssuers.contains(issuer) ? null : matchingPattern(issuer);
+    }
+
+    private String matchingPattern(String issuer) {
+        for (Map.Entry<String, Pattern> pattern : this.issuerPatterns.entrySet()) {
+            if (pattern.getValue().matcher(issuer).matches()) {
+                return pattern.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the client whose roles are mapped for an issuer
+     * @param issuer Trusted issuer URI
+     * @return Client configured for the issuer's realm, or the default client
+     */
+    public String clientFor(String issuer) {
+        String realm = issuer.substring(issuer.lastIndexOf('/') + 1);
+        return this.clientsByRealm.getOrDefault(realm, this.defaultClient);
+    }
+}
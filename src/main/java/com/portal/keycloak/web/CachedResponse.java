@@ -0,0 +1,46 @@
+package com.portal.keycloak.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code GET} endpoint whose response body is kept encoded, with its ETag, by the {@link ResponseCache}.
+ * Repeated requests are answered from the cache, and with 304 when they carry a matching {@code If-None-Match},
+ * without invoking the controller. Only {@code String} and {@code byte[]} bodies are cached.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CachedResponse {
+
+    /**
+     * @return Seconds a body is reused, -1 for {@code application.security.response-cache.time-to-live}
+     */
+    long timeToLive() default -1;
+
+    /**
+     * @return Part of the caller's authentication the content depends on
+     */
+    Vary vary() default Vary.NONE;
+
+    /**
+     * Part of the caller's authentication that is added to the cache key
+     */
+    enum Vary {
+        /**
+         * Same content for every caller allowed to call the endpoint
+         */
+        NONE,
+        /**
+         * Content depends on the caller's authorities
+         */
+        AUTHORITIES,
+        /**
+         * Content depends on who the caller is
+         */
+        PRINCIPAL
+    }
+}
@@ -0,0 +1,319 @@
+package com.portal.keycloak.web;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.security.access.prepost.PostAuthorize;
+import org.springframework.security.access.prepost.PostFilter;
+import org.springframework.security.access.prepost.PreFilter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.server.resource.authentication.AbstractOAuth2TokenAuthenticationToken;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoded response bodies of {@link CachedResponse} endpoints.
+ * <p>
+ * A body is stored as the bytes the message converter would write, with an MD5 based ETag computed once, and, when
+ * it is large enough, also gzipped with its own ETag, so a hit is written without a message converter or any
+ * compression. Entries are keyed by path, query string and {@code Accept} header, plus the caller's authorities or
+ * identity where the endpoint declares that its content depends on them, and expire after the endpoint's time to
+ * live.
+ * <p>
+ * A hit only has the endpoint's {@code @PreAuthorize} rule checked, so endpoints with method security that needs
+ * the method to run, such as {@code @PostAuthorize} or {@code @PostFilter}, cannot be cached.
+ */
+public class ResponseCache {
+
+    static final String CACHE_CONTROL = "private, no-cache";
+
+    static final String VARY = HttpHeaders.ACCEPT;
+
+    static final String VARY_GZIPPED = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+
+    private static final List<Class<? extends Annotation>> INVOCATION_CHECKS = List.of(PostAuthorize.class,
+            PostFilter.class, PreFilter.class, Secured.class);
+
+    private static final Policy NOT_CACHED = new Policy(false, 0, CachedResponse.Vary.NONE);
+
+    private final Cache<Key, Entry> cache;
+
+    private final long defaultTimeToLiveNanos;
+
+    private final int gzipMinSize;
+
+    private final Map<Method, Policy> policies = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder notModified = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maximumSize Entries kept at most
+     * @param defaultTimeToLive How long a body is reused unless the endpoint sets its own
+     * @param gzipMinSize Smallest body that is also kept gzipped
+     */
+    public ResponseCache(long maximumSize, Duration defaultTimeToLive, int gzipMinSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new EntryExpiry())
+                .build();
+        this.defaultTimeToLiveNanos = defaultTimeToLive.toNanos();
+        this.gzipMinSize = gzipMinSize;
+    }
+
+    /**
+     * Get how a handler method is cached, resolved once per method
+     * @param method Handler method
+     * @param beanType Controller class, which may carry the annotation instead
+     * @return Caching policy of the method
+     * @throws IllegalStateException if the method is cached but carries method security a hit would skip
+     */
+    Policy policy(Method method, Class<?> beanType) {
+        Policy policy = this.policies.get(method);
+        if (policy == null) {
+            policy = this.policies.computeIfAbsent(method, key -> resolvePolicy(key, beanType));
+        }
+        return policy;
+    }
+
+    private Policy resolvePolicy(Method method, Class<?> beanType) {
+        CachedResponse cachedResponse = AnnotatedElementUtils.findMergedAnnotation(method, CachedResponse.class);
+        if (cachedResponse == null) {
+            cachedResponse = AnnotatedElementUtils.findMergedAnnotation(beanType, CachedResponse.class);
+        }
+        if (cachedResponse == null) {
+            return NOT_CACHED;
+        }
+        for (Class<? extends Annotation> check : INVOCATION_CHECKS) {
+            if (AnnotatedElementUtils.hasAnnotation(method, check) || AnnotatedElementUtils.hasAnnotation(beanType, check)) {
+                throw new IllegalStateException("@CachedResponse cannot be used on " + method + ", its @"
+                        + check.getSimpleName() + " would not be applied to responses served from the cache");
+            }
+        }
+        long timeToLiveNanos = cachedResponse.timeToLive() < 0
+                ? this.defaultTimeToLiveNanos
+                : TimeUnit.SECONDS.toNanos(cachedResponse.timeToLive());
+        return new Policy(timeToLiveNanos > 0, timeToLiveNanos, cachedResponse.vary());
+    }
+
+    /**
+     * Build the cache key of a request
+     * @param policy Caching policy of the handler
+     * @param path Request path
+     * @param query Query string, may be {@code null}
+     * @param accept {@code Accept} header, may be {@code null}
+     * @param authentication Current authentication, may be {@code null}
+     * @return Key of the request's entry
+     */
+    static Key key(Policy policy, String path, String query, String accept, Authentication authentication) {
+        Object variant = null;
+        if (authentication != null) {
+            switch (policy.vary()) {
+                // A set, so the same authorities in another order share the entry
+                case AUTHORITIES -> variant = Set.copyOf(AuthorityUtils.authorityListToSet(authentication.getAuthorities()));
+                // Subjects are only unique within one issuer
+                case PRINCIPAL -> variant = authentication instanceof AbstractOAuth2TokenAuthenticationToken<?> token
+                        ? token.getTokenAttributes().get("iss") + " " + token.getName()
+                        : authentication.getName();
+                default -> {
+                }
+            }
+        }
+        return new Key(path, query, accept, variant);
+    }
+
+    Entry get(Key key) {
+        Entry entry = this.cache.getIfPresent(key);
+        if (entry == null) {
+            this.misses.increment();
+        }
+        return entry;
+    }
+
+    Entry put(Key key, String contentType, byte[] body, Policy policy) {
+        Entry entry = Entry.of(contentType, body, policy.timeToLiveNanos(), this.gzipMinSize);
+        this.cache.put(key, entry);
+        return entry;
+    }
+
+    void recordHit(boolean wasNotModified) {
+        (wasNotModified ? this.notModified : this.hits).increment();
+    }
+
+    /**
+     * Drop every entry, e.g. after the content of the cached endpoints changed
+     */
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getNotModifiedCount() {
+        return this.notModified.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getSize() {
+        return this.cache.estimatedSize();
+    }
+
+    /**
+     * How a handler method is cached
+     * @param cached Whether its responses are cached at all
+     * @param timeToLiveNanos How long a body is reused
+     * @param vary Part of the caller's authentication in the key
+     */
+    record Policy(boolean cached, long timeToLiveNanos, CachedResponse.Vary vary) {
+    }
+
+    record Key(String path, String query, String accept, Object variant) {
+    }
+
+    /**
+     * Encoded body of a response, with its gzipped form if it is worth compressing
+     */
+    static final class Entry {
+
+        private final String contentType;
+
+        private final byte[] body;
+
+        private final String eTag;
+
+        private final byte[] gzippedBody;
+
+        private final String gzippedETag;
+
+        private final long timeToLiveNanos;
+
+        private Entry(String contentType, byte[] body, String eTag, byte[] gzippedBody, String gzippedETag,
+                      long timeToLiveNanos) {
+            this.contentType = contentType;
+            this.body = body;
+            this.eTag = eTag;
+            this.gzippedBody = gzippedBody;
+            this.gzippedETag = gzippedETag;
+            this.timeToLiveNanos = timeToLiveNanos;
+        }
+
+        static Entry of(String contentType, byte[] body, long timeToLiveNanos, int gzipMinSize) {
+            String digest = DigestUtils.md5DigestAsHex(body);
+            byte[] gzippedBody = body.length >= gzipMinSize ? gzip(body) : null;
+            // Compression is only kept when it actually saves bytes
+            if (gzippedBody != null && gzippedBody.length >= body.length) {
+                gzippedBody = null;
+            }
+            return new Entry(contentType, body, "\"" + digest + "\"", gzippedBody,
+                    gzippedBody != null ? "\"" + digest + "-gzip\"" : null, timeToLiveNanos);
+        }
+
+        private static byte[] gzip(byte[] body) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + 32);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(body);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * Check a request's {@code If-None-Match} header, with the weak comparison it calls for
+         * @param ifNoneMatch Header value, may be {@code null}
+         * @return Whether the client already has this content, in either encoding
+         */
+        boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            int start = 0;
+            while (start < ifNoneMatch.length()) {
+                int end = ifNoneMatch.indexOf(',', start);
+                if (end < 0) {
+                    end = ifNoneMatch.length();
+                }
+                String tag = ifNoneMatch.substring(start, end).trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(this.eTag) || tag.equals(this.gzippedETag)) {
+                    return true;
+                }
+                start = end + 1;
+            }
+            return false;
+        }
+
+        String getContentType() {
+            return this.contentType;
+        }
+
+        /**
+         * @param gzipped Whether the gzipped form is wanted
+         * @return Body in that form, the plain one if it is not kept gzipped
+         */
+        byte[] getBody(boolean gzipped) {
+            return gzipped && this.gzippedBody != null ? this.gzippedBody : this.body;
+        }
+
+        String getETag(boolean gzipped) {
+            return gzipped && this.gzippedBody != null ? this.gzippedETag : this.eTag;
+        }
+
+        boolean isGzipped() {
+            return this.gzippedBody != null;
+        }
+
+        /**
+         * @return {@code Vary} header of the response, naming the request headers the cache key and encoding depend on
+         */
+        String getVary() {
+            return this.gzippedBody != null ? VARY_GZIPPED : VARY;
+        }
+    }
+
+    private static final class EntryExpiry implements Expiry<Key, Entry> {
+
+        @Override
+        public long expireAfterCreate(Key key, Entry value, long currentTime) {
+            return value.timeToLiveNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, Entry value, long currentTime, long currentDuration) {
+            return value.timeToLiveNanos;
+        }
+
+        @Override
+        public long expireAfterRead(Key key, Entry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
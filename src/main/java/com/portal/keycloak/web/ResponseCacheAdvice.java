@@ -0,0 +1,85 @@
+package com.portal.keycloak.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores the body of a {@link CachedResponse} endpoint in the {@link ResponseCache} after a miss, encoded as the
+ * message converter is about to write it, and adds its ETag. A request whose {@code If-None-Match} already matches
+ * the fresh body gets a 304 without it.
+ */
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "application.security.response-cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ResponseCacheAdvice implements ResponseBodyAdvice<Object> {
+
+    private final ResponseCache responseCache;
+
+    public ResponseCacheAdvice(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return returnType.hasMethodAnnotation(CachedResponse.class)
+                || returnType.getContainingClass().isAnnotationPresent(CachedResponse.class);
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest)
+                || !(response instanceof ServletServerHttpResponse servletResponse)) {
+            return body;
+        }
+        HttpServletRequest httpRequest = servletRequest.getServletRequest();
+        HttpServletResponse httpResponse = servletResponse.getServletResponse();
+        if (!(httpRequest.getAttribute(ResponseCacheInterceptor.KEY_ATTRIBUTE) instanceof ResponseCache.Key key)
+                || !(httpRequest.getAttribute(ResponseCacheInterceptor.POLICY_ATTRIBUTE) instanceof ResponseCache.Policy policy)
+                || httpResponse.getStatus() != HttpServletResponse.SC_OK) {
+            return body;
+        }
+
+        MediaType contentType = selectedContentType;
+        byte[] bytes;
+        if (body instanceof String text) {
+            // Written with the converter's charset, UTF-8 unless the content type names another
+            Charset charset = contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+            contentType = new MediaType(contentType, charset);
+            bytes = text.getBytes(charset);
+        }
+        else if (body instanceof byte[] raw) {
+            bytes = raw;
+        }
+        else {
+            return body;
+        }
+
+        ResponseCache.Entry entry = this.responseCache.put(key, contentType.toString(), bytes, policy);
+        // Set on the servlet response, as the headers of the wrapper are only written together with a body
+        httpResponse.setHeader(HttpHeaders.ETAG, entry.getETag(false));
+        httpResponse.setHeader(HttpHeaders.CACHE_CONTROL, ResponseCache.CACHE_CONTROL);
+        httpResponse.setHeader(HttpHeaders.VARY, entry.getVary());
+        if (entry.matches(httpRequest.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return null;
+        }
+        return body;
+    }
+}
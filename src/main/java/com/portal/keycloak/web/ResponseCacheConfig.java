@@ -0,0 +1,82 @@
+package com.portal.keycloak.web;
+
+import com.portal.keycloak.config.ApplicationSecurityProperties;
+import com.portal.keycloak.security.PrecompiledAuthorizationManager;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+/**
+ * Response cache of the {@link CachedResponse} endpoints, with its hit, 304 and miss counts published as
+ * {@code http.response.cache.*} meters unless metrics are disabled.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "application.security.response-cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ResponseCacheConfig implements WebMvcConfigurer {
+
+    @Autowired
+    ApplicationSecurityProperties securityProperties;
+
+    @Autowired
+    ObjectProvider<ResponseCache> responseCache;
+
+    @Autowired
+    ObjectProvider<PrecompiledAuthorizationManager> authorizationManager;
+
+    @Bean
+    public ResponseCache responseCache(ObjectProvider<MeterRegistry> meterRegistry) {
+        ApplicationSecurityProperties.ResponseCache properties = securityProperties.getResponseCache();
+        ResponseCache responseCache = new ResponseCache(properties.getMaximumSize(), properties.getTimeToLive(),
+                properties.getGzipMinSize());
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (securityProperties.getMetrics().isEnabled() && registry != null) {
+            bindMetrics(responseCache, registry);
+        }
+        return responseCache;
+    }
+
+    /**
+     * Resolves the caching policy of every handler method at startup, so a {@link CachedResponse} endpoint that
+     * cannot be cached fails the start rather than its first request
+     */
+    @Bean
+    public SmartInitializingSingleton responseCachePolicies(ObjectProvider<RequestMappingHandlerMapping> handlerMappings) {
+        return () -> handlerMappings.orderedStream().forEach(handlerMapping -> handlerMapping.getHandlerMethods().values()
+                .forEach(handlerMethod -> responseCache.getObject().policy(handlerMethod.getMethod(),
+                        handlerMethod.getBeanType())));
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ResponseCacheInterceptor(responseCache.getObject(), authorizationManager.getObject()));
+    }
+
+    private static void bindMetrics(ResponseCache responseCache, MeterRegistry registry) {
+        FunctionCounter.builder("http.response.cache.requests", responseCache, ResponseCache::getHitCount)
+                .description("Response cache lookups")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("http.response.cache.requests", responseCache, ResponseCache::getNotModifiedCount)
+                .description("Response cache lookups")
+                .tag("result", "not_modified")
+                .register(registry);
+        FunctionCounter.builder("http.response.cache.requests", responseCache, ResponseCache::getMissCount)
+                .description("Response cache lookups")
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("http.response.cache.size", responseCache, ResponseCache::getSize)
+                .description("Responses currently cached")
+                .register(registry);
+    }
+}
@@ -0,0 +1,144 @@
+package com.portal.keycloak.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.util.SimpleMethodInvocation;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+
+/**
+ * Answers requests to {@link CachedResponse} endpoints from the {@link ResponseCache} before the controller is
+ * invoked.
+ * <p>
+ * URL authorization has already run in the security filter chain, and the endpoint's {@code @PreAuthorize} rule,
+ * which would otherwise only be checked when the controller is called, is checked here against the precompiled
+ * authorization manager before anything cached is sent. Callers it denies go on to the controller and are rejected
+ * there as before. A matching {@code If-None-Match} gets a 304, anything else the stored bytes, gzipped if the client
+ * accepts gzip with a non-zero q-value. On a miss the key is left in a request attribute for the
+ * {@link ResponseCacheAdvice} to store the body.
+ */
+public class ResponseCacheInterceptor implements HandlerInterceptor {
+
+    static final String KEY_ATTRIBUTE = ResponseCacheInterceptor.class.getName() + ".KEY";
+
+    static final String POLICY_ATTRIBUTE = ResponseCacheInterceptor.class.getName() + ".POLICY";
+
+    private final ResponseCache responseCache;
+
+    private final AuthorizationManager<MethodInvocation> authorizationManager;
+
+    private final SecurityContextHolderStrategy securityContextHolderStrategy = SecurityContextHolder.getContextHolderStrategy();
+
+    /**
+     * @param responseCache Stored responses
+     * @param authorizationManager Manager evaluating {@code @PreAuthorize} on the request path
+     */
+    public ResponseCacheInterceptor(ResponseCache responseCache, AuthorizationManager<MethodInvocation> authorizationManager) {
+        this.responseCache = responseCache;
+        this.authorizationManager = authorizationManager;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return true;
+        }
+        ResponseCache.Policy policy = this.responseCache.policy(handlerMethod.getMethod(), handlerMethod.getBeanType());
+        if (!policy.cached()) {
+            return true;
+        }
+
+        Authentication authentication = this.securityContextHolderStrategy.getContext().getAuthentication();
+        ResponseCache.Key key = ResponseCache.key(policy, request.getRequestURI(), request.getQueryString(),
+                request.getHeader(HttpHeaders.ACCEPT), authentication);
+        ResponseCache.Entry entry = this.responseCache.get(key);
+        if (entry == null || !isAuthorized(handlerMethod, authentication)) {
+            request.setAttribute(KEY_ATTRIBUTE, key);
+            request.setAttribute(POLICY_ATTRIBUTE, policy);
+            return true;
+        }
+
+        boolean gzipped = entry.isGzipped() && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        response.setHeader(HttpHeaders.ETAG, entry.getETag(gzipped));
+        response.setHeader(HttpHeaders.CACHE_CONTROL, ResponseCache.CACHE_CONTROL);
+        response.setHeader(HttpHeaders.VARY, entry.getVary());
+        if (entry.matches(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            this.responseCache.recordHit(true);
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return false;
+        }
+
+        this.responseCache.recordHit(false);
+        byte[] body = entry.getBody(gzipped);
+        response.setContentType(entry.getContentType());
+        response.setContentLength(body.length);
+        if (gzipped) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        if ("GET".equals(method)) {
+            response.getOutputStream().write(body);
+        }
+        return false;
+    }
+
+    private boolean isAuthorized(HandlerMethod handlerMethod, Authentication authentication) {
+        AuthorizationResult result = this.authorizationManager.authorize(() -> authentication,
+                new SimpleMethodInvocation(handlerMethod.getBean(), handlerMethod.getMethod()));
+        // No decision means the method carries no rule of its own
+        return result == null || result.isGranted();
+    }
+
+    /**
+     * Check whether an {@code Accept-Encoding} header allows gzip, an explicit {@code gzip} entry taking precedence
+     * over {@code *}, and a q-value of 0 refusing the coding
+     * @param acceptEncoding Header value, may be {@code null}
+     * @return Whether a gzipped body may be sent
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        float gzip = -1;
+        float any = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            int parameters = coding.indexOf(';');
+            String name = (parameters < 0 ? coding : coding.substring(0, parameters)).trim();
+            float quality = parameters < 0 ? 1 : quality(coding.substring(parameters + 1));
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                gzip = Math.max(gzip, quality);
+            }
+            else if (name.equals("*")) {
+                any = Math.max(any, quality);
+            }
+        }
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+
+    private static float quality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0 && parameter.substring(0, separator).trim().equalsIgnoreCase("q")) {
+                try {
+                    return Float.parseFloat(parameter.substring(separator + 1).trim());
+                }
+                catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -6,10 +6,13 @@ import dasniko.testcontainers.keycloak.KeycloakContainer;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.util.TestPropertyValues;
 import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -21,16 +24,22 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 @ContextConfiguration(initializers = KeycloakContainerInitializer.class)
 @Testcontainers
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Execution(ExecutionMode.CONCURRENT)
 public abstract class BaseKeycloakTest {
 
     @Autowired
     protected KeycloakTestUtils keycloakTestUtils;
 
 
+    /**
+     * Drop the realm of this class rather than stopping the container, which is shared by every test class in the JVM.
+     * The seeded template realm of {@link SharedRealm} classes is kept for the next class.
+     */
     @AfterAll
-    static void tearDownKeycloak() {
-        if (KeycloakContainerInitializer.getKeycloakContainer() != null) {
-            KeycloakContainerInitializer.getKeycloakContainer().stop();
+    void tearDownRealm() {
+        if (KeycloakContainerInitializer.getKeycloakContainer() != null
+                && !AnnotatedElementUtils.hasAnnotation(getClass(), SharedRealm.class)) {
+            keycloakTestUtils.resetRealm();
         }
     }
 }
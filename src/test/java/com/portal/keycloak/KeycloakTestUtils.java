@@ -2,18 +2,21 @@ package com.portal.keycloak;
 
 import com.portal.keycloak.config.KeycloakTestProperties;
 import com.portal.keycloak.init.KeycloakContainerInitializer;
-import dasniko.testcontainers.keycloak.KeycloakContainer;
-import org.keycloak.admin.client.Keycloak;
-import org.keycloak.representations.AccessTokenResponse;
+import com.portal.keycloak.support.KeycloakAdminClient;
+import com.portal.keycloak.support.RealmSeeder;
+import com.portal.keycloak.support.TokenPool;
 import org.keycloak.representations.idm.ClientRepresentation;
 import org.keycloak.representations.idm.GroupRepresentation;
 import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Component;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -24,6 +27,9 @@ public class KeycloakTestUtils {
     @Autowired
     protected KeycloakTestProperties keycloakProperties;
 
+    @Value("${keycloak.server.url:}")
+    protected String serverUrl;
+
     /**
      * Get access token using client credentials
      * @param clientId Client ID
@@ -32,10 +38,9 @@ public class KeycloakTestUtils {
      */
     public String getAccessToken(String clientId, String clientSecret) {
 
-        String tokenUrl = KeycloakContainerInitializer.getKeycloakContainer().getAuthServerUrl()
-                + "/realms/customer/protocol/openid-connect/token";
+        String tokenUrl = tokenUri();
 
-        RestTemplate restTemplate = new RestTemplate();
+        RestTemplate restTemplate = sharedClient().getRestTemplate();
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
 
@@ -62,21 +67,13 @@ public class KeycloakTestUtils {
      */
     public boolean createUser(String email, String password, String firstName, String lastName) {
 
-        KeycloakContainer keycloakContainer = KeycloakContainerInitializer.getKeycloakContainer();
-
-        Keycloak keycloakClient = keycloakClient();
-
-        AccessTokenResponse accessTokenResponse = keycloakClient.tokenManager().getAccessToken();
-        String accessToken = accessTokenResponse.getToken();
+        KeycloakAdminClient adminClient = adminClient();
 
-        String userUrl = keycloakContainer.getAuthServerUrl() + "/admin/realms/customer/users";
-        RestTemplate restTemplate = new RestTemplate();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(accessToken);
-        String userJson = String.format("{\"username\":\"%s\",\"email\":\"%s\",\"firstName\":\"%s\",\"lastName\":\"%s\",\"enabled\":true,\"credentials\":[{\"type\":\"password\",\"value\":\"%s\",\"temporary\":false}]}",
-                email, email, firstName, lastName, password);
-        HttpEntity<String> request = new HttpEntity<>(userJson, headers);
+        String userUrl = adminClient.getAuthServerUrl() + "/admin/realms/" + realmName() + "/users";
+        RestTemplate restTemplate = adminClient.getRestTemplate();
+        HttpHeaders headers = adminClient.jsonHeaders();
+        UserRepresentation user = RealmSeeder.user(email, password, firstName, lastName);
+        HttpEntity<UserRepresentation> request = new HttpEntity<>(user, headers);
         ResponseEntity<String> response = restTemplate.postForEntity(userUrl, request, String.class);
         if (response.getStatusCode().is2xxSuccessful()) {
             return true;
@@ -91,20 +88,14 @@ public class KeycloakTestUtils {
      * @return GroupRepresentation object
      */
     public GroupRepresentation createGroup(String groupName) {
-        KeycloakContainer keycloakContainer = KeycloakContainerInitializer.getKeycloakContainer();
-
-        Keycloak keycloakClient = keycloakClient();
+        KeycloakAdminClient adminClient = adminClient();
 
-        AccessTokenResponse accessTokenResponse = keycloakClient.tokenManager().getAccessToken();
-        String accessToken = accessTokenResponse.getToken();
-
-        String groupUrl = keycloakContainer.getAuthServerUrl() + "/admin/realms/customer/groups";
-        RestTemplate restTemplate = new RestTemplate();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(accessToken);
-        String groupJson = String.format("{\"name\":\"%s\"}", groupName);
-        HttpEntity<String> request = new HttpEntity<>(groupJson, headers);
+        String groupUrl = adminClient.getAuthServerUrl() + "/admin/realms/" + realmName() + "/groups";
+        RestTemplate restTemplate = adminClient.getRestTemplate();
+        HttpHeaders headers = adminClient.jsonHeaders();
+        GroupRepresentation group = new GroupRepresentation();
+        group.setName(groupName);
+        HttpEntity<GroupRepresentation> request = new HttpEntity<>(group, headers);
         ResponseEntity<GroupRepresentation> response = restTemplate.postForEntity(groupUrl, request, GroupRepresentation.class);
         if (response.getStatusCode().is2xxSuccessful()) {
             GroupRepresentation groupRepresentation = new GroupRepresentation();
@@ -122,20 +113,14 @@ public class KeycloakTestUtils {
      * @return boolean indicating success or failure
      */
     public boolean createClientRole(String clientId, String roleName) {
-        KeycloakContainer keycloakContainer = KeycloakContainerInitializer.getKeycloakContainer();
-
-        Keycloak keycloakClient = keycloakClient();
-
-        AccessTokenResponse accessTokenResponse = keycloakClient.tokenManager().getAccessToken();
-        String accessToken = accessTokenResponse.getToken();
+        KeycloakAdminClient adminClient = adminClient();
 
-        String roleUrl = keycloakContainer.getAuthServerUrl() + "/admin/realms/customer/clients/" + clientId + "/roles";
-        RestTemplate restTemplate = new RestTemplate();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(accessToken);
-        String roleJson = String.format("{\"name\":\"%s\"}", roleName);
-        HttpEntity<String> request = new HttpEntity<>(roleJson, headers);
+        String roleUrl = adminClient.getAuthServerUrl() + "/admin/realms/" + realmName() + "/clients/" + clientId + "/roles";
+        RestTemplate restTemplate = adminClient.getRestTemplate();
+        HttpHeaders headers = adminClient.jsonHeaders();
+        RoleRepresentation role = new RoleRepresentation();
+        role.setName(roleName);
+        HttpEntity<RoleRepresentation> request = new HttpEntity<>(role, headers);
         ResponseEntity<String> response = restTemplate.postForEntity(roleUrl, request, String.class);
         if (response.getStatusCode().is2xxSuccessful()) {
             return true;
@@ -150,16 +135,11 @@ public class KeycloakTestUtils {
      * @return ClientRepresentation object
      */
     public ClientRepresentation getClientByName(String clientName){
-        KeycloakContainer keycloakContainer = KeycloakContainerInitializer.getKeycloakContainer();
+        KeycloakAdminClient adminClient = adminClient();
 
-        Keycloak keycloakClient = keycloakClient();
-        AccessTokenResponse accessTokenResponse = keycloakClient.tokenManager().getAccessToken();
-        String accessToken = accessTokenResponse.getToken();
-        String clientUrl = keycloakContainer.getAuthServerUrl() + "/admin/realms/customer/clients?clientId=" + clientName;
-        RestTemplate restTemplate = new RestTemplate();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(accessToken);
+        String clientUrl = adminClient.getAuthServerUrl() + "/admin/realms/" + realmName() + "/clients?clientId=" + clientName;
+        RestTemplate restTemplate = adminClient.getRestTemplate();
+        HttpHeaders headers = adminClient.jsonHeaders();
         HttpEntity<String> request = new HttpEntity<>(headers);
 
         ResponseEntity<ClientRepresentation[]> response = restTemplate.exchange(
@@ -186,16 +166,11 @@ public class KeycloakTestUtils {
      * @return List of RoleRepresentation objects
      */
     public List<RoleRepresentation> getClientRoles(String clientId) {
-        KeycloakContainer keycloakContainer = KeycloakContainerInitializer.getKeycloakContainer();
+        KeycloakAdminClient adminClient = adminClient();
 
-        Keycloak keycloakClient = keycloakClient();
-        AccessTokenResponse accessTokenResponse = keycloakClient.tokenManager().getAccessToken();
-        String accessToken = accessTokenResponse.getToken();
-        String roleUrl = keycloakContainer.getAuthServerUrl() + "/admin/realms/customer/clients/" + clientId + "/roles";
-        RestTemplate restTemplate = new RestTemplate();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(accessToken);
+        String roleUrl = adminClient.getAuthServerUrl() + "/admin/realms/" + realmName() + "/clients/" + clientId + "/roles";
+        RestTemplate restTemplate = adminClient.getRestTemplate();
+        HttpHeaders headers = adminClient.jsonHeaders();
         HttpEntity<String> request = new HttpEntity<>(headers);
 
         ResponseEntity<RoleRepresentation[]> response = restTemplate.exchange(
@@ -212,17 +187,71 @@ public class KeycloakTestUtils {
     }
 
     /**
-     * Get Keycloak client instance
-     * @return Keycloak client instance
+     * Get the realm of the current test class
+     * @return Realm name
+     */
+    public String realmName() {
+        return keycloakProperties.getRealm().getName();
+    }
+
+    /**
+     * Drop the realm of the current test class, or reset it to its imported state when it is the shared template
+     * realm, so the container can serve the next test class
+     */
+    public void resetRealm() {
+        String realmName = realmName();
+        String templateName = keycloakProperties.getRealm().getTemplate();
+        if (!realmName.equals(templateName)) {
+            adminClient().deleteRealm(realmName);
+            return;
+        }
+        try {
+            adminClient().replaceRealm(realmName, KeycloakContainerInitializer.realmRepresentation(templateName));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read realm file of " + templateName, e);
+        }
+    }
+
+    /**
+     * Get a bulk seeder for the test realm, which reports its progress on standard output
+     * @return Realm seeder sharing the admin client
+     */
+    public RealmSeeder realmSeeder() {
+        return new RealmSeeder(adminClient(), realmName())
+                .onProgress(System.out::println);
+    }
+
+    /**
+     * Get a pool of tokens of the test realm, obtained in parallel and renewed in the background until the pool is
+     * closed
+     * @param requests One token request per slot, such as password grants of seeded users
+     * @return Filled token pool
      */
-    private Keycloak keycloakClient(){
-        KeycloakContainer keycloakContainer = KeycloakContainerInitializer.getKeycloakContainer();
+    public TokenPool tokenPool(List<TokenPool.TokenRequest> requests) throws InterruptedException {
+        return new TokenPool(sharedClient().getRestTemplate(), tokenUri())
+                .fill(requests);
+    }
+
+    private String tokenUri() {
+        return serverUrl + "/realms/" + realmName() + "/protocol/openid-connect/token";
+    }
+
+    /**
+     * Get the admin client shared by every call against the running container
+     * @return Pooled admin client with a cached master realm token
+     */
+    private KeycloakAdminClient adminClient() {
+        if (KeycloakContainerInitializer.getKeycloakContainer() == null) {
+            throw new IllegalStateException("The admin API needs the Keycloak container, "
+                    + "run with application.keycloak.issuer-mode=container");
+        }
+        return sharedClient();
+    }
 
-        return Keycloak.getInstance(
-            keycloakContainer.getAuthServerUrl(),
-            "master",
+    private KeycloakAdminClient sharedClient() {
+        return KeycloakAdminClient.forServer(
+            serverUrl,
             keycloakProperties.getAdmin().getUsername(),
-            keycloakProperties.getAdmin().getPassword(),
-            "admin-cli");
+            keycloakProperties.getAdmin().getPassword());
     }
 }
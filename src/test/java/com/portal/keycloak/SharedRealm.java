@@ -0,0 +1,20 @@
+package com.portal.keycloak;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs a {@link BaseKeycloakTest} class against the template realm, including whatever the configured
+ * {@code RealmSeed} put into it, instead of an isolated copy of the realm export. The template realm is shared by
+ * every such class and is not reset, so these classes must only read from it.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+public @interface SharedRealm {
+}
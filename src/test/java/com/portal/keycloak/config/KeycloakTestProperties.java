@@ -8,8 +8,10 @@ import org.springframework.stereotype.Component;
 public class KeycloakTestProperties {
 
     private String version;
+    private String issuerMode = "container";
     private Admin admin = new Admin();
     private Realm realm = new Realm();
+    private Container container = new Container();
 
     public String getVersion() {
         return version;
@@ -19,6 +21,14 @@ public class KeycloakTestProperties {
         this.version = version;
     }
 
+    public String getIssuerMode() {
+        return issuerMode;
+    }
+
+    public void setIssuerMode(String issuerMode) {
+        this.issuerMode = issuerMode;
+    }
+
     public Admin getAdmin() {
         return admin;
     }
@@ -35,6 +45,14 @@ public class KeycloakTestProperties {
         this.realm = realm;
     }
 
+    public Container getContainer() {
+        return container;
+    }
+
+    public void setContainer(Container container) {
+        this.container = container;
+    }
+
     public static class Admin {
         private String username;
         private String password;
@@ -59,6 +77,7 @@ public class KeycloakTestProperties {
 
     public static class Realm {
         private String name;
+        private String template;
         private Client client = new Client();
 
         public String getName() {
@@ -69,6 +88,14 @@ public class KeycloakTestProperties {
             this.name = name;
         }
 
+        public String getTemplate() {
+            return template;
+        }
+
+        public void setTemplate(String template) {
+            this.template = template;
+        }
+
         public Client getClient() {
             return client;
         }
@@ -98,4 +125,34 @@ public class KeycloakTestProperties {
             }
         }
     }
+
+    public static class Container {
+        private boolean reuse;
+        private boolean snapshot;
+        private String seed;
+
+        public boolean isReuse() {
+            return reuse;
+        }
+
+        public void setReuse(boolean reuse) {
+            this.reuse = reuse;
+        }
+
+        public boolean isSnapshot() {
+            return snapshot;
+        }
+
+        public void setSnapshot(boolean snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        public String getSeed() {
+            return seed;
+        }
+
+        public void setSeed(String seed) {
+            this.seed = seed;
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package com.portal.keycloak.init;
+
+import com.portal.keycloak.BaseKeycloakTest;
+import com.portal.keycloak.SharedRealm;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.test.context.ContextConfigurationAttributes;
+import org.springframework.test.context.ContextCustomizer;
+import org.springframework.test.context.ContextCustomizerFactory;
+import org.springframework.test.context.MergedContextConfiguration;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Gives every {@link BaseKeycloakTest} class a realm of its own, named after the class and cloned from the template
+ * realm by {@link KeycloakContainerInitializer}, so classes can run in parallel against one container. The realm
+ * name is part of the context cache key, hence each class also gets its own application context and issuer URI.
+ * Classes annotated with {@link SharedRealm} keep the template realm.
+ */
+public class IsolatedRealmContextCustomizerFactory implements ContextCustomizerFactory {
+
+    @Override
+    public ContextCustomizer createContextCustomizer(Class<?> testClass,
+                                                     List<ContextConfigurationAttributes> configAttributes) {
+        if (!BaseKeycloakTest.class.isAssignableFrom(testClass)
+                || AnnotatedElementUtils.hasAnnotation(testClass, SharedRealm.class)) {
+            return null;
+        }
+        // Simple names keep realms readable in the admin console, the hash tells apart classes from other packages
+        String suffix = testClass.getSimpleName().toLowerCase(Locale.ROOT) + "-"
+                + Integer.toHexString(testClass.getName().hashCode());
+        return new IsolatedRealmContextCustomizer(suffix);
+    }
+
+    record IsolatedRealmContextCustomizer(String realmSuffix) implements ContextCustomizer {
+
+        @Override
+        public void customizeContext(ConfigurableApplicationContext context, MergedContextConfiguration mergedConfig) {
+            Environment environment = context.getEnvironment();
+            String template = environment.getProperty("application.keycloak.realm.template",
+                    environment.getProperty("application.keycloak.realm.name"));
+            TestPropertyValues.of(
+                    "application.keycloak.realm.name=" + template + "-" + realmSuffix
+            ).applyTo(context);
+        }
+    }
+}
@@ -1,41 +1,84 @@
 package com.portal.keycloak.init;
 
+import com.portal.keycloak.support.KeycloakAdminClient;
+import com.portal.keycloak.support.RealmSeeder;
+import com.portal.keycloak.support.StubOidcIssuer;
 import dasniko.testcontainers.keycloak.KeycloakContainer;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
 import org.springframework.boot.test.util.TestPropertyValues;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
+/**
+ * Starts one Keycloak container per JVM, importing the template realm, and points every application context at it.
+ * Contexts whose {@code application.keycloak.realm.name} differs from the template (see
+ * {@link IsolatedRealmContextCustomizerFactory}) get a fresh copy of the template under that name. Test classes drop
+ * or reset their realm when they finish instead of stopping the container (see {@code BaseKeycloakTest}), and Ryuk
+ * removes the container when the JVM exits.
+ * <p>
+ * With {@code application.keycloak.issuer-mode=embedded} (or the system property of the same name) no container is
+ * started: every realm is served by a {@link StubOidcIssuer} in the test JVM, which issues tokens for the clients of
+ * the template realm with the roles of their service accounts. Tests that only need valid tokens then start in
+ * milliseconds and run without Docker; the admin API is only available with the container.
+ * <p>
+ * With {@code application.keycloak.container.reuse=true} (or the system property of the same name) and
+ * {@code testcontainers.reuse.enable=true} in {@code ~/.testcontainers.properties}, the container also survives
+ * the JVM and is picked up by later Gradle forks and runs, which only reset the realm.
+ * <p>
+ * A {@link RealmSeed} named by {@code application.keycloak.container.seed} populates the template realm after the
+ * import. With {@code application.keycloak.container.snapshot=true} the first run commits the imported and seeded
+ * container to a local image (see {@link KeycloakSnapshot}), and later runs start from that image instead of
+ * importing and seeding again.
+ */
 public class KeycloakContainerInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
 
     private static KeycloakContainer keycloakContainer;
 
+    private static final Map<String, StubOidcIssuer> embeddedIssuers = new HashMap<>();
+
     @Override
     public void initialize(ConfigurableApplicationContext applicationContext) {
         try {
             Properties properties = loadYamlProperties("application-test.yml");
 
-            String keycloakVersion = properties.getProperty("application.keycloak.version");
-            String keycloakAdminUsername = properties.getProperty("application.keycloak.admin.username");
-            String keycloakAdminPassword = properties.getProperty("application.keycloak.admin.password");
-            String keycloakRealmName = properties.getProperty("application.keycloak.realm.name");
+            // Isolated test classes get their own copy of the template realm
+            String templateRealmName = properties.getProperty("application.keycloak.realm.template");
+            String keycloakRealmName = applicationContext.getEnvironment()
+                    .getProperty("application.keycloak.realm.name", templateRealmName);
 
-            // Start the Keycloak container
-            keycloakContainer = new KeycloakContainer("quay.io/keycloak/keycloak:" + keycloakVersion)
-                    .withEnv("KEYCLOAK_ADMIN", keycloakAdminUsername)
-                    .withEnv("KEYCLOAK_ADMIN_PASSWORD", keycloakAdminPassword)
-                    .withRealmImportFile("realm/" + keycloakRealmName + "-realm.json");
+            String issuerMode = property(properties, "application.keycloak.issuer-mode", "container");
+            if (issuerMode.equals("embedded")) {
+                StubOidcIssuer issuer = embeddedIssuer(keycloakRealmName, templateRealmName);
+                TestPropertyValues.of(
+                        "keycloak.server.url=" + issuer.getServerUrl(),
+                        "spring.security.oauth2.resourceserver.jwt.issuer-uri=" + issuer.getIssuerUri()
+                ).applyTo(applicationContext.getEnvironment());
+                return;
+            }
+
+            KeycloakContainer container = startContainer(properties);
 
-            keycloakContainer.start();
+            if (!keycloakRealmName.equals(templateRealmName)) {
+                KeycloakAdminClient.forServer(container.getAuthServerUrl(),
+                                properties.getProperty("application.keycloak.admin.username"),
+                                properties.getProperty("application.keycloak.admin.password"))
+                        .replaceRealm(keycloakRealmName, realmRepresentation(templateRealmName));
+            }
 
             // Dynamically set the properties in Spring's environment
-            String issuerUri = keycloakContainer.getAuthServerUrl() + "/realms/" + keycloakRealmName;
+            String issuerUri = container.getAuthServerUrl() + "/realms/" + keycloakRealmName;
 
             TestPropertyValues.of(
-                    "keycloak.server.url=" + keycloakContainer.getAuthServerUrl(),
+                    "keycloak.server.url=" + container.getAuthServerUrl(),
                     "spring.security.oauth2.resourceserver.jwt.issuer-uri=" + issuerUri
             ).applyTo(applicationContext.getEnvironment());
 
@@ -44,12 +87,119 @@ public class KeycloakContainerInitializer implements ApplicationContextInitializ
         }
     }
 
+    private static synchronized StubOidcIssuer embeddedIssuer(String realmName, String templateRealmName)
+            throws IOException {
+        StubOidcIssuer issuer = embeddedIssuers.get(realmName);
+        if (issuer == null) {
+            issuer = StubOidcIssuer.fromRealmExport(realmName, realmRepresentation(templateRealmName));
+            embeddedIssuers.put(realmName, issuer);
+        }
+        return issuer;
+    }
+
+    private static synchronized KeycloakContainer startContainer(Properties properties) throws IOException {
+        if (keycloakContainer != null) {
+            return keycloakContainer;
+        }
+        String keycloakVersion = properties.getProperty("application.keycloak.version");
+        String keycloakAdminUsername = properties.getProperty("application.keycloak.admin.username");
+        String keycloakAdminPassword = properties.getProperty("application.keycloak.admin.password");
+        String keycloakRealmName = properties.getProperty("application.keycloak.realm.template");
+        boolean reuse = Boolean.parseBoolean(property(properties, "application.keycloak.container.reuse", "false"));
+        boolean snapshot = Boolean.parseBoolean(property(properties, "application.keycloak.container.snapshot", "false"));
+        Class<? extends RealmSeed> seed = seedClass(property(properties, "application.keycloak.container.seed", ""));
+        String image = "quay.io/keycloak/keycloak:" + keycloakVersion;
+
+        KeycloakContainer container;
+        if (snapshot) {
+            String snapshotImage = KeycloakSnapshot.imageName(keycloakVersion, realmRepresentation(keycloakRealmName), seed);
+            if (!KeycloakSnapshot.exists(snapshotImage)) {
+                KeycloakContainer seeded = new KeycloakContainer(image)
+                        .withEnv("KEYCLOAK_ADMIN", keycloakAdminUsername)
+                        .withEnv("KEYCLOAK_ADMIN_PASSWORD", keycloakAdminPassword)
+                        .withRealmImportFile("realm/" + keycloakRealmName + "-realm.json");
+                seeded.start();
+                seed(seeded, seed, keycloakAdminUsername, keycloakAdminPassword, keycloakRealmName);
+                KeycloakSnapshot.commit(seeded, snapshotImage);
+                seeded.stop();
+            }
+
+            // The snapshot's database already holds the imported and seeded realm
+            container = new KeycloakContainer(snapshotImage)
+                    .withEnv("KEYCLOAK_ADMIN", keycloakAdminUsername)
+                    .withEnv("KEYCLOAK_ADMIN_PASSWORD", keycloakAdminPassword)
+                    .withReuse(reuse);
+            container.start();
+        }
+        else {
+            // Start the Keycloak container
+            container = new KeycloakContainer(image)
+                    .withEnv("KEYCLOAK_ADMIN", keycloakAdminUsername)
+                    .withEnv("KEYCLOAK_ADMIN_PASSWORD", keycloakAdminPassword)
+                    .withRealmImportFile("realm/" + keycloakRealmName + "-realm.json")
+                    .withReuse(reuse);
+
+            container.start();
+
+            if (reuse) {
+                // A reused container keeps whatever the previous run left in the realm
+                KeycloakAdminClient.forServer(container.getAuthServerUrl(), keycloakAdminUsername, keycloakAdminPassword)
+                        .replaceRealm(keycloakRealmName, realmRepresentation(keycloakRealmName));
+            }
+            seed(container, seed, keycloakAdminUsername, keycloakAdminPassword, keycloakRealmName);
+        }
+        keycloakContainer = container;
+        return container;
+    }
+
+    private static void seed(KeycloakContainer container, Class<? extends RealmSeed> seed, String adminUsername,
+                             String adminPassword, String realmName) {
+        if (seed == null) {
+            return;
+        }
+        KeycloakAdminClient adminClient = KeycloakAdminClient.forServer(container.getAuthServerUrl(), adminUsername,
+                adminPassword);
+        try {
+            BeanUtils.instantiateClass(seed).seed(new RealmSeeder(adminClient, realmName).onProgress(System.out::println));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while seeding realm " + realmName, e);
+        }
+    }
+
+    private static Class<? extends RealmSeed> seedClass(String className) {
+        if (!StringUtils.hasText(className)) {
+            return null;
+        }
+        try {
+            return ClassUtils.forName(className, KeycloakContainerInitializer.class.getClassLoader())
+                    .asSubclass(RealmSeed.class);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Realm seed class not found: " + className, e);
+        }
+    }
+
+    private static String property(Properties properties, String name, String defaultValue) {
+        return System.getProperty(name, properties.getProperty(name, defaultValue));
+    }
+
     private Properties loadYamlProperties(String yamlFilePath) throws IOException {
         YamlPropertiesFactoryBean yamlPropertiesFactoryBean = new YamlPropertiesFactoryBean();
         yamlPropertiesFactoryBean.setResources(new ClassPathResource(yamlFilePath));
         return yamlPropertiesFactoryBean.getObject();
     }
 
+    /**
+     * Read the realm export of a template realm
+     * @param realmName Template realm name
+     * @return JSON representation of the realm
+     */
+    public static byte[] realmRepresentation(String realmName) throws IOException {
+        try (InputStream in = new ClassPathResource("realm/" + realmName + "-realm.json").getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
     public static KeycloakContainer getKeycloakContainer() {
         return keycloakContainer;
     }
@@ -0,0 +1,88 @@
+package com.portal.keycloak.init;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.NotFoundException;
+import dasniko.testcontainers.keycloak.KeycloakContainer;
+import org.testcontainers.DockerClientFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Local Docker images of a Keycloak container whose template realm has been imported and seeded, so later runs
+ * start from the populated database instead of importing the realm export again. Images are tagged with a hash of
+ * the Keycloak version, the realm export and the seed class, hence any change to them leads to a new snapshot.
+ */
+final class KeycloakSnapshot {
+
+    private static final String REPOSITORY = "keycloak-test-snapshot";
+
+    private KeycloakSnapshot() {
+    }
+
+    /**
+     * Get the image name of the snapshot for a realm and its seed
+     * @param keycloakVersion Keycloak version of the base image
+     * @param realmRepresentation Realm export imported into the container
+     * @param seed Seed class, or null when the realm is not seeded
+     * @return Image name with a content hash as its tag
+     */
+    static String imageName(String keycloakVersion, byte[] realmRepresentation, Class<? extends RealmSeed> seed)
+            throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        digest.update(keycloakVersion.getBytes(StandardCharsets.UTF_8));
+        digest.update(realmRepresentation);
+        if (seed != null) {
+            digest.update(seed.getName().getBytes(StandardCharsets.UTF_8));
+            // The compiled class changes with the seed definitions, unlike its name
+            String resource = "/" + seed.getName().replace('.', '/') + ".class";
+            try (InputStream in = seed.getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new IllegalStateException("Class file " + resource + " of the realm seed not found");
+                }
+                digest.update(in.readAllBytes());
+            }
+        }
+        return REPOSITORY + ":" + HexFormat.of().formatHex(digest.digest(), 0, 12);
+    }
+
+    static boolean exists(String imageName) {
+        try {
+            DockerClientFactory.instance().client().inspectImageCmd(imageName).exec();
+            return true;
+        }
+        catch (NotFoundException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Stop a container and commit it to a snapshot image
+     * @param container Container with the imported and seeded realm
+     * @param imageName Image name returned by {@link #imageName}
+     */
+    static void commit(KeycloakContainer container, String imageName) {
+        DockerClient docker = DockerClientFactory.instance().client();
+        String[] nameAndTag = imageName.split(":", 2);
+        // A graceful stop lets Keycloak close its database, which a commit of the running container could catch
+        // halfway through a write
+        docker.stopContainerCmd(container.getContainerId()).withTimeout(60).exec();
+        // Replacing the labels drops the Testcontainers session label, which would get the image pruned by Ryuk
+        docker.commitCmd(container.getContainerId())
+                .withRepository(nameAndTag[0])
+                .withTag(nameAndTag[1])
+                .withLabels(Map.of("com.portal.keycloak.snapshot", nameAndTag[1]))
+                .exec();
+    }
+}
@@ -0,0 +1,46 @@
+package com.portal.keycloak.init;
+
+import com.portal.keycloak.support.RealmSeeder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeycloakSnapshotTest {
+
+    private static final byte[] REALM = "{\"realm\":\"customer\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void imageNameIsStableForTheSameInputs() throws Exception {
+        String imageName = KeycloakSnapshot.imageName("25.0.2", REALM, UsersSeed.class);
+
+        assertThat(imageName).matches("keycloak-test-snapshot:[0-9a-f]{24}");
+        assertThat(KeycloakSnapshot.imageName("25.0.2", REALM.clone(), UsersSeed.class)).isEqualTo(imageName);
+    }
+
+    @Test
+    void imageNameChangesWithTheVersionRealmOrSeed() throws Exception {
+        String imageName = KeycloakSnapshot.imageName("25.0.2", REALM, UsersSeed.class);
+
+        assertThat(KeycloakSnapshot.imageName("26.0.0", REALM, UsersSeed.class)).isNotEqualTo(imageName);
+        assertThat(KeycloakSnapshot.imageName("25.0.2", "{\"realm\":\"other\"}".getBytes(StandardCharsets.UTF_8),
+                UsersSeed.class)).isNotEqualTo(imageName);
+        assertThat(KeycloakSnapshot.imageName("25.0.2", REALM, GroupsSeed.class)).isNotEqualTo(imageName);
+        assertThat(KeycloakSnapshot.imageName("25.0.2", REALM, null)).isNotEqualTo(imageName);
+    }
+
+    static class UsersSeed implements RealmSeed {
+
+        @Override
+        public void seed(RealmSeeder seeder) {
+        }
+    }
+
+    static class GroupsSeed implements RealmSeed {
+
+        @Override
+        public void seed(RealmSeeder seeder) {
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.portal.keycloak.init;
+
+import com.portal.keycloak.support.RealmSeeder;
+
+/**
+ * Data seeded into the template realm once the container has imported it, named by
+ * {@code application.keycloak.container.seed}. With snapshots enabled the seeded container is committed to an
+ * image, and the seed only runs again when the realm export or the seed class changes.
+ */
+public interface RealmSeed {
+
+    /**
+     * Seed the template realm
+     * @param seeder Seeder bound to the template realm
+     */
+    void seed(RealmSeeder seeder) throws InterruptedException;
+}
@@ -0,0 +1,28 @@
+package com.portal.keycloak.init;
+
+import com.portal.keycloak.support.StubOidcIssuer;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Points the application at a {@link StubOidcIssuer} running in the test JVM instead of a Keycloak container.
+ */
+public class StubIssuerInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    private static StubOidcIssuer issuer;
+
+    @Override
+    public void initialize(ConfigurableApplicationContext applicationContext) {
+        TestPropertyValues.of(
+                "spring.security.oauth2.resourceserver.jwt.issuer-uri=" + getIssuer().getIssuerUri()
+        ).applyTo(applicationContext.getEnvironment());
+    }
+
+    public static synchronized StubOidcIssuer getIssuer() {
+        if (issuer == null) {
+            issuer = new StubOidcIssuer("customer");
+        }
+        return issuer;
+    }
+}
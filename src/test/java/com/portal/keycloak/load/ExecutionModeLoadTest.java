@@ -0,0 +1,152 @@
+package com.portal.keycloak.load;
+
+import com.portal.keycloak.KeycloakApplication;
+import com.portal.keycloak.security.DecoderReadiness;
+import com.portal.keycloak.support.LoadGenerator;
+import com.portal.keycloak.support.StubOidcIssuer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Compares the platform thread pool, virtual threads and the reactive stack on a small event loop while the
+ * issuer is slow to serve its keys.
+ * <p>
+ * The stub issuer rotates its signing key during the run and delays every JWKS response, so requests carrying a
+ * token with a new {@code kid} wait on a slow key fetch. Each mode reports throughput, latency percentiles, the
+ * peak thread count and the peak heap usage. Tune with {@code -Dload.concurrency=400},
+ * {@code -Dload.requests=200}, {@code -Dload.key-fetch-delay=200}, {@code -Dload.rotation-interval=250}
+ * (milliseconds) and {@code -Dload.event-loop-threads=2}.
+ */
+@Tag("load")
+public class ExecutionModeLoadTest {
+
+    private static final int CONCURRENCY = Integer.parseInt(System.getProperty("load.concurrency", "400").split(",")[0].trim());
+
+    private static final int REQUESTS_PER_WORKER = Integer.getInteger("load.requests", 200);
+
+    private static final long KEY_FETCH_DELAY = Long.getLong("load.key-fetch-delay", 200);
+
+    private static final long ROTATION_INTERVAL = Long.getLong("load.rotation-interval", 250);
+
+    private static final int EVENT_LOOP_THREADS = Integer.getInteger("load.event-loop-threads", 2);
+
+    enum Mode {
+
+        PLATFORM_THREADS("platform threads", "test"),
+        VIRTUAL_THREADS("virtual threads", "test"),
+        REACTIVE("reactive", "test", "reactive");
+
+        private final String label;
+
+        private final String[] profiles;
+
+        Mode(String label, String... profiles) {
+            this.label = label;
+            this.profiles = profiles;
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @EnumSource(Mode.class)
+    void productsWithSlowKeyFetches(Mode mode) throws InterruptedException {
+        try (StubOidcIssuer issuer = new StubOidcIssuer("customer")) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(KeycloakApplication.class)
+                    .profiles(mode.profiles)
+                    .run("--server.port=0",
+                            "--spring.threads.virtual.enabled=" + (mode == Mode.VIRTUAL_THREADS),
+                            "--application.reactive.event-loop-threads=" + EVENT_LOOP_THREADS,
+                            "--spring.security.oauth2.resourceserver.jwt.issuer-uri=" + issuer.getIssuerUri(),
+                            "--application.security.jwks.min-refetch-interval=0s");
+            ScheduledExecutorService rotation = Executors.newSingleThreadScheduledExecutor();
+            try {
+                DecoderReadiness decoder = context.getBean(DecoderReadiness.class);
+                await().atMost(Duration.ofSeconds(30)).until(decoder::isReady);
+                issuer.setKeySetDelay(Duration.ofMillis(KEY_FETCH_DELAY));
+
+                int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+                TokenBatch tokens = new TokenBatch(issuer);
+                rotation.scheduleAtFixedRate(tokens::rotate, ROTATION_INTERVAL, ROTATION_INTERVAL, TimeUnit.MILLISECONDS);
+
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+                threads.resetPeakThreadCount();
+                AtomicLong peakHeap = new AtomicLong();
+                ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+                sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                        0, 50, TimeUnit.MILLISECONDS);
+
+                LoadGenerator.Result result;
+                try {
+                    result = new LoadGenerator().run(mode.label,
+                            CONCURRENCY, REQUESTS_PER_WORKER,
+                            sequence -> HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v2/products"))
+                                    .header("Authorization", "Bearer " + tokens.next(sequence))
+                                    .GET()
+                                    .build());
+                }
+                finally {
+                    sampler.shutdownNow();
+                }
+
+                System.out.printf("%s peakThreads=%d peakHeap=%dMB keyFetches=%d%n", result,
+                        threads.getPeakThreadCount(), peakHeap.get() / (1024 * 1024), issuer.getKeySetRequests());
+                assertThat(result.failures()).isZero();
+            }
+            finally {
+                rotation.shutdownNow();
+                context.close();
+            }
+        }
+    }
+
+    private static final class TokenBatch {
+
+        private final StubOidcIssuer issuer;
+
+        private volatile List<String> tokens;
+
+        TokenBatch(StubOidcIssuer issuer) {
+            this.issuer = issuer;
+            this.tokens = mint();
+        }
+
+        void rotate() {
+            issuer.rotateKey(true);
+            tokens = mint();
+        }
+
+        String next(int sequence) {
+            List<String> current = tokens;
+            return current.get(sequence % current.size());
+        }
+
+        private List<String> mint() {
+            List<String> minted = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                minted.add(issuer.mintToken("user-" + i, List.of("offline_access"),
+                        Map.of("department", List.of("products:read"))));
+            }
+            return minted;
+        }
+    }
+}
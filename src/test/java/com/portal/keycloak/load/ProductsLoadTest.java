@@ -0,0 +1,95 @@
+package com.portal.keycloak.load;
+
+import com.portal.keycloak.init.StubIssuerInitializer;
+import com.portal.keycloak.security.DeferredJwtDecoder;
+import com.portal.keycloak.support.LoadGenerator;
+import com.portal.keycloak.support.StubOidcIssuer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Drives {@code TestController} through the full security filter chain with tokens minted by a stub issuer.
+ * <p>
+ * Run with {@code ./gradlew loadTest}; {@code -Dload.concurrency=8,64,256}, {@code -Dload.requests=2000}
+ * (per worker) and {@code -Dload.tokens=100} (distinct bearer tokens) tune the run.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@ContextConfiguration(initializers = StubIssuerInitializer.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ProductsLoadTest {
+
+    private static final int[] CONCURRENCY = Arrays.stream(System.getProperty("load.concurrency", "8,64").split(","))
+            .mapToInt(level -> Integer.parseInt(level.trim()))
+            .toArray();
+
+    private static final int REQUESTS_PER_WORKER = Integer.getInteger("load.requests", 500);
+
+    private static final int TOKENS = Integer.getInteger("load.tokens", 100);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private DeferredJwtDecoder issuerJwtDecoder;
+
+    private final LoadGenerator loadGenerator = new LoadGenerator();
+
+    private final List<String> tokens = new ArrayList<>();
+
+    @BeforeAll
+    void mintTokens() {
+        await().atMost(Duration.ofSeconds(30)).until(issuerJwtDecoder::isReady);
+
+        StubOidcIssuer issuer = StubIssuerInitializer.getIssuer();
+        for (int i = 0; i < TOKENS; i++) {
+            tokens.add(issuer.mintToken("user-" + i, List.of("offline_access"),
+                    Map.of("department", List.of("products:read"))));
+        }
+    }
+
+    @Test
+    void authenticatedProducts() throws InterruptedException {
+        for (int concurrency : CONCURRENCY) {
+            LoadGenerator.Result result = loadGenerator.run("GET /api/v2/products", concurrency, REQUESTS_PER_WORKER,
+                    sequence -> request("/api/v2/products")
+                            .header("Authorization", "Bearer " + tokens.get(sequence % tokens.size()))
+                            .build());
+            System.out.println(result);
+            assertThat(result.failures()).isZero();
+        }
+    }
+
+    @Test
+    void unauthenticatedCustomers() throws InterruptedException {
+        for (int concurrency : CONCURRENCY) {
+            LoadGenerator.Result result = loadGenerator.run("GET /api/v2/customers", concurrency, REQUESTS_PER_WORKER,
+                    sequence -> request("/api/v2/customers").build());
+            System.out.println(result);
+            assertThat(result.failures()).isZero();
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET();
+    }
+}
@@ -0,0 +1,175 @@
+package com.portal.keycloak.security;
+
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void admitsABurstThenTheRate() {
+        AdmissionControl.Client client = admissionControl(new AdmissionControl.Limit(10, 5, 0)).client("department");
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.ADMITTED);
+        }
+        assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.RATE_LIMITED);
+        assertThat(client.nanosUntilAvailable()).isEqualTo(Duration.ofMillis(100).toNanos());
+
+        now.addAndGet(Duration.ofMillis(100).toNanos());
+        assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.ADMITTED);
+        assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.RATE_LIMITED);
+
+        // An idle client gets its full burst back, not more
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        for (int i = 0; i < 5; i++) {
+            assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.ADMITTED);
+        }
+        assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.RATE_LIMITED);
+        assertThat(client.getAdmittedCount()).isEqualTo(11);
+        assertThat(client.getRateLimitedCount()).isEqualTo(3);
+    }
+
+    @Test
+    void limitsRequestsInProgress() {
+        AdmissionControl.Client client = admissionControl(new AdmissionControl.Limit(0, 1, 2)).client("department");
+
+        assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.ADMITTED);
+        assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.ADMITTED);
+        assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.CONCURRENCY_LIMITED);
+
+        client.release();
+        assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.ADMITTED);
+        assertThat(client.getInFlight()).isEqualTo(2);
+        assertThat(client.getConcurrencyLimitedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrencyRejectionsDoNotSpendTheRate() {
+        AdmissionControl.Client client = admissionControl(new AdmissionControl.Limit(10, 2, 1)).client("department");
+
+        assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.ADMITTED);
+        for (int i = 0; i < 5; i++) {
+            assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.CONCURRENCY_LIMITED);
+        }
+        client.release();
+
+        assertThat(client.tryAcquire()).isEqualTo(AdmissionControl.Outcome.ADMITTED);
+        assertThat(client.getRateLimitedCount()).isZero();
+    }
+
+    @Test
+    void aNoisyClientDoesNotStarveTheOthers() {
+        AdmissionControl admissionControl = new AdmissionControl(new AdmissionControl.Limit(10, 5, 0),
+                Map.of("portal", new AdmissionControl.Limit(100, 50, 0)), 2, now::get);
+
+        while (admissionControl.client("department").tryAcquire() == AdmissionControl.Outcome.ADMITTED) {
+        }
+
+        assertThat(admissionControl.client("reporting").tryAcquire()).isEqualTo(AdmissionControl.Outcome.ADMITTED);
+        for (int i = 0; i < 50; i++) {
+            assertThat(admissionControl.client("portal").tryAcquire()).isEqualTo(AdmissionControl.Outcome.ADMITTED);
+        }
+        // Beyond the maximum, unknown clients share one limiter
+        assertThat(admissionControl.client("third").getClientId()).isEqualTo(AdmissionControl.OTHER_CLIENTS);
+        assertThat(admissionControl.client("fourth")).isSameAs(admissionControl.client("third"));
+    }
+
+    @Test
+    void admitsNoMoreThanTheRateUnderContention() throws Exception {
+        AdmissionControl.Client client = new AdmissionControl(new AdmissionControl.Limit(1000, 100, 0), Map.of(), 10)
+                .client("department");
+        long started = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                workers.add(executor.submit(() -> {
+                    for (int request = 0; request < 100_000; request++) {
+                        if (client.tryAcquire() == AdmissionControl.Outcome.ADMITTED) {
+                            client.release();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        }
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        assertThat(client.getAdmittedCount()).isLessThanOrEqualTo(100 + (long) Math.ceil(seconds * 1000));
+        assertThat(client.getAdmittedCount() + client.getRateLimitedCount()).isEqualTo(800_000);
+        assertThat(client.getInFlight()).isZero();
+    }
+
+    @Test
+    void answersOverLimitRequestsWith429() throws Exception {
+        AdmissionControlFilter filter = new AdmissionControlFilter(admissionControl(new AdmissionControl.Limit(2, 1, 0)));
+        SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt("department")));
+
+        MockHttpServletResponse admitted = new MockHttpServletResponse();
+        MockFilterChain admittedChain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v2/products"), admitted, admittedChain);
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        MockFilterChain rejectedChain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v2/products"), rejected, rejectedChain);
+
+        assertThat(admitted.getStatus()).isEqualTo(200);
+        assertThat(admittedChain.getRequest()).isNotNull();
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(rejected.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(rejected.getContentLength()).isZero();
+        assertThat(rejectedChain.getRequest()).isNull();
+    }
+
+    @Test
+    void passesUnauthenticatedRequestsOn() throws Exception {
+        AdmissionControl admissionControl = admissionControl(new AdmissionControl.Limit(1, 1, 1));
+        FilterChain chain = new MockFilterChain();
+
+        new AdmissionControlFilter(admissionControl).doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), chain);
+
+        assertThat(((MockFilterChain) chain).getRequest()).isNotNull();
+        assertThat(admissionControl.getClientCount()).isZero();
+    }
+
+    private AdmissionControl admissionControl(AdmissionControl.Limit limit) {
+        return new AdmissionControl(limit, Map.of(), 10, now::get);
+    }
+
+    private static Jwt jwt(String authorizedParty) {
+        return Jwt.withTokenValue("token")
+                .header("alg", "RS256")
+                .subject("user")
+                .claim("azp", authorizedParty)
+                .issuedAt(Instant.now())
+                .expiresAt(Instant.now().plusSeconds(300))
+                .build();
+    }
+}
@@ -0,0 +1,67 @@
+package com.portal.keycloak.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingJwtDecoderTest {
+
+    private final AtomicInteger decodes = new AtomicInteger();
+
+    @Test
+    void verifiesEachTokenOnlyOnce() {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(token -> {
+            decodes.incrementAndGet();
+            return jwt(token, Instant.now());
+        }, 100);
+
+        Jwt first = decoder.decode("token-a");
+        Jwt second = decoder.decode("token-a");
+        decoder.decode("token-b");
+
+        assertThat(second).isSameAs(first);
+        assertThat(decodes).hasValue(2);
+        assertThat(decoder.getHitCount()).isEqualTo(1);
+        assertThat(decoder.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    void doesNotCacheTokensThatAreNotYetValid() {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(token -> {
+            decodes.incrementAndGet();
+            return jwt(token, Instant.now().plusSeconds(30));
+        }, 100);
+
+        decoder.decode("token-a");
+        decoder.decode("token-a");
+
+        assertThat(decodes).hasValue(2);
+        assertThat(decoder.getSize()).isZero();
+    }
+
+    @Test
+    void doesNotCacheFailures() {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(token -> {
+            decodes.incrementAndGet();
+            throw new BadJwtException("bad signature");
+        }, 100);
+
+        assertThatThrownBy(() -> decoder.decode("token-a")).isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> decoder.decode("token-a")).isInstanceOf(BadJwtException.class);
+        assertThat(decodes).hasValue(2);
+    }
+
+    private static Jwt jwt(String token, Instant notBefore) {
+        return Jwt.withTokenValue(token)
+                .header("alg", "RS256")
+                .notBefore(notBefore)
+                .expiresAt(Instant.now().plusSeconds(300))
+                .build();
+    }
+}
@@ -0,0 +1,118 @@
+package com.portal.keycloak.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.introspection.BadOpaqueTokenException;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionAuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class CachingOpaqueTokenIntrospectorTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void reusesResultsUntilTheTokenExpires() {
+        CachingOpaqueTokenIntrospector introspector = new CachingOpaqueTokenIntrospector(
+                active(Instant.now().plusMillis(300)), 100, Duration.ofMinutes(5));
+
+        OAuth2AuthenticatedPrincipal first = introspector.introspect("token");
+
+        assertThat(introspector.introspect("token")).isSameAs(first);
+        assertThat(calls).hasValue(1);
+        await().atMost(Duration.ofSeconds(2)).untilAsserted(() -> {
+            introspector.introspect("token");
+            assertThat(calls).hasValue(2);
+        });
+    }
+
+    @Test
+    void boundsTheTimeToLiveOfLongLivedTokens() {
+        CachingOpaqueTokenIntrospector introspector = new CachingOpaqueTokenIntrospector(
+                active(Instant.now().plus(Duration.ofHours(1))), 100, Duration.ofMillis(200));
+
+        introspector.introspect("token");
+
+        await().atMost(Duration.ofSeconds(2)).untilAsserted(() -> {
+            introspector.introspect("token");
+            assertThat(calls).hasValue(2);
+        });
+    }
+
+    @Test
+    void coalescesConcurrentIntrospectionsOfTheSameToken() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        OpaqueTokenIntrospector slow = token -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return active(Instant.now().plusSeconds(60)).introspect(token);
+        };
+        CachingOpaqueTokenIntrospector introspector = new CachingOpaqueTokenIntrospector(slow, 100, Duration.ofMinutes(5));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<OAuth2AuthenticatedPrincipal>> results = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                results.add(executor.submit(() -> introspector.introspect("token")));
+            }
+            await().untilAsserted(() -> assertThat(introspector.getMissCount()).isEqualTo(50));
+            release.countDown();
+
+            for (Future<OAuth2AuthenticatedPrincipal> result : results) {
+                assertThat(result.get().getName()).isEqualTo("user");
+            }
+        }
+        assertThat(introspector.getIntrospectionCount()).isEqualTo(1);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void doesNotRememberInactiveTokens() {
+        OpaqueTokenIntrospector inactive = token -> {
+            calls.incrementAndGet();
+            throw new BadOpaqueTokenException("Provided token isn't active");
+        };
+        CachingOpaqueTokenIntrospector introspector = new CachingOpaqueTokenIntrospector(inactive, 100, Duration.ofMinutes(5));
+
+        assertThatThrownBy(() -> introspector.introspect("token")).isInstanceOf(BadOpaqueTokenException.class);
+        assertThatThrownBy(() -> introspector.introspect("token")).isInstanceOf(BadOpaqueTokenException.class);
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void mapsIntrospectedRolesLikeJwtClaims() {
+        assertThat(CustomJwtGrantedAuthoritiesConverter.authoritiesOf(Map.of(
+                "realm_access", Map.of("roles", List.of("offline_access")),
+                "resource_access", Map.of("department", Map.of("roles", List.of("products:read")),
+                        "account", Map.of("roles", List.of("view-profile")))), "department"))
+                .extracting(GrantedAuthority::getAuthority)
+                .containsExactly("offline_access", "products:read");
+    }
+
+    private OpaqueTokenIntrospector active(Instant expiresAt) {
+        return token -> {
+            calls.incrementAndGet();
+            return new OAuth2IntrospectionAuthenticatedPrincipal(Map.of("sub", "user", "exp", expiresAt),
+                    List.of());
+        };
+    }
+}
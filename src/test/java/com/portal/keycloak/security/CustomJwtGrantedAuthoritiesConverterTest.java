@@ -0,0 +1,53 @@
+package com.portal.keycloak.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomJwtGrantedAuthoritiesConverterTest {
+
+    private final CustomJwtGrantedAuthoritiesConverter converter = new CustomJwtGrantedAuthoritiesConverter("department");
+
+    @Test
+    void mapsRealmAndClientRoles() {
+        Collection<GrantedAuthority> authorities = converter.convert(jwt("token-1", Instant.now().plusSeconds(300)));
+
+        assertThat(authorities).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("offline_access", "products:read");
+        assertThatThrownBy(() -> authorities.clear()).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void reusesAuthoritiesForSameToken() {
+        Jwt jwt = jwt("token-2", Instant.now().plusSeconds(300));
+
+        assertThat(converter.convert(jwt)).isSameAs(converter.convert(jwt));
+    }
+
+    @Test
+    void internsAuthoritiesAcrossTokens() {
+        GrantedAuthority first = converter.convert(jwt("token-3", Instant.now().plusSeconds(300))).iterator().next();
+        GrantedAuthority second = converter.convert(jwt("token-4", Instant.now().plusSeconds(300))).iterator().next();
+
+        assertThat(first).isSameAs(second);
+    }
+
+    private static Jwt jwt(String jti, Instant expiresAt) {
+        return Jwt.withTokenValue("value-" + jti)
+                .header("alg", "RS256")
+                .jti(jti)
+                .issuedAt(expiresAt.minusSeconds(600))
+                .expiresAt(expiresAt)
+                .claim("realm_access", Map.of("roles", List.of("offline_access")))
+                .claim("resource_access", Map.of("department", Map.of("roles", List.of("products:read"))))
+                .build();
+    }
+}
@@ -0,0 +1,95 @@
+package com.portal.keycloak.security;
+
+import com.portal.keycloak.support.StubOidcIssuer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class IssuerStartupTest {
+
+    private final StubOidcIssuer issuer = new StubOidcIssuer("customer");
+
+    private DeferredJwtDecoder decoder;
+
+    @AfterEach
+    void tearDown() {
+        if (decoder != null) {
+            decoder.stop();
+        }
+        issuer.close();
+    }
+
+    @Test
+    void startsWithoutWaitingForTheIssuer() {
+        issuer.setAvailable(false);
+        decoder = deferredDecoder(null);
+
+        long started = System.nanoTime();
+        decoder.start();
+        Duration startup = Duration.ofNanos(System.nanoTime() - started);
+
+        assertThat(startup).isLessThan(Duration.ofMillis(200));
+        assertThat(decoder.isReady()).isFalse();
+        assertThatThrownBy(() -> decoder.decode(mintToken())).isInstanceOf(BadJwtException.class);
+    }
+
+    @Test
+    void becomesReadyOnceTheIssuerIsReachable() throws InterruptedException {
+        issuer.setAvailable(false);
+        decoder = deferredDecoder(null);
+
+        decoder.start();
+        Thread.sleep(300);
+        issuer.setAvailable(true);
+
+        await().atMost(Duration.ofSeconds(5)).until(decoder::isReady);
+
+        Jwt jwt = decoder.decode(mintToken());
+        assertThat(jwt.getSubject()).isEqualTo("service-account-department");
+    }
+
+    @Test
+    void firstRequestLoadsTheIssuerLazily() {
+        decoder = deferredDecoder(null);
+
+        Jwt jwt = decoder.decode(mintToken());
+
+        assertThat(jwt.getClaimAsString("azp")).isEqualTo("department");
+        assertThat(issuer.getDiscoveryRequests()).isEqualTo(1);
+    }
+
+    @Test
+    void skipsDiscoveryWhenTheJwkSetUriIsConfigured() {
+        decoder = deferredDecoder(issuer.getJwkSetUri());
+        decoder.start();
+
+        await().atMost(Duration.ofSeconds(5)).until(decoder::isReady);
+
+        assertThat(decoder.decode(mintToken())).isNotNull();
+        assertThat(issuer.getDiscoveryRequests()).isZero();
+    }
+
+    private DeferredJwtDecoder deferredDecoder(String jwkSetUri) {
+        RestTemplate restTemplate = new RestTemplate();
+        JwkSetManager jwkSetManager = new JwkSetManager(restTemplate, Duration.ofMinutes(5), Duration.ZERO,
+                Duration.ofSeconds(5), Duration.ofMinutes(1), 100);
+        IssuerJwtDecoderFactory factory = new IssuerJwtDecoderFactory(issuer.getIssuerUri(), jwkSetUri, restTemplate,
+                jwkSetManager);
+        return new DeferredJwtDecoder(factory, Duration.ofMillis(50), Duration.ofMillis(200));
+    }
+
+    private String mintToken() {
+        return issuer.mintToken("service-account-department", List.of("offline_access"),
+                Map.of("department", List.of("products:read")));
+    }
+}
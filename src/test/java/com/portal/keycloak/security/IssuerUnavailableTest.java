@@ -0,0 +1,67 @@
+package com.portal.keycloak.security;
+
+import com.portal.keycloak.support.StubOidcIssuer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@ExtendWith(OutputCaptureExtension.class)
+class IssuerUnavailableTest {
+
+    private static final StubOidcIssuer issuer = new StubOidcIssuer("customer");
+
+    static {
+        issuer.setAvailable(false);
+    }
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private DeferredJwtDecoder jwtDecoder;
+
+    @DynamicPropertySource
+    static void issuerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.security.oauth2.resourceserver.jwt.issuer-uri", issuer::getIssuerUri);
+    }
+
+    @AfterAll
+    static void closeIssuer() {
+        issuer.close();
+    }
+
+    @Test
+    void rejectsTokensWithInvalidTokenWhileTheIssuerIsDown(CapturedOutput output) {
+        String token = issuer.mintToken("reader", List.of(), Map.of("department", List.of("products:read")));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(token);
+
+        ResponseEntity<String> response = restTemplate.exchange("/api/v2/products", HttpMethod.GET,
+                new HttpEntity<>(headers), String.class);
+
+        assertThat(jwtDecoder.isReady()).isFalse();
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.WWW_AUTHENTICATE)).contains("error=\"invalid_token\"");
+        assertThat(output).doesNotContain("Servlet.service()");
+    }
+}
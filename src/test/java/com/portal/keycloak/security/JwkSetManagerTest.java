@@ -0,0 +1,132 @@
+package com.portal.keycloak.security;
+
+import com.portal.keycloak.support.StubOidcIssuer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class JwkSetManagerTest {
+
+    private final StubOidcIssuer issuer = new StubOidcIssuer("customer");
+
+    private JwkSetManager jwkSetManager;
+
+    private JwtDecoder decoder;
+
+    @BeforeEach
+    void setUp() {
+        jwkSetManager = new JwkSetManager(new RestTemplate(), Duration.ofMinutes(5), Duration.ZERO,
+                Duration.ofSeconds(5), Duration.ofMinutes(1), 100);
+        decoder = new IssuerJwtDecoderFactory(issuer.getIssuerUri(), issuer.getJwkSetUri(), new RestTemplate(),
+                jwkSetManager).get();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jwkSetManager.stop();
+        issuer.close();
+    }
+
+    @Test
+    void selectsKnownKeysWithoutFetching() {
+        decoder.decode(mintToken());
+        decoder.decode(mintToken());
+
+        assertThat(issuer.getKeySetRequests()).isEqualTo(1);
+    }
+
+    @Test
+    void picksUpRotatedKeyOnFirstUnknownKid() {
+        decoder.decode(mintToken());
+
+        issuer.rotateKey(false);
+
+        assertThat(decoder.decode(mintToken()).getSubject()).isEqualTo("user");
+        assertThat(issuer.getKeySetRequests()).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentUnknownKidsShareOneRefetch() throws Exception {
+        issuer.rotateKey(true);
+        issuer.setKeySetDelay(Duration.ofMillis(300));
+        String token = mintToken();
+
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            List<Callable<String>> requests = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                requests.add(() -> decoder.decode(token).getSubject());
+            }
+            for (Future<String> result : executor.invokeAll(requests)) {
+                assertThat(result.get()).isEqualTo("user");
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(issuer.getKeySetRequests()).isEqualTo(2);
+    }
+
+    @Test
+    void remembersUnknownKids() {
+        String forged = StubOidcIssuer.sign(issuer.claims("user", List.of(), Map.of()), StubOidcIssuer.generateKey());
+
+        assertThatThrownBy(() -> decoder.decode(forged)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> decoder.decode(forged)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> decoder.decode(forged)).isInstanceOf(JwtException.class);
+
+        assertThat(issuer.getKeySetRequests()).isEqualTo(2);
+    }
+
+    @Test
+    void refreshesKeysInTheBackground() {
+        JwkSetManager refreshing = new JwkSetManager(new RestTemplate(), Duration.ofMillis(100), Duration.ofMinutes(1),
+                Duration.ofSeconds(5), Duration.ofMinutes(1), 100);
+        JwtDecoder refreshingDecoder = new IssuerJwtDecoderFactory(issuer.getIssuerUri(), issuer.getJwkSetUri(),
+                new RestTemplate(), refreshing).get();
+        try {
+            issuer.rotateKey(false);
+            await().atMost(Duration.ofSeconds(5)).until(() -> issuer.getKeySetRequests() >= 3);
+
+            assertThat(refreshingDecoder.decode(mintToken()).getSubject()).isEqualTo("user");
+        }
+        finally {
+            refreshing.stop();
+        }
+    }
+
+    @Test
+    void refetchesKeysWhenRestartedAfterACheckpoint() {
+        decoder.decode(mintToken());
+        jwkSetManager.stop();
+
+        // Keys rotated while the process was checkpointed
+        issuer.rotateKey(false);
+        jwkSetManager.start();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> issuer.getKeySetRequests() >= 2);
+        assertThat(decoder.decode(mintToken()).getSubject()).isEqualTo("user");
+        assertThat(issuer.getKeySetRequests()).isEqualTo(2);
+    }
+
+    private String mintToken() {
+        return issuer.mintToken("user", List.of("offline_access"), Map.of("department", List.of("products:read")));
+    }
+}
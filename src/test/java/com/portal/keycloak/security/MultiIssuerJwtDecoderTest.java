@@ -0,0 +1,204 @@
+package com.portal.keycloak.security;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.portal.keycloak.support.StubOidcIssuer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class MultiIssuerJwtDecoderTest {
+
+    private final StubOidcIssuer customer = new StubOidcIssuer("customer");
+
+    private final StubOidcIssuer partner = new StubOidcIssuer("partner");
+
+    private final Set<String> shutDownTenants = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger builtTenants = new AtomicInteger();
+
+    private TenantRegistry registry;
+
+    @AfterEach
+    void tearDown() {
+        registry.close();
+        customer.close();
+        partner.close();
+    }
+
+    @Test
+    void decodesTokensOfEachTrustedIssuerWithItsOwnClient() {
+        registry = registry(10);
+        MultiIssuerJwtDecoder decoder = new MultiIssuerJwtDecoder(registry);
+        MultiIssuerJwtGrantedAuthoritiesConverter converter = new MultiIssuerJwtGrantedAuthoritiesConverter();
+
+        Jwt customerJwt = decoder.decode(customer.mintToken("alice", List.of(),
+                Map.of("department", List.of("products:read"), "portal", List.of("orders:write"))));
+        Jwt partnerJwt = decoder.decode(partner.mintToken("bob", List.of(),
+                Map.of("department", List.of("products:read"), "portal", List.of("orders:write"))));
+
+        assertThat(converter.convert(customerJwt)).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("products:read");
+        assertThat(converter.convert(partnerJwt)).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("orders:write");
+        assertThat(registry.getSize()).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsUntrustedIssuersWithoutBuildingTenants() {
+        registry = registry(10);
+        MultiIssuerJwtDecoder decoder = new MultiIssuerJwtDecoder(registry);
+        JWTClaimsSet claims = new JWTClaimsSet.Builder(customer.claims("alice", List.of(), Map.of()))
+                .issuer("https://attacker.example/realms/customer")
+                .build();
+
+        assertThatThrownBy(() -> decoder.decode(customer.sign(claims))).isInstanceOf(BadJwtException.class)
+                .hasMessageContaining("not trusted");
+        assertThat(registry.getSize()).isZero();
+    }
+
+    @Test
+    void servesTheConfiguredIssuerWithItsOwnDecoder() {
+        JwtDecoder customerDecoder = token -> {
+            throw new BadJwtException("Served by the configured decoder");
+        };
+        registry = registry(10, 10, new TenantRegistry.Tenant(customer.getIssuerUri(), "department", customerDecoder,
+                customerDecoder,
+                new CustomJwtGrantedAuthoritiesConverter("department"), () -> {
+                }));
+        MultiIssuerJwtDecoder decoder = new MultiIssuerJwtDecoder(registry);
+
+        assertThatThrownBy(() -> decoder.decode(customer.mintToken("alice", List.of(), Map.of())))
+                .hasMessage("Served by the configured decoder");
+        decoder.decode(partner.mintToken("bob", List.of(), Map.of()));
+
+        assertThat(registry.getSize()).isEqualTo(1);
+        assertThat(builtTenants).hasValue(1);
+    }
+
+    @Test
+    void rejectsUnavailableIssuersWithoutCachingTheirTenants() {
+        registry = registry(10, 10, null);
+        MultiIssuerJwtDecoder decoder = new MultiIssuerJwtDecoder(registry);
+        String token = partner.mintToken("bob", List.of(), Map.of());
+        partner.setAvailable(false);
+
+        assertThatThrownBy(() -> decoder.decode(token)).isInstanceOf(BadJwtException.class)
+                .hasMessageContaining("not available");
+        assertThatThrownBy(() -> decoder.decode(token)).isInstanceOf(BadJwtException.class)
+                .hasMessageContaining("not available");
+
+        // The failure is remembered, so the issuer is not contacted again for every token
+        assertThat(builtTenants).hasValue(1);
+        assertThat(registry.getSize()).isZero();
+        assertThat(shutDownTenants).containsExactly(partner.getIssuerUri());
+    }
+
+    @Test
+    void limitsTheTenantsCreatedByOnePattern() {
+        registry = registry(10, 1, null);
+        MultiIssuerJwtDecoder decoder = new MultiIssuerJwtDecoder(registry);
+
+        decoder.decode(customer.mintToken("alice", List.of(), Map.of()));
+
+        assertThatThrownBy(() -> decoder.decode(partner.mintToken("bob", List.of(), Map.of())))
+                .isInstanceOf(BadJwtException.class)
+                .hasMessageContaining("maximum number of tenants");
+        assertThat(registry.getSize()).isEqualTo(1);
+        assertThat(builtTenants).hasValue(1);
+    }
+
+    @Test
+    void countsFailedBuildsAgainstThePatternUntilTheyExpire() {
+        registry = registry(10, 1, null, Duration.ofMillis(500));
+        MultiIssuerJwtDecoder decoder = new MultiIssuerJwtDecoder(registry);
+        String partnerToken = partner.mintToken("bob", List.of(), Map.of());
+        String customerToken = customer.mintToken("alice", List.of(), Map.of());
+        partner.setAvailable(false);
+
+        assertThatThrownBy(() -> decoder.decode(partnerToken)).hasMessageContaining("not available");
+        assertThatThrownBy(() -> decoder.decode(customerToken)).hasMessageContaining("maximum number of tenants");
+        assertThat(builtTenants).hasValue(1);
+
+        await().ignoreExceptionsInstanceOf(BadJwtException.class)
+                .untilAsserted(() -> assertThat(decoder.decode(customerToken).getSubject()).isEqualTo("alice"));
+        assertThat(builtTenants).hasValue(2);
+    }
+
+    @Test
+    void mapsAuthoritiesWithTheTenantThatDecodedTheToken() {
+        registry = registry(1);
+        MultiIssuerJwtDecoder decoder = new MultiIssuerJwtDecoder(registry);
+        MultiIssuerJwtGrantedAuthoritiesConverter converter = new MultiIssuerJwtGrantedAuthoritiesConverter();
+
+        Jwt customerJwt = decoder.decode(customer.mintToken("alice", List.of(),
+                Map.of("department", List.of("products:read"))));
+        decoder.decode(partner.mintToken("bob", List.of(), Map.of()));
+        await().untilAsserted(() -> assertThat(shutDownTenants).contains(customer.getIssuerUri()));
+
+        // The customer tenant was pushed out, the token still maps with it instead of building it again
+        assertThat(converter.convert(customerJwt)).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("products:read");
+        assertThat(builtTenants).hasValue(2);
+    }
+
+    @Test
+    void shutsDownTenantsPushedOutOfTheCache() {
+        registry = registry(1);
+        MultiIssuerJwtDecoder decoder = new MultiIssuerJwtDecoder(registry);
+
+        decoder.decode(customer.mintToken("alice", List.of(), Map.of()));
+        decoder.decode(partner.mintToken("bob", List.of(), Map.of()));
+
+        await().untilAsserted(() -> assertThat(shutDownTenants).hasSize(1));
+        assertThat(registry.getSize()).isEqualTo(1);
+    }
+
+    private TenantRegistry registry(long maximumSize) {
+        return registry(maximumSize, 10, null);
+    }
+
+    private TenantRegistry registry(long maximumSize, long maximumPerPattern, TenantRegistry.Tenant defaultTenant) {
+        return registry(maximumSize, maximumPerPattern, defaultTenant, Duration.ofHours(1));
+    }
+
+    private TenantRegistry registry(long maximumSize, long maximumPerPattern, TenantRegistry.Tenant defaultTenant,
+                                    Duration negativeCacheTtl) {
+        TrustedIssuers trustedIssuers = new TrustedIssuers(List.of("http://*/realms/*"),
+                Map.of("partner", "portal"), "department");
+        return new TenantRegistry(trustedIssuers, defaultTenant, issuer -> {
+            builtTenants.incrementAndGet();
+            String client = trustedIssuers.clientFor(issuer);
+            JwkSetManager jwkSetManager = new JwkSetManager(new RestTemplate(), Duration.ofMinutes(5), Duration.ZERO,
+                    Duration.ofSeconds(5), Duration.ofMinutes(1), 100);
+            Runnable shutdown = () -> {
+                jwkSetManager.stop();
+                shutDownTenants.add(issuer);
+            };
+            try {
+                JwtDecoder decoder = new IssuerJwtDecoderFactory(issuer, null, new RestTemplate(), jwkSetManager, client)
+                        .get();
+                return new TenantRegistry.Tenant(issuer, client, decoder, BackChannelLogout.decoder(issuer, jwkSetManager),
+                        new CustomJwtGrantedAuthoritiesConverter(client), shutdown);
+            }
+            catch (RuntimeException ex) {
+                shutdown.run();
+                throw ex;
+            }
+        }, maximumSize, Duration.ofHours(1), maximumPerPattern, negativeCacheTtl);
+    }
+}
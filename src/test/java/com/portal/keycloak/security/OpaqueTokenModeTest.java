@@ -0,0 +1,65 @@
+package com.portal.keycloak.security;
+
+import com.portal.keycloak.support.StubOidcIssuer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "application.security.opaque-token.enabled=true",
+        "application.security.revocation.enabled=true"
+})
+@ActiveProfiles("test")
+class OpaqueTokenModeTest {
+
+    private static final StubOidcIssuer issuer = new StubOidcIssuer("customer");
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @DynamicPropertySource
+    static void issuerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.security.oauth2.resourceserver.jwt.issuer-uri", issuer::getIssuerUri);
+    }
+
+    @AfterAll
+    static void closeIssuer() {
+        issuer.close();
+    }
+
+    @Test
+    void neitherBuildsNorWaitsForTheJwtDecoder() {
+        ResponseEntity<String> readiness = restTemplate.getForEntity("/actuator/health/readiness", String.class);
+
+        assertThat(readiness.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(context.getBeanNamesForType(DecoderReadiness.class)).isEmpty();
+        assertThat(context.getBean(OpaqueTokenIntrospector.class))
+                .isInstanceOf(RevocationCheckingOpaqueTokenIntrospector.class);
+        assertThat(issuer.getDiscoveryRequests()).isZero();
+        assertThat(issuer.getKeySetRequests()).isZero();
+    }
+
+    @Test
+    void loadsTheIssuerKeysForTheFirstLogoutToken() {
+        String logoutToken = issuer.mintLogoutToken("alice", "session", "department");
+
+        context.getBean(BackChannelLogout.class).logout(logoutToken);
+
+        assertThat(context.getBean(RevocationList.class).getSize()).isEqualTo(1);
+        assertThat(issuer.getKeySetRequests()).isEqualTo(1);
+    }
+}
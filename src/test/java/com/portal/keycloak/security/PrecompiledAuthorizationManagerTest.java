@@ -0,0 +1,125 @@
+package com.portal.keycloak.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrecompiledAuthorizationManagerTest {
+
+    private final PrecompiledAuthorizationManager manager = new PrecompiledAuthorizationManager();
+
+    private final CustomJwtAuthenticationConverter converter =
+            new CustomJwtAuthenticationConverter(new CustomJwtGrantedAuthoritiesConverter("department"));
+
+    @Test
+    void compilesAuthorityExpressions() {
+        assertThat(manager.compileExpression("hasAuthority('products:read')")).containsExactly("products:read");
+        assertThat(manager.compileExpression("hasAnyAuthority('a', 'b') or hasRole('admin')"))
+                .containsExactly("a", "b", "ROLE_admin");
+        assertThat(manager.compileExpression("hasAnyRole('ROLE_admin','user')")).containsExactly("ROLE_admin", "ROLE_user");
+        assertThat(manager.compileExpression("hasAuthority('a') and hasAuthority('b')")).isNull();
+        assertThat(manager.compileExpression("hasAuthority('a', 'b')")).isNull();
+        assertThat(manager.compileExpression("authentication.name == 'alice'")).isNull();
+    }
+
+    @Test
+    void checksTokenAuthoritiesByIndex() throws NoSuchMethodException {
+        Authentication reader = converter.convert(jwt("reader", List.of("products:read")));
+        Authentication guest = converter.convert(jwt("guest", List.of("customers:read")));
+
+        assertThat(reader).isInstanceOf(AuthoritySetJwtAuthenticationToken.class);
+        assertThat(check(reader, "getProducts").isGranted()).isTrue();
+        assertThat(check(guest, "getProducts").isGranted()).isFalse();
+        assertThat(check(guest, "getAnything").isGranted()).isTrue();
+    }
+
+    @Test
+    void checksOtherAuthenticationsByName() throws NoSuchMethodException {
+        Authentication user = new TestingAuthenticationToken("alice", "password", "ROLE_user");
+
+        assertThat(check(user, "getAnything").isGranted()).isTrue();
+        assertThat(check(user, "getProducts").isGranted()).isFalse();
+    }
+
+    @Test
+    void evaluatesOtherExpressionsWithSpel() throws NoSuchMethodException {
+        Authentication alice = new TestingAuthenticationToken("alice", "password", AuthorityUtils.NO_AUTHORITIES);
+        Authentication bob = new TestingAuthenticationToken("bob", "password", AuthorityUtils.NO_AUTHORITIES);
+
+        assertThat(check(alice, "getOwn").isGranted()).isTrue();
+        assertThat(check(bob, "getOwn").isGranted()).isFalse();
+    }
+
+    @Test
+    void reusesDecisions() throws NoSuchMethodException {
+        Authentication reader = converter.convert(jwt("reader", List.of("products:read")));
+
+        assertThat(check(reader, "getProducts")).isSameAs(check(reader, "getProducts"));
+    }
+
+    @Test
+    void grantsAuthoritiesOfRulesCompiledAfterTheTokenWasChecked() throws NoSuchMethodException {
+        Authentication reader = converter.convert(jwt("reader", List.of("products:read", "orders:read")));
+        PrecompiledAuthorizationManager other = new PrecompiledAuthorizationManager();
+
+        assertThat(check(reader, "getProducts").isGranted()).isTrue();
+        // A second manager and a rule compiled later get their own indices for the same token
+        assertThat(other.authorize(() -> reader, new SimpleMethodInvocation(new Endpoints(),
+                Endpoints.class.getMethod("getOrders"))).isGranted()).isTrue();
+        assertThat(check(reader, "getOrders").isGranted()).isTrue();
+        assertThat(((AuthoritySetJwtAuthenticationToken) reader).getAuthoritySet().containsAuthority("orders:read")).isTrue();
+        assertThat(((AuthoritySetJwtAuthenticationToken) reader).getAuthoritySet().containsAuthority("never:seen")).isFalse();
+    }
+
+    private AuthorizationResult check(Authentication authentication, String method) throws NoSuchMethodException {
+        return manager.authorize(() -> authentication,
+                new SimpleMethodInvocation(new Endpoints(), Endpoints.class.getMethod(method)));
+    }
+
+    private static Jwt jwt(String subject, List<String> clientRoles) {
+        Instant now = Instant.now();
+        return Jwt.withTokenValue("value-" + subject)
+                .header("alg", "RS256")
+                .subject(subject)
+                .jti(subject + "-" + now.toEpochMilli())
+                .issuedAt(now)
+                .expiresAt(now.plusSeconds(300))
+                .claim("realm_access", Map.of("roles", List.of("offline_access", "ROLE_user")))
+                .claim("resource_access", Map.of("department", Map.of("roles", clientRoles)))
+                .build();
+    }
+
+    public static class Endpoints {
+
+        @PreAuthorize("hasAuthority('products:read')")
+        public String getProducts() {
+            return "products";
+        }
+
+        @PreAuthorize("hasAnyAuthority('products:read', 'customers:read') or hasRole('user')")
+        public String getAnything() {
+            return "anything";
+        }
+
+        @PreAuthorize("hasAuthority('orders:read')")
+        public String getOrders() {
+            return "orders";
+        }
+
+        @PreAuthorize("authentication.name == 'alice'")
+        public String getOwn() {
+            return "own";
+        }
+    }
+}
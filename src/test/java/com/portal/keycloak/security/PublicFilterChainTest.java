@@ -0,0 +1,65 @@
+package com.portal.keycloak.security;
+
+import com.portal.keycloak.init.StubIssuerInitializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@ContextConfiguration(initializers = StubIssuerInitializer.class)
+class PublicFilterChainTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private FilterChainProxy filterChainProxy;
+
+    @Test
+    void ignoresBearerTokensOnPublicRoutes() {
+        ResponseEntity<String> customers = get("/api/v2/customers", "not-a-token");
+
+        assertThat(customers.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(customers.getBody()).isEqualTo("Hello Customers");
+        assertThat(get("/actuator/health", "not-a-token").getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void stillRejectsBadTokensOnProtectedRoutes() {
+        assertThat(get("/api/v2/products", "not-a-token").getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+        assertThat(get("/api/v2/products", null).getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+        assertThat(get("/actuator/prometheus", null).getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    void publicChainComesFirstWithoutBearerTokenProcessing() {
+        assertThat(filterChainProxy.getFilterChains()).hasSize(2);
+        assertThat(filterChainProxy.getFilterChains().get(0).getFilters())
+                .extracting(filter -> filter.getClass().getSimpleName())
+                .doesNotContain("BearerTokenAuthenticationFilter", "SecurityContextHolderFilter",
+                        "AnonymousAuthenticationFilter", "SessionManagementFilter");
+        assertThat(filterChainProxy.getFilterChains().get(1).getFilters())
+                .extracting(filter -> filter.getClass().getSimpleName())
+                .contains("BearerTokenAuthenticationFilter");
+    }
+
+    private ResponseEntity<String> get(String path, String token) {
+        HttpHeaders headers = new HttpHeaders();
+        if (token != null) {
+            headers.setBearerAuth(token);
+        }
+        return restTemplate.exchange(path, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+}
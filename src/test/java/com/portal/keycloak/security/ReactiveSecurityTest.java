@@ -0,0 +1,152 @@
+package com.portal.keycloak.security;
+
+import com.portal.keycloak.init.StubIssuerInitializer;
+import com.portal.keycloak.support.StubOidcIssuer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.NestedTestConfiguration;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "application.security.jwks.min-refetch-interval=0s")
+@ActiveProfiles({"test", "reactive"})
+@ContextConfiguration(initializers = StubIssuerInitializer.class)
+class ReactiveSecurityTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ReactiveIssuerJwtDecoder jwtDecoder;
+
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        await().atMost(Duration.ofSeconds(10)).until(jwtDecoder::isReady);
+        client = WebTestClient.bindToServer().baseUrl("http://localhost:" + port).build();
+    }
+
+    @Test
+    void customersArePublic() {
+        client.get().uri("/api/v2/customers")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Hello Customers");
+    }
+
+    @Test
+    void productsRequireAToken() {
+        client.get().uri("/api/v2/products")
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    @Test
+    void productsRequireTheClientRole() {
+        String token = StubIssuerInitializer.getIssuer().mintToken("user", List.of("offline_access"), Map.of());
+
+        client.get().uri("/api/v2/products")
+                .headers(headers -> headers.setBearerAuth(token))
+                .exchange()
+                .expectStatus().isForbidden();
+    }
+
+    @Test
+    void productsAcceptTokensWithTheClientRole() {
+        String token = StubIssuerInitializer.getIssuer().mintToken("user", List.of("offline_access"),
+                Map.of("department", List.of("products:read")));
+
+        client.get().uri("/api/v2/products")
+                .headers(headers -> headers.setBearerAuth(token))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Hello Products");
+    }
+
+    @Test
+    void refetchesKeysAfterARotation() {
+        StubOidcIssuer issuer = StubIssuerInitializer.getIssuer();
+        issuer.rotateKey(true);
+        String token = issuer.mintToken("user", List.of(), Map.of("department", List.of("products:read")));
+
+        client.get().uri("/api/v2/products")
+                .headers(headers -> headers.setBearerAuth(token))
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void reportsReadiness() {
+        client.get().uri("/actuator/health/readiness")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.status").isEqualTo("UP");
+    }
+
+    @Nested
+    @NestedTestConfiguration(NestedTestConfiguration.EnclosingConfiguration.OVERRIDE)
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+    @ActiveProfiles({"test", "reactive"})
+    @ExtendWith(OutputCaptureExtension.class)
+    class WhileTheIssuerIsDown {
+
+        private static final StubOidcIssuer issuer = new StubOidcIssuer("customer");
+
+        static {
+            issuer.setAvailable(false);
+        }
+
+        @LocalServerPort
+        private int issuerDownPort;
+
+        @Autowired
+        private ReactiveIssuerJwtDecoder issuerDownDecoder;
+
+        @DynamicPropertySource
+        static void issuerProperties(DynamicPropertyRegistry registry) {
+            registry.add("spring.security.oauth2.resourceserver.jwt.issuer-uri", issuer::getIssuerUri);
+        }
+
+        @AfterAll
+        static void closeIssuer() {
+            issuer.close();
+        }
+
+        @Test
+        void rejectsTokensWithInvalidToken(CapturedOutput output) {
+            String token = issuer.mintToken("reader", List.of(), Map.of("department", List.of("products:read")));
+
+            WebTestClient.bindToServer().baseUrl("http://localhost:" + issuerDownPort).build()
+                    .get().uri("/api/v2/products")
+                    .headers(headers -> headers.setBearerAuth(token))
+                    .exchange()
+                    .expectStatus().isUnauthorized()
+                    .expectHeader().value(HttpHeaders.WWW_AUTHENTICATE,
+                            value -> assertThat(value).contains("error=\"invalid_token\""));
+
+            assertThat(issuerDownDecoder.isReady()).isFalse();
+            assertThat(output).doesNotContain("AuthenticationServiceException");
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.portal.keycloak.security;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.portal.keycloak.support.StubOidcIssuer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.server.resource.introspection.BadOpaqueTokenException;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionAuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RevocationListTest {
+
+    private final StubOidcIssuer issuer = new StubOidcIssuer("customer");
+
+    private JwkSetManager jwkSetManager;
+
+    private RevocationList revocationList;
+
+    private CachingJwtDecoder cachingDecoder;
+
+    private JwtDecoder decoder;
+
+    private BackChannelLogout backChannelLogout;
+
+    @BeforeEach
+    void setUp() {
+        jwkSetManager = new JwkSetManager(new RestTemplate(), Duration.ofMinutes(5), Duration.ZERO,
+                Duration.ofSeconds(5), Duration.ofMinutes(1), 100);
+        JwtDecoder issuerDecoder = new IssuerJwtDecoderFactory(issuer.getIssuerUri(), issuer.getJwkSetUri(),
+                new RestTemplate(), jwkSetManager, "department").get();
+        revocationList = new RevocationList(Duration.ofHours(1), 100);
+        cachingDecoder = new CachingJwtDecoder(issuerDecoder, 100);
+        decoder = new RevocationCheckingJwtDecoder(cachingDecoder, revocationList);
+        backChannelLogout = new BackChannelLogout(BackChannelLogout.decoder(issuer.getIssuerUri(), jwkSetManager),
+                jwt -> "department", revocationList);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jwkSetManager.stop();
+        issuer.close();
+    }
+
+    @Test
+    void rejectsCachedTokensOfALoggedOutSession() throws Exception {
+        String token = mintToken("alice");
+        String otherSession = mintToken("alice");
+        decoder.decode(token);
+
+        backChannelLogout.logout(issuer.mintLogoutToken("alice", sessionOf(token), "department"));
+
+        assertThatThrownBy(() -> decoder.decode(token)).isInstanceOf(BadJwtException.class)
+                .hasMessageContaining("revoked");
+        assertThat(cachingDecoder.getHitCount()).isEqualTo(1);
+        assertThat(decoder.decode(otherSession).getSubject()).isEqualTo("alice");
+        assertThat(revocationList.getRejectionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsCachedIntrospectionResultsOfALoggedOutSession() {
+        Instant issuedAt = Instant.now();
+        // The token value doubles as its session, so each token is a session of its own
+        OpaqueTokenIntrospector introspection = token -> new OAuth2IntrospectionAuthenticatedPrincipal(
+                Map.of("active", true, "sub", "alice", "sid", token, "iat", issuedAt), List.of());
+        CachingOpaqueTokenIntrospector cachingIntrospector = new CachingOpaqueTokenIntrospector(introspection, 100,
+                Duration.ofMinutes(5));
+        OpaqueTokenIntrospector introspector = new RevocationCheckingOpaqueTokenIntrospector(cachingIntrospector,
+                revocationList);
+        introspector.introspect("session");
+
+        backChannelLogout.logout(issuer.mintLogoutToken("alice", "session", "department"));
+
+        assertThatThrownBy(() -> introspector.introspect("session")).isInstanceOf(BadOpaqueTokenException.class)
+                .hasMessageContaining("revoked");
+        assertThat(cachingIntrospector.getHitCount()).isEqualTo(1);
+        assertThat(introspector.introspect("other-session").getName()).isEqualTo("alice");
+        assertThat(revocationList.getRejectionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void revokesTokensOfASubjectIssuedUntilTheLogout() {
+        Instant loggedOutAt = Instant.now();
+        revocationList.revokeSubject("alice", loggedOutAt);
+
+        assertThat(revocationList.isRevoked(jwt("alice", "session", loggedOutAt.minusSeconds(60)))).isTrue();
+        assertThat(revocationList.isRevoked(jwt("alice", "session", loggedOutAt))).isTrue();
+        assertThat(revocationList.isRevoked(jwt("alice", "session", loggedOutAt.plusSeconds(1)))).isFalse();
+        assertThat(revocationList.isRevoked(jwt("bob", "session", loggedOutAt.minusSeconds(60)))).isFalse();
+    }
+
+    @Test
+    void rejectsInvalidLogoutTokens() {
+        String forOtherClient = issuer.mintLogoutToken("alice", "session", "portal");
+        String accessToken = mintToken("alice");
+        JWTClaimsSet accessClaims = issuer.claims("alice", List.of(), Map.of());
+        String withoutEvent = issuer.sign(accessClaims, StubOidcIssuer.LOGOUT_TOKEN_TYPE);
+        String withNonce = issuer.sign(new JWTClaimsSet.Builder(accessClaims)
+                .claim("events", Map.of(BackChannelLogout.LOGOUT_EVENT, Map.of()))
+                .claim("nonce", "nonce")
+                .build(), StubOidcIssuer.LOGOUT_TOKEN_TYPE);
+
+        assertThatThrownBy(() -> backChannelLogout.logout(forOtherClient)).isInstanceOf(BadJwtException.class)
+                .hasMessageContaining("not addressed");
+        assertThatThrownBy(() -> backChannelLogout.logout(accessToken)).isInstanceOf(BadJwtException.class)
+                .hasMessageContaining("typ");
+        assertThatThrownBy(() -> backChannelLogout.logout(withoutEvent)).isInstanceOf(BadJwtException.class)
+                .hasMessageContaining("no back-channel logout event");
+        assertThatThrownBy(() -> backChannelLogout.logout(withNonce)).isInstanceOf(BadJwtException.class)
+                .hasMessageContaining("nonce");
+        assertThat(revocationList.getSize()).isZero();
+    }
+
+    @Test
+    void dropsRevocationsOnceEveryMatchingTokenHasExpired() {
+        AtomicLong now = new AtomicLong(Instant.now().toEpochMilli());
+        RevocationList expiring = new RevocationList(Duration.ofMinutes(5), 100, new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(now.get());
+            }
+        });
+        expiring.revokeSession("first");
+
+        now.addAndGet(Duration.ofMinutes(6).toMillis());
+        expiring.revokeSession("second");
+
+        assertThat(expiring.getSize()).isEqualTo(1);
+        assertThat(expiring.isRevoked(jwt("alice", "first", Instant.now()))).isFalse();
+        assertThat(expiring.isRevoked(jwt("alice", "second", Instant.now()))).isTrue();
+    }
+
+    @Test
+    void growsBeyondTheExpectedRevocations() {
+        RevocationList small = new RevocationList(Duration.ofHours(1), 64);
+        for (int i = 0; i < 5_000; i++) {
+            small.revokeSession("session-" + i);
+        }
+
+        for (int i = 0; i < 5_000; i++) {
+            assertThat(small.isRevoked(jwt("alice", "session-" + i, Instant.now()))).isTrue();
+        }
+        assertThat(small.isRevoked(jwt("alice", "session-5000", Instant.now()))).isFalse();
+        assertThat(small.getSize()).isEqualTo(5_000);
+    }
+
+    @Test
+    void pollsLogoutAndAdminEvents() throws Exception {
+        issuer.registerClient("revocation", new StubOidcIssuer.RoleSpec("secret", List.of(), Map.of()));
+        AdminEventPoller poller = new AdminEventPoller(new RestTemplate(), issuer.getIssuerUri(), "revocation",
+                "secret", Duration.ofMinutes(1), Duration.ofHours(1), revocationList,
+                Thread.ofPlatform().daemon(true).factory());
+        String loggedOut = mintToken("alice");
+        String disabled = mintToken("bob");
+        String deleted = mintToken("carol");
+        issuer.addUserEvent("LOGIN", "alice", "other-session");
+        issuer.addUserEvent("LOGOUT", "alice", sessionOf(loggedOut));
+        issuer.addAdminEvent("UPDATE", "USER", "users/bob", "{\"username\":\"bob\",\"enabled\":false}");
+
+        poller.poll();
+
+        assertThatThrownBy(() -> decoder.decode(loggedOut)).isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> decoder.decode(disabled)).isInstanceOf(BadJwtException.class);
+        assertThat(decoder.decode(deleted).getSubject()).isEqualTo("carol");
+
+        issuer.addAdminEvent("DELETE", "USER", "users/carol", null);
+        poller.poll();
+
+        assertThatThrownBy(() -> decoder.decode(deleted)).isInstanceOf(BadJwtException.class);
+        assertThat(revocationList.getSize()).isEqualTo(3);
+        assertThat(issuer.getTokenRequests()).isEqualTo(1);
+    }
+
+    @Test
+    void looksUpUpdatedUsersWithoutARepresentation() {
+        issuer.registerClient("revocation", new StubOidcIssuer.RoleSpec("secret", List.of(), Map.of()));
+        AdminEventPoller poller = new AdminEventPoller(new RestTemplate(), issuer.getIssuerUri(), "revocation",
+                "secret", Duration.ofMinutes(1), Duration.ofHours(1), revocationList,
+                Thread.ofPlatform().daemon(true).factory());
+        String renamed = mintToken("dave");
+        String disabled = mintToken("erin");
+        issuer.setUserEnabled("dave", true);
+        issuer.setUserEnabled("erin", false);
+        issuer.addAdminEvent("UPDATE", "USER", "users/dave", null);
+        issuer.addAdminEvent("UPDATE", "USER", "users/erin", null);
+
+        poller.poll();
+
+        assertThat(decoder.decode(renamed).getSubject()).isEqualTo("dave");
+        assertThatThrownBy(() -> decoder.decode(disabled)).isInstanceOf(BadJwtException.class);
+    }
+
+    @Test
+    void readsTheEnabledFieldOfTheRepresentation() {
+        issuer.registerClient("revocation", new StubOidcIssuer.RoleSpec("secret", List.of(), Map.of()));
+        AdminEventPoller poller = new AdminEventPoller(new RestTemplate(), issuer.getIssuerUri(), "revocation",
+                "secret", Duration.ofMinutes(1), Duration.ofHours(1), revocationList,
+                Thread.ofPlatform().daemon(true).factory());
+        String annotated = mintToken("frank");
+        String disabled = mintToken("grace");
+        issuer.addAdminEvent("UPDATE", "USER", "users/frank",
+                "{\"attributes\":{\"enabled\":false},\"enabled\":true}");
+        issuer.addAdminEvent("UPDATE", "USER", "users/grace", "{\n\t\"username\":\t\"grace\",\n\t\"enabled\":\tfalse\n}");
+
+        poller.poll();
+
+        assertThat(decoder.decode(annotated).getSubject()).isEqualTo("frank");
+        assertThatThrownBy(() -> decoder.decode(disabled)).isInstanceOf(BadJwtException.class);
+    }
+
+    private String mintToken(String subject) {
+        return issuer.mintToken(subject, List.of(), Map.of("department", List.of("products:read")));
+    }
+
+    private static String sessionOf(String token) throws Exception {
+        return SignedJWT.parse(token).getJWTClaimsSet().getStringClaim("sid");
+    }
+
+    private static Jwt jwt(String subject, String sessionId, Instant issuedAt) {
+        return Jwt.withTokenValue("token")
+                .header("alg", "RS256")
+                .subject(subject)
+                .claim("sid", sessionId)
+                .issuedAt(issuedAt)
+                .expiresAt(issuedAt.plusSeconds(300))
+                .build();
+    }
+}
@@ -0,0 +1,94 @@
+package com.portal.keycloak.security;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.nimbusds.jose.proc.BadJWSException;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RoleClaimsJwtProcessorTest {
+
+    private RSAKey key;
+
+    private RoleClaimsJwtProcessor processor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        key = new RSAKeyGenerator(2048).keyID("key-1").generate();
+        processor = new RoleClaimsJwtProcessor("department");
+        processor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256,
+                new ImmutableJWKSet<>(new JWKSet(key.toPublicJWK()))));
+    }
+
+    @Test
+    void keepsOnlyTheConfiguredClientsRoles() throws Exception {
+        JWTClaimsSet claims = processor.process(mintToken(key), null);
+
+        assertThat(claims.getJSONObjectClaim("realm_access"))
+                .isEqualTo(Map.of("roles", List.of("offline_access")));
+        assertThat(claims.getJSONObjectClaim("resource_access"))
+                .isEqualTo(Map.of("department", Map.of("roles", List.of("products:read", "orders:write"))));
+    }
+
+    @Test
+    void readsOtherClaimsLikeNimbus() throws Exception {
+        SignedJWT token = mintToken(key);
+
+        JWTClaimsSet claims = processor.process(token, null);
+
+        JWTClaimsSet expected = token.getJWTClaimsSet();
+        assertThat(claims.getIssuer()).isEqualTo(expected.getIssuer());
+        assertThat(claims.getExpirationTime()).isEqualTo(expected.getExpirationTime());
+        assertThat(claims.getAudience()).isEqualTo(expected.getAudience());
+        assertThat(claims.getClaim("auth_time")).isEqualTo(expected.getClaim("auth_time")).isInstanceOf(Long.class);
+    }
+
+    @Test
+    void internsRolesAcrossTokens() throws Exception {
+        Object first = processor.process(mintToken(key), null).getJSONObjectClaim("realm_access").get("roles");
+        Object second = processor.process(mintToken(key), null).getJSONObjectClaim("realm_access").get("roles");
+
+        assertThat(((List<?>) first).get(0)).isSameAs(((List<?>) second).get(0));
+    }
+
+    @Test
+    void rejectsTokensSignedByAnotherKey() throws Exception {
+        SignedJWT forged = mintToken(new RSAKeyGenerator(2048).keyID("key-1").generate());
+
+        assertThatThrownBy(() -> processor.process(forged, null)).isInstanceOf(BadJWSException.class);
+    }
+
+    private static SignedJWT mintToken(RSAKey signingKey) throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer("http://localhost/realms/customer")
+                .subject("user")
+                .audience("account")
+                .expirationTime(new Date(System.currentTimeMillis() + 60_000))
+                .claim("auth_time", 1_700_000_000)
+                .claim("realm_access", Map.of("roles", List.of("offline_access")))
+                .claim("resource_access", Map.of(
+                        "account", Map.of("roles", List.of("manage-account", "view-profile")),
+                        "department", Map.of("roles", List.of("products:read", "orders:write"))))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(),
+                claims);
+        jwt.sign(new RSASSASigner(signingKey));
+        // Parse the serialized token, like the decoder does, so its payload is read from the encoded form
+        return SignedJWT.parse(jwt.serialize());
+    }
+}
@@ -0,0 +1,78 @@
+package com.portal.keycloak.security;
+
+import com.portal.keycloak.init.StubIssuerInitializer;
+import com.portal.keycloak.support.StubOidcIssuer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureObservability(tracing = false)
+@ActiveProfiles("test")
+@ContextConfiguration(initializers = StubIssuerInitializer.class)
+class SecurityMetricsTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private DeferredJwtDecoder issuerJwtDecoder;
+
+    @Test
+    void exposesHotPathMetricsForPrometheus() {
+        await().atMost(Duration.ofSeconds(10)).until(issuerJwtDecoder::isReady);
+        StubOidcIssuer issuer = StubIssuerInitializer.getIssuer();
+        String reader = issuer.mintToken("reader", List.of("offline_access"), Map.of("department", List.of("products:read")));
+        String guest = issuer.mintToken("guest", List.of("offline_access"), Map.of());
+
+        assertThat(getProducts(reader).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(getProducts(reader).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(getProducts(guest).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(getProducts("not-a-token").getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(reader);
+        ResponseEntity<String> scrape = restTemplate.exchange("/actuator/prometheus", HttpMethod.GET,
+                new HttpEntity<>(headers), String.class);
+
+        assertThat(scrape.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(scrape.getBody())
+                .contains("security_jwt_decode_seconds_count{outcome=\"success\"}")
+                .contains("security_jwt_decode_seconds_count{outcome=\"failure\"}")
+                .contains("security_jwt_decode_seconds_bucket")
+                .contains("security_jwt_cache_requests_total{result=\"hit\"}")
+                .contains("security_jwks_fetch_seconds_count{outcome=\"success\"}")
+                .contains("security_authorities_conversion_seconds_count")
+                .contains("security_authorities_roles_count")
+                .contains("security_authorization_denials_total{endpoint=\"TestController#getProducts\"} 1.0");
+    }
+
+    @Test
+    void noopInstanceRecordsNothing() {
+        SecurityMetrics.NOOP.recordKeySetFetch(System.nanoTime(), true);
+
+        assertThat(SecurityMetrics.NOOP.isEnabled()).isFalse();
+    }
+
+    private ResponseEntity<String> getProducts(String token) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBearerAuth(token);
+        return restTemplate.exchange("/api/v2/products", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+}
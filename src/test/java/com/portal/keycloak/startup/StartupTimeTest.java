@@ -0,0 +1,141 @@
+package com.portal.keycloak.startup;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Starts the extracted boot jar as a separate JVM in every mode whose artifacts were built, and reports the median
+ * time until the application reports itself started: the plain jar, with the AppCDS archive, AOT processed with the
+ * archive, and restored from a CRaC checkpoint.
+ * <p>
+ * Run with {@code ./gradlew startupTest} after {@code ./gradlew cdsArchive}, {@code ./gradlew cdsArchive -Paot}
+ * and optionally {@code ./gradlew cracCheckpoint -Pcrac.java=...}; {@code -Dstartup.runs=5} sets the starts per
+ * mode and {@code -Dstartup.crac-java} the CRaC JDK used for restoring. Modes without artifacts are left out.
+ */
+@Tag("startup")
+public class StartupTimeTest {
+
+    // Spring Boot's startup line; the process time includes JVM startup and class loading, which CDS shortens
+    private static final Pattern STARTED = Pattern.compile("Started \\w+ in [0-9.]+ seconds \\(process running for ([0-9.]+)\\)");
+
+    private static final Pattern RESTORED = Pattern.compile("restored JVM running for (\\d+) ms");
+
+    private static final Duration START_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final Path STARTUP_DIR = Path.of(System.getProperty("startup.dir", "build/startup"));
+
+    private static final String JAR = System.getProperty("startup.jar", "keycloak-0.0.1-SNAPSHOT.jar");
+
+    private static final String JAVA = System.getProperty("startup.java", "java");
+
+    private static final int RUNS = Integer.getInteger("startup.runs", 3);
+
+    @Test
+    void compareStartupModes() throws Exception {
+        List<Mode> modes = availableModes();
+        assumeTrue(!modes.isEmpty(), "No startup artifacts in " + STARTUP_DIR + ", run ./gradlew cdsArchive first");
+
+        List<String> report = new ArrayList<>();
+        for (Mode mode : modes) {
+            double[] millis = new double[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                millis[run] = start(mode);
+            }
+            Arrays.sort(millis);
+            report.add(String.format("%-10s median %6.0f ms  min %6.0f ms  max %6.0f ms", mode.name(),
+                    millis[RUNS / 2], millis[0], millis[RUNS - 1]));
+        }
+        report.forEach(System.out::println);
+    }
+
+    private static List<Mode> availableModes() {
+        List<Mode> modes = new ArrayList<>();
+        Path jvm = STARTUP_DIR.resolve("jvm");
+        Path aot = STARTUP_DIR.resolve("aot");
+        if (Files.exists(jvm.resolve(JAR))) {
+            modes.add(new Mode("jar", jvm, STARTED, List.of(JAVA, "-jar", JAR)));
+        }
+        if (Files.exists(jvm.resolve("application.jsa"))) {
+            modes.add(new Mode("cds", jvm, STARTED,
+                    List.of(JAVA, "-XX:SharedArchiveFile=application.jsa", "-Xlog:cds=off", "-jar", JAR)));
+        }
+        if (Files.exists(aot.resolve("application.jsa"))) {
+            modes.add(new Mode("aot+cds", aot, STARTED, List.of(JAVA, "-XX:SharedArchiveFile=application.jsa",
+                    "-Xlog:cds=off", "-Dspring.aot.enabled=true", "-jar", JAR)));
+        }
+        String cracJava = System.getProperty("startup.crac-java");
+        for (Path dir : List.of(jvm, aot)) {
+            if (cracJava != null && Files.isDirectory(dir.resolve("crac"))) {
+                modes.add(new Mode("crac-" + dir.getFileName(), dir, RESTORED,
+                        List.of(cracJava, "-XX:CRaCRestoreFrom=crac")));
+            }
+        }
+        return modes;
+    }
+
+    /**
+     * Start the application and stop it again once it is up
+     * @param mode Startup mode
+     * @return Milliseconds the JVM was running until the application was started or restored
+     */
+    private static double start(Mode mode) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(mode.command());
+        if (mode.startedLine() == STARTED) {
+            command.add("--server.port=0");
+        }
+        Process process = new ProcessBuilder(command)
+                .directory(mode.directory().toFile())
+                .redirectErrorStream(true)
+                .start();
+        try {
+            CompletableFuture<Double> started = CompletableFuture.supplyAsync(() -> awaitStarted(process, mode.startedLine()));
+            Double millis = started.completeOnTimeout(null, START_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS).join();
+            assertThat(millis).as("%s started within %s", mode.name(), START_TIMEOUT).isNotNull();
+            return millis;
+        }
+        finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static Double awaitStarted(Process process, Pattern startedLine) {
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                Matcher matcher = startedLine.matcher(line);
+                if (matcher.find()) {
+                    double value = Double.parseDouble(matcher.group(1));
+                    return startedLine == STARTED ? value * 1000 : value;
+                }
+            }
+            return null;
+        }
+        catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private record Mode(String name, Path directory, Pattern startedLine, List<String> command) {
+    }
+}
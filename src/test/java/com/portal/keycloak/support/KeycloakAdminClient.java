@@ -0,0 +1,213 @@
+package com.portal.keycloak.support;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admin API client shared by everything that talks to one Keycloak server: a {@link RestTemplate} over a pooled
+ * keep-alive connection manager, and a {@code master} realm admin token that is reused until shortly before it
+ * expires, so seeding many entities costs one request per entity rather than a token round-trip and a new
+ * connection each.
+ */
+public class KeycloakAdminClient {
+
+    private static final Map<String, KeycloakAdminClient> CLIENTS = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum pooled connections to the server, which bounds the useful concurrency of bulk seeding
+     */
+    public static final int MAX_CONNECTIONS = 64;
+
+    private static final Duration REFRESH_SKEW = Duration.ofSeconds(10);
+
+    private final String authServerUrl;
+
+    private final String username;
+
+    private final String password;
+
+    private final ObjectMapper objectMapper;
+
+    private final RestTemplate restTemplate;
+
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+
+    private volatile AdminToken token;
+
+    KeycloakAdminClient(String authServerUrl, String username, String password) {
+        this.authServerUrl = authServerUrl;
+        this.username = username;
+        this.password = password;
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(MAX_CONNECTIONS)
+                .setMaxConnPerRoute(MAX_CONNECTIONS)
+                .build();
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .build();
+        this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        // Representations leave most fields unset, which Keycloak expects to be absent rather than null
+        this.objectMapper = Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .build();
+        this.restTemplate.getMessageConverters().replaceAll(converter -> converter instanceof MappingJackson2HttpMessageConverter
+                ? new MappingJackson2HttpMessageConverter(objectMapper)
+                : converter);
+    }
+
+    /**
+     * Get the shared client of a Keycloak server
+     * @param authServerUrl Base URL of the server
+     * @param username Admin username in the master realm
+     * @param password Admin password
+     * @return Client shared by every caller using the same server URL
+     */
+    public static KeycloakAdminClient forServer(String authServerUrl, String username, String password) {
+        return CLIENTS.computeIfAbsent(authServerUrl, url -> new KeycloakAdminClient(url, username, password));
+    }
+
+    public String getAuthServerUrl() {
+        return authServerUrl;
+    }
+
+    /**
+     * Get the pooled rest template, also usable for requests that need no admin token
+     * @return Rest template
+     */
+    public RestTemplate getRestTemplate() {
+        return restTemplate;
+    }
+
+    public int getTokenRequests() {
+        return tokenRequests.get();
+    }
+
+    /**
+     * Get headers for a JSON admin API request
+     * @return Headers with the JSON content type and the cached admin token
+     */
+    public HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(getAccessToken());
+        return headers;
+    }
+
+    /**
+     * Replace a realm with a fresh import of a realm export, dropping everything tests added to it
+     * @param realm Realm name, which may differ from the name in the export to clone it
+     * @param representation JSON representation of the realm, as exported from the admin console
+     */
+    public void replaceRealm(String realm, byte[] representation) {
+        deleteRealm(realm);
+        createRealm(realm, representation);
+    }
+
+    /**
+     * Create a realm from a realm export
+     * @param realm Realm name, which may differ from the name in the export to clone it
+     * @param representation JSON representation of the realm, as exported from the admin console
+     */
+    public void createRealm(String realm, byte[] representation) {
+        try {
+            ObjectNode template = (ObjectNode) objectMapper.readTree(representation);
+            if (!realm.equals(template.path("realm").asText())) {
+                // Exported IDs are primary keys, which a second copy of the realm cannot reuse
+                template.findParents("id").forEach(node -> ((ObjectNode) node).remove("id"));
+                template.findParents("containerId").forEach(node -> ((ObjectNode) node).remove("containerId"));
+                template.put("realm", realm);
+            }
+            restTemplate.postForEntity(authServerUrl + "/admin/realms", new HttpEntity<>(template, jsonHeaders()), Void.class);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException("Failed to read the representation of realm " + realm, ex);
+        }
+    }
+
+    /**
+     * Delete a realm if it exists
+     * @param realm Realm name
+     */
+    public void deleteRealm(String realm) {
+        try {
+            restTemplate.exchange(authServerUrl + "/admin/realms/" + realm, HttpMethod.DELETE,
+                    new HttpEntity<>(jsonHeaders()), Void.class);
+        }
+        catch (HttpClientErrorException.NotFound ex) {
+            // Nothing to delete on a server that never imported the realm
+        }
+    }
+
+    /**
+     * Get the admin access token, fetching a new one when the cached token is about to expire
+     * @return Access token of the master realm admin
+     */
+    public String getAccessToken() {
+        AdminToken current = this.token;
+        if (current != null && current.isValid()) {
+            return current.value();
+        }
+        synchronized (this) {
+            current = this.token;
+            if (current == null || !current.isValid()) {
+                current = requestToken();
+                this.token = current;
+            }
+            return current.value();
+        }
+    }
+
+    private AdminToken requestToken() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("client_id", "admin-cli");
+        form.add("username", username);
+        form.add("password", password);
+        form.add("grant_type", "password");
+
+        tokenRequests.incrementAndGet();
+        Map<?, ?> response = restTemplate.postForObject(authServerUrl + "/realms/master/protocol/openid-connect/token",
+                new HttpEntity<>(form, headers), Map.class);
+        if (response == null || response.get("access_token") == null) {
+            throw new RuntimeException("Failed to obtain admin access token: " + response);
+        }
+        long expiresIn = ((Number) response.get("expires_in")).longValue();
+        // Refresh ahead of expiry, but never hold a short-lived token for less than half its lifetime
+        long refreshAfter = Math.max(expiresIn * 1000 / 2, expiresIn * 1000 - REFRESH_SKEW.toMillis());
+        return new AdminToken((String) response.get("access_token"), System.currentTimeMillis() + refreshAfter);
+    }
+
+    private record AdminToken(String value, long refreshAtMillis) {
+
+        boolean isValid() {
+            return System.currentTimeMillis() < refreshAtMillis;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.portal.keycloak.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.portal.keycloak.init.KeycloakContainerInitializer;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class KeycloakAdminClientTest {
+
+    private final AtomicInteger issued = new AtomicInteger();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Queue<String> requests = new ConcurrentLinkedQueue<>();
+
+    private final Queue<JsonNode> createdRealms = new ConcurrentLinkedQueue<>();
+
+    private volatile int expiresIn = 60;
+
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/realms/master/protocol/openid-connect/token", exchange -> {
+            byte[] body = ("{\"access_token\":\"token-" + issued.incrementAndGet() + "\",\"expires_in\":" + expiresIn + "}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/admin/realms", exchange -> {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            if (exchange.getRequestMethod().equals("POST")) {
+                createdRealms.add(objectMapper.readTree(exchange.getRequestBody()));
+                exchange.sendResponseHeaders(201, -1);
+            }
+            else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void concurrentCallersShareOneAdminToken() throws Exception {
+        KeycloakAdminClient client = new KeycloakAdminClient(serverUrl(), "admin", "secret");
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            List<Callable<String>> calls = IntStream.range(0, 200)
+                    .<Callable<String>>mapToObj(i -> client::getAccessToken)
+                    .toList();
+            for (Future<String> token : executor.invokeAll(calls)) {
+                assertThat(token.get()).isEqualTo("token-1");
+            }
+        }
+
+        assertThat(client.getTokenRequests()).isEqualTo(1);
+        assertThat(client.jsonHeaders().getFirst("Authorization")).isEqualTo("Bearer token-1");
+    }
+
+    @Test
+    void refreshesTokenBeforeItExpires() {
+        expiresIn = 1;
+        KeycloakAdminClient client = new KeycloakAdminClient(serverUrl(), "admin", "secret");
+
+        assertThat(client.getAccessToken()).isEqualTo("token-1");
+
+        // A one second token is refreshed after half its lifetime, before Keycloak would reject it
+        await().atMost(Duration.ofSeconds(1)).until(() -> client.getAccessToken().equals("token-2"));
+    }
+
+    @Test
+    void sharesOneClientPerServer() {
+        KeycloakAdminClient client = KeycloakAdminClient.forServer(serverUrl(), "admin", "secret");
+
+        assertThat(KeycloakAdminClient.forServer(serverUrl(), "admin", "secret")).isSameAs(client);
+    }
+
+    @Test
+    void clonesTemplateRealmWithoutExportedIds() throws Exception {
+        KeycloakAdminClient client = new KeycloakAdminClient(serverUrl(), "admin", "secret");
+        byte[] template = KeycloakContainerInitializer.realmRepresentation("customer");
+
+        client.replaceRealm("customer-copy", template);
+        client.createRealm("customer", template);
+
+        assertThat(requests).containsExactly("DELETE /admin/realms/customer-copy", "POST /admin/realms",
+                "POST /admin/realms");
+        JsonNode copy = createdRealms.poll();
+        assertThat(copy.path("realm").asText()).isEqualTo("customer-copy");
+        assertThat(copy.findValues("id")).isEmpty();
+        assertThat(copy.findValues("containerId")).isEmpty();
+        assertThat(copy.path("clients").findValuesAsText("clientId")).contains("department");
+        JsonNode original = createdRealms.poll();
+        assertThat(original.path("id").asText()).isEqualTo(objectMapper.readTree(template).path("id").asText());
+    }
+
+    private String serverUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+}
@@ -0,0 +1,109 @@
+package com.portal.keycloak.support;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Closed-loop load generator: a fixed number of workers each send requests back to back and record the latency
+ * of every request in their own buffer, which are merged into percentiles once the run is over.
+ */
+public class LoadGenerator {
+
+    private final HttpClient httpClient;
+
+    public LoadGenerator() {
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newCachedThreadPool())
+                .build();
+    }
+
+    /**
+     * Run a load test
+     * @param name Scenario name used in the report
+     * @param concurrency Number of concurrent workers
+     * @param requestsPerWorker Requests sent by each worker
+     * @param requests Builds the request for a given sequence number
+     * @return Latency percentiles, throughput and status codes of the run
+     */
+    public Result run(String name, int concurrency, int requestsPerWorker, IntFunction<HttpRequest> requests)
+            throws InterruptedException {
+        // Virtual workers keep the client side cheap at high concurrency levels
+        ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong failures = new AtomicLong();
+        AtomicLong sequence = new AtomicLong();
+        List<Future<long[]>> latencies = new ArrayList<>();
+        for (int worker = 0; worker < concurrency; worker++) {
+            latencies.add(workers.submit(() -> {
+                long[] samples = new long[requestsPerWorker];
+                start.await();
+                for (int i = 0; i < requestsPerWorker; i++) {
+                    HttpRequest request = requests.apply((int) sequence.getAndIncrement());
+                    long begin = System.nanoTime();
+                    HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                    samples[i] = System.nanoTime() - begin;
+                    if (response.statusCode() != 200) {
+                        failures.incrementAndGet();
+                    }
+                }
+                return samples;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        long[] all = new long[concurrency * requestsPerWorker];
+        int offset = 0;
+        try {
+            for (Future<long[]> worker : latencies) {
+                long[] samples = worker.get();
+                System.arraycopy(samples, 0, all, offset, samples.length);
+                offset += samples.length;
+            }
+        }
+        catch (ExecutionException ex) {
+            throw new IllegalStateException("Load worker failed", ex.getCause());
+        }
+        finally {
+            workers.shutdownNow();
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - begin);
+
+        Arrays.sort(all);
+        return new Result(name, concurrency, all.length, failures.get(), elapsed,
+                percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999));
+    }
+
+    private static Duration percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return Duration.ofNanos(sorted[Math.max(0, index)]);
+    }
+
+    public record Result(String name, int concurrency, long requests, long failures, Duration elapsed,
+                         Duration p50, Duration p99, Duration p999) {
+
+        public double requestsPerSecond() {
+            return requests / (elapsed.toNanos() / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s concurrency=%-4d requests=%-7d failures=%-4d rps=%10.1f p50=%8.3fms p99=%8.3fms p999=%8.3fms",
+                    name, concurrency, requests, failures, requestsPerSecond(),
+                    p50.toNanos() / 1e6, p99.toNanos() / 1e6, p999.toNanos() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.portal.keycloak.support;
+
+import org.keycloak.representations.idm.CredentialRepresentation;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.PartialImportRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.RolesRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Bulk provisioning of a realm for performance tests. Users, groups and client roles are sent in batches to the
+ * partial import endpoint, which creates a whole batch in one transaction, and group memberships or client roles
+ * set on the imported users and groups are created with them. Memberships of users that already exist go through
+ * the per-user admin API instead, with a bounded number of requests in flight.
+ * <p>
+ * Keycloak hashes every imported password, which dominates the import time of large realms; users without
+ * credentials, or a realm password policy with a low {@code hashIterations}, keep seeding bound by the database.
+ */
+public class RealmSeeder {
+
+    private final KeycloakAdminClient adminClient;
+
+    private final String realm;
+
+    private int batchSize = 500;
+
+    private int concurrency = 4;
+
+    private Consumer<Progress> progressListener = progress -> { };
+
+    public RealmSeeder(KeycloakAdminClient adminClient, String realm) {
+        this.adminClient = adminClient;
+        this.realm = realm;
+    }
+
+    /**
+     * Set the number of entities sent in one partial import request
+     * @param batchSize Entities per batch
+     * @return This seeder
+     */
+    public RealmSeeder batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Set the number of requests in flight at once, capped by the admin client's connection pool
+     * @param concurrency Concurrent requests
+     * @return This seeder
+     */
+    public RealmSeeder concurrency(int concurrency) {
+        this.concurrency = Math.min(concurrency, KeycloakAdminClient.MAX_CONNECTIONS);
+        return this;
+    }
+
+    /**
+     * Set the listener told about progress, at most once per second per stage
+     * @param progressListener Listener, called from the seeding threads
+     * @return This seeder
+     */
+    public RealmSeeder onProgress(Consumer<Progress> progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * Import users, with the group paths and client roles set on each of them
+     * @param users Users to create, consumed lazily
+     * @return Number of users created and the import throughput
+     */
+    public Report importUsers(Stream<UserRepresentation> users) throws InterruptedException {
+        return inBatches("users", users, batchSize, batch -> {
+            PartialImportRepresentation partialImport = partialImport();
+            partialImport.setUsers(batch);
+            return send(partialImport);
+        });
+    }
+
+    /**
+     * Import groups, with their sub-groups and the client roles mapped to them
+     * @param groups Groups to create, consumed lazily
+     * @return Number of groups created and the import throughput
+     */
+    public Report importGroups(Stream<GroupRepresentation> groups) throws InterruptedException {
+        return inBatches("groups", groups, batchSize, batch -> {
+            PartialImportRepresentation partialImport = partialImport();
+            partialImport.setGroups(batch);
+            return send(partialImport);
+        });
+    }
+
+    /**
+     * Import the roles of one client
+     * @param clientId Client ID, as shown in the admin console rather than the internal UUID
+     * @param roles Roles to create, consumed lazily
+     * @return Number of roles created and the import throughput
+     */
+    public Report importClientRoles(String clientId, Stream<RoleRepresentation> roles) throws InterruptedException {
+        return inBatches("client roles", roles, batchSize, batch -> {
+            RolesRepresentation rolesRepresentation = new RolesRepresentation();
+            rolesRepresentation.setClient(Map.of(clientId, batch));
+            PartialImportRepresentation partialImport = partialImport();
+            partialImport.setRoles(rolesRepresentation);
+            return send(partialImport);
+        });
+    }
+
+    /**
+     * Add existing users to existing groups, one admin API request per membership
+     * @param memberships User and group IDs to join
+     * @return Number of memberships added and the request throughput
+     */
+    public Report addGroupMembers(Stream<Membership> memberships) throws InterruptedException {
+        String usersUrl = adminClient.getAuthServerUrl() + "/admin/realms/" + realm + "/users/";
+        return inBatches("group members", memberships, 1, batch -> {
+            Membership membership = batch.get(0);
+            adminClient.getRestTemplate().exchange(usersUrl + membership.userId() + "/groups/" + membership.groupId(),
+                    HttpMethod.PUT, new HttpEntity<>(adminClient.jsonHeaders()), Void.class);
+            return 1;
+        });
+    }
+
+    /**
+     * Build an enabled user with a permanent password
+     * @param username Username, also used as the email address
+     * @param password Password
+     * @param firstName First name
+     * @param lastName Last name
+     * @return User representation
+     */
+    public static UserRepresentation user(String username, String password, String firstName, String lastName) {
+        CredentialRepresentation credential = new CredentialRepresentation();
+        credential.setType(CredentialRepresentation.PASSWORD);
+        credential.setValue(password);
+        credential.setTemporary(false);
+
+        UserRepresentation user = new UserRepresentation();
+        user.setUsername(username);
+        user.setEmail(username);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setEnabled(true);
+        user.setCredentials(List.of(credential));
+        return user;
+    }
+
+    private PartialImportRepresentation partialImport() {
+        PartialImportRepresentation partialImport = new PartialImportRepresentation();
+        partialImport.setIfResourceExists(PartialImportRepresentation.Policy.SKIP.name());
+        return partialImport;
+    }
+
+    private long send(PartialImportRepresentation partialImport) {
+        Map<?, ?> results = adminClient.getRestTemplate().postForObject(
+                adminClient.getAuthServerUrl() + "/admin/realms/" + realm + "/partialImport",
+                new HttpEntity<>(partialImport, adminClient.jsonHeaders()), Map.class);
+        if (results == null || !(results.get("added") instanceof Number added)) {
+            throw new IllegalStateException("Unexpected partial import response: " + results);
+        }
+        return added.longValue();
+    }
+
+    private <T> Report inBatches(String stage, Stream<T> items, int size, ToLongFunction<List<T>> sender)
+            throws InterruptedException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong lastProgress = new AtomicLong(System.nanoTime());
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        long begin = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor(); items) {
+            Iterator<T> iterator = items.iterator();
+            while (iterator.hasNext() && failure.get() == null) {
+                List<T> batch = new ArrayList<>(size);
+                while (batch.size() < size && iterator.hasNext()) {
+                    batch.add(iterator.next());
+                }
+                // Waiting for a permit before reading further keeps at most a few batches of a stream in memory
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        long done = completed.addAndGet(sender.applyAsLong(batch));
+                        long now = System.nanoTime();
+                        long last = lastProgress.get();
+                        if (now - last >= 1_000_000_000L && lastProgress.compareAndSet(last, now)) {
+                            progressListener.accept(new Progress(stage, done, Duration.ofNanos(now - begin)));
+                        }
+                    }
+                    catch (RuntimeException ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                    finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("Failed to seed " + stage + " into realm " + realm, failure.get());
+        }
+        Report report = new Report(stage, completed.get(), Duration.ofNanos(System.nanoTime() - begin));
+        progressListener.accept(new Progress(stage, report.created(), report.elapsed()));
+        return report;
+    }
+
+    public record Membership(String userId, String groupId) {
+    }
+
+    public record Progress(String stage, long completed, Duration elapsed) {
+
+        public double perSecond() {
+            return completed / Math.max(elapsed.toNanos() / 1_000_000_000.0, 1e-9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Seeding %-14s %8d done, %10.1f/s", stage, completed, perSecond());
+        }
+    }
+
+    public record Report(String stage, long created, Duration elapsed) {
+
+        public double perSecond() {
+            return created / Math.max(elapsed.toNanos() / 1_000_000_000.0, 1e-9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Seeded %-14s created=%-8d elapsed=%8.3fs rate=%10.1f/s",
+                    stage, created, elapsed.toNanos() / 1e9, perSecond());
+        }
+    }
+}
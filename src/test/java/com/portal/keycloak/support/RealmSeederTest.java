@@ -0,0 +1,145 @@
+package com.portal.keycloak.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RealmSeederTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Queue<JsonNode> imports = new ConcurrentLinkedQueue<>();
+
+    private final Queue<String> memberships = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/realms/master/protocol/openid-connect/token",
+                exchange -> respond(exchange, "{\"access_token\":\"admin\",\"expires_in\":60}"));
+        server.createContext("/admin/realms/perf/partialImport", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+                imports.add(body);
+                int added = 0;
+                for (String type : List.of("users", "groups")) {
+                    added += body.path(type).size();
+                }
+                for (JsonNode roles : body.path("roles").path("client")) {
+                    added += roles.size();
+                }
+                Thread.sleep(20);
+                respond(exchange, "{\"added\":" + added + ",\"skipped\":0,\"overwritten\":0}");
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        server.createContext("/admin/realms/perf/users/", exchange -> {
+            memberships.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void importsUsersInBoundedConcurrentBatches() throws Exception {
+        RealmSeeder seeder = new RealmSeeder(adminClient(), "perf").batchSize(100).concurrency(3);
+
+        RealmSeeder.Report report = seeder.importUsers(IntStream.range(0, 1050)
+                .mapToObj(i -> RealmSeeder.user("user" + i + "@example.com", "secret", "First", "Last")));
+
+        assertThat(report.created()).isEqualTo(1050);
+        assertThat(imports).hasSize(11);
+        assertThat(maxInFlight.get()).isBetween(2, 3);
+        JsonNode user = imports.peek().path("users").get(0);
+        assertThat(imports.peek().path("ifResourceExists").asText()).isEqualTo("SKIP");
+        assertThat(user.path("credentials").get(0).path("type").asText()).isEqualTo("password");
+        assertThat(user.has("id")).isFalse();
+    }
+
+    @Test
+    void serializesValuesThatFormatStringsWouldBreak() throws Exception {
+        RealmSeeder seeder = new RealmSeeder(adminClient(), "perf");
+
+        seeder.importUsers(Stream.of(RealmSeeder.user("quote\"@example.com", "p\\w\"d", "Zoë", "O'Neil")));
+
+        JsonNode user = imports.peek().path("users").get(0);
+        assertThat(user.path("username").asText()).isEqualTo("quote\"@example.com");
+        assertThat(user.path("credentials").get(0).path("value").asText()).isEqualTo("p\\w\"d");
+        assertThat(user.path("firstName").asText()).isEqualTo("Zoë");
+    }
+
+    @Test
+    void importsGroupsAndClientRolesAndAddsMembers() throws Exception {
+        RealmSeeder seeder = new RealmSeeder(adminClient(), "perf").concurrency(8);
+        GroupRepresentation group = new GroupRepresentation();
+        group.setName("engineering");
+        group.setClientRoles(Map.of("department", List.of("products:read")));
+        RoleRepresentation role = new RoleRepresentation();
+        role.setName("products:read");
+
+        assertThat(seeder.importGroups(Stream.of(group)).created()).isEqualTo(1);
+        assertThat(seeder.importClientRoles("department", Stream.of(role)).created()).isEqualTo(1);
+        RealmSeeder.Report members = seeder.addGroupMembers(IntStream.range(0, 50)
+                .mapToObj(i -> new RealmSeeder.Membership("u" + i, "g1")));
+
+        assertThat(members.created()).isEqualTo(50);
+        assertThat(memberships).hasSize(50).contains("PUT /admin/realms/perf/users/u7/groups/g1");
+        assertThat(imports).anySatisfy(body -> assertThat(body.path("roles").path("client").path("department").path(0)
+                .path("name").asText()).isEqualTo("products:read"));
+    }
+
+    private KeycloakAdminClient adminClient() {
+        return new KeycloakAdminClient("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort(),
+                "admin", "secret");
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package com.portal.keycloak.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal OpenID provider served from the test JVM: a discovery document and a JWKS for one realm, plus
+ * helpers to mint Keycloak shaped access tokens signed with the published key.
+ * <p>
+ * Clients and users registered with a {@link RoleSpec}, declared directly or read from a realm export with
+ * {@link #fromRealmExport(String, byte[])}, can also obtain tokens from the token endpoint with the client credentials and
+ * password grants, which lets tests written against the Keycloak container run on it unchanged.
+ * <p>
+ * Recorded user and admin events are served from the admin API's event endpoints, newest first, to any bearer
+ * token, and back-channel logout tokens can be minted for them. Accounts set with
+ * {@link #setUserEnabled(String, boolean)} are served from the admin API's user endpoint.
+ */
+public final class StubOidcIssuer implements AutoCloseable {
+
+    /**
+     * Header type of back-channel logout tokens, as Keycloak signs them
+     */
+    public static final JOSEObjectType LOGOUT_TOKEN_TYPE = new JOSEObjectType("logout+jwt");
+
+    private final String realm;
+
+    private final HttpServer server;
+
+    private final AtomicInteger discoveryRequests = new AtomicInteger();
+
+    private final AtomicInteger keySetRequests = new AtomicInteger();
+
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+
+    private final Map<String, RoleSpec> clients = new ConcurrentHashMap<>();
+
+    private final Map<String, RoleSpec> users = new ConcurrentHashMap<>();
+
+    private final List<Map<String, Object>> userEvents = new CopyOnWriteArrayList<>();
+
+    private final List<Map<String, Object>> adminEvents = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Boolean> userAccounts = new ConcurrentHashMap<>();
+
+    private volatile RSAKey signingKey;
+
+    private volatile List<RSAKey> publishedKeys;
+
+    private volatile boolean available = true;
+
+    private volatile Duration keySetDelay = Duration.ZERO;
+
+    private volatile Duration tokenLifetime = Duration.ofMinutes(5);
+
+    public StubOidcIssuer(String realm) {
+        this.realm = realm;
+        this.signingKey = generateKey();
+        this.publishedKeys = List.of(this.signingKey);
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException("Failed to start the stub issuer", ex);
+        }
+        this.server.createContext(realmPath() + "/.well-known/openid-configuration", this::handleDiscovery);
+        this.server.createContext(realmPath() + "/protocol/openid-connect/certs", this::handleKeySet);
+        this.server.createContext(realmPath() + "/protocol/openid-connect/token", this::handleToken);
+        this.server.createContext("/admin" + realmPath() + "/events", exchange -> handleEvents(exchange, userEvents));
+        this.server.createContext("/admin" + realmPath() + "/admin-events", exchange -> handleEvents(exchange, adminEvents));
+        this.server.createContext("/admin" + realmPath() + "/users/", this::handleUser);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.start();
+    }
+
+    /**
+     * Create an issuer with the confidential clients of a Keycloak realm export and the roles of their service
+     * accounts registered
+     * @param realm Realm name, which may differ from the name in the export
+     * @param realmExport JSON realm export, as imported into the Keycloak container
+     * @return Started issuer
+     */
+    public static StubOidcIssuer fromRealmExport(String realm, byte[] realmExport) {
+        JsonNode template;
+        try {
+            template = new ObjectMapper().readTree(realmExport);
+        }
+        catch (IOException ex) {
+            throw new IllegalArgumentException("Failed to read the realm export", ex);
+        }
+        StubOidcIssuer issuer = new StubOidcIssuer(realm);
+        Map<String, JsonNode> serviceAccounts = new HashMap<>();
+        template.path("users").forEach(user -> {
+            if (user.hasNonNull("serviceAccountClientId")) {
+                serviceAccounts.put(user.path("serviceAccountClientId").asText(), user);
+            }
+        });
+        template.path("clients").forEach(client -> {
+            String clientId = client.path("clientId").asText();
+            JsonNode serviceAccount = serviceAccounts.get(clientId);
+            if (client.hasNonNull("secret") && serviceAccount != null) {
+                issuer.registerClient(clientId, new RoleSpec(client.path("secret").asText(),
+                        textValues(serviceAccount.path("realmRoles")), clientRoles(serviceAccount.path("clientRoles"))));
+            }
+        });
+        return issuer;
+    }
+
+    private static List<String> textValues(JsonNode array) {
+        List<String> values = new ArrayList<>();
+        array.forEach(value -> values.add(value.asText()));
+        return values;
+    }
+
+    private static Map<String, List<String>> clientRoles(JsonNode clientRoles) {
+        Map<String, List<String>> roles = new LinkedHashMap<>();
+        clientRoles.properties().forEach(entry -> roles.put(entry.getKey(), textValues(entry.getValue())));
+        return roles;
+    }
+
+    public String getIssuerUri() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + realmPath();
+    }
+
+    /**
+     * Get the base URL of the server, in place of Keycloak's auth server URL
+     * @return Base URL without the realm path
+     */
+    public String getServerUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public String getTokenUri() {
+        return getIssuerUri() + "/protocol/openid-connect/token";
+    }
+
+    /**
+     * Register a confidential client whose client credentials tokens carry the given roles
+     * @param clientId Client ID, also the authorized party of its tokens
+     * @param roles Client secret and the roles of the client's service account
+     * @return This issuer
+     */
+    public StubOidcIssuer registerClient(String clientId, RoleSpec roles) {
+        clients.put(clientId, roles);
+        return this;
+    }
+
+    /**
+     * Register a user whose password grant tokens carry the given roles
+     * @param username Username, also the subject of its tokens
+     * @param roles Password and the roles of the user
+     * @return This issuer
+     */
+    public StubOidcIssuer registerUser(String username, RoleSpec roles) {
+        users.put(username, roles);
+        return this;
+    }
+
+    public String getJwkSetUri() {
+        return getIssuerUri() + "/protocol/openid-connect/certs";
+    }
+
+    public int getDiscoveryRequests() {
+        return discoveryRequests.get();
+    }
+
+    public int getKeySetRequests() {
+        return keySetRequests.get();
+    }
+
+    public int getTokenRequests() {
+        return tokenRequests.get();
+    }
+
+    /**
+     * Record a user event, as Keycloak stores it when events are enabled for the realm
+     * @param type Event type, e.g. LOGOUT
+     * @param userId Subject of the user
+     * @param sessionId Session the event belongs to
+     */
+    public void addUserEvent(String type, String userId, String sessionId) {
+        userEvents.addFirst(Map.of("time", System.currentTimeMillis(), "type", type, "realmId", realm,
+                "userId", userId, "sessionId", sessionId));
+    }
+
+    /**
+     * Record an admin event, as Keycloak stores it when admin events are enabled for the realm
+     * @param operationType CREATE, UPDATE, DELETE or ACTION
+     * @param resourceType Type of the resource, e.g. USER
+     * @param resourcePath Path of the resource below the realm, e.g. users/{id}
+     * @param representation JSON representation of the resource, or null
+     */
+    public void addAdminEvent(String operationType, String resourceType, String resourcePath, String representation) {
+        Map<String, Object> event = new HashMap<>(Map.of("time", System.currentTimeMillis(), "realmId", realm,
+                "operationType", operationType, "resourceType", resourceType, "resourcePath", resourcePath));
+        if (representation != null) {
+            event.put("representation", representation);
+        }
+        adminEvents.addFirst(event);
+    }
+
+    /**
+     * Create or update the account of a user served by the admin API's user endpoint
+     * @param userId Subject of the user
+     * @param enabled Whether the account is enabled
+     */
+    public void setUserEnabled(String userId, boolean enabled) {
+        userAccounts.put(userId, enabled);
+    }
+
+    /**
+     * Mint a back-channel logout token, as Keycloak posts it to a client when a session ends
+     * @param subject Subject of the session
+     * @param sessionId Session that ended, or null to log out every session of the subject
+     * @param audience Client the token is sent to
+     * @return Signed logout token
+     */
+    public String mintLogoutToken(String subject, String sessionId, String audience) {
+        Instant now = Instant.now();
+        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder()
+                .issuer(getIssuerUri())
+                .subject(subject)
+                .audience(audience)
+                .jwtID(UUID.randomUUID().toString())
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(tokenLifetime)))
+                .claim("typ", "Logout")
+                .claim("events", Map.of("http://schemas.openid.net/event/backchannel-logout", Map.of()));
+        if (sessionId != null) {
+            claims.claim("sid", sessionId);
+        }
+        return sign(claims.build(), LOGOUT_TOKEN_TYPE);
+    }
+
+    /**
+     * Make the issuer answer every request with 503, as Keycloak does while it is still booting
+     * @param available whether requests are served
+     */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    /**
+     * Set the lifetime of the tokens issued from now on
+     * @param tokenLifetime time between issue and expiry
+     */
+    public void setTokenLifetime(Duration tokenLifetime) {
+        this.tokenLifetime = tokenLifetime;
+    }
+
+    /**
+     * Delay every JWKS response, to simulate a slow identity provider
+     * @param keySetDelay delay applied before the key set is written
+     */
+    public void setKeySetDelay(Duration keySetDelay) {
+        this.keySetDelay = keySetDelay;
+    }
+
+    /**
+     * Publish a new signing key and sign every following token with it
+     * @param keepPrevious whether the previous key stays in the key set
+     * @return Key ID of the new signing key
+     */
+    public String rotateKey(boolean keepPrevious) {
+        RSAKey next = generateKey();
+        List<RSAKey> keys = new ArrayList<>();
+        keys.add(next);
+        if (keepPrevious) {
+            keys.addAll(publishedKeys);
+        }
+        publishedKeys = List.copyOf(keys);
+        signingKey = next;
+        return next.getKeyID();
+    }
+
+    /**
+     * Mint an access token carrying realm roles and client roles
+     * @param subject Subject of the token
+     * @param realmRoles Roles placed in realm_access
+     * @param clientRoles Roles per client placed in resource_access
+     * @return Signed token
+     */
+    public String mintToken(String subject, List<String> realmRoles, Map<String, List<String>> clientRoles) {
+        return sign(claims(subject, realmRoles, clientRoles));
+    }
+
+    /**
+     * Build the claims of a Keycloak access token issued by this issuer
+     * @param subject Subject of the token
+     * @param realmRoles Roles placed in realm_access
+     * @param clientRoles Roles per client placed in resource_access
+     * @return Claims valid for the token lifetime, five minutes unless set otherwise
+     */
+    public JWTClaimsSet claims(String subject, List<String> realmRoles, Map<String, List<String>> clientRoles) {
+        return claims(subject, clientRoles.isEmpty() ? "account" : clientRoles.keySet().iterator().next(),
+                realmRoles, clientRoles);
+    }
+
+    private JWTClaimsSet claims(String subject, String authorizedParty, List<String> realmRoles,
+                                Map<String, List<String>> clientRoles) {
+        Map<String, Object> resourceAccess = new LinkedHashMap<>();
+        clientRoles.forEach((client, roles) -> resourceAccess.put(client, Map.of("roles", roles)));
+
+        Instant now = Instant.now();
+        return new JWTClaimsSet.Builder()
+                .issuer(getIssuerUri())
+                .subject(subject)
+                .jwtID(UUID.randomUUID().toString())
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(tokenLifetime)))
+                .claim("typ", "Bearer")
+                .claim("azp", authorizedParty)
+                .claim("sid", UUID.randomUUID().toString())
+                .claim("preferred_username", subject)
+                .claim("realm_access", Map.of("roles", realmRoles))
+                .claim("resource_access", resourceAccess)
+                .build();
+    }
+
+    public String sign(JWTClaimsSet claims) {
+        return sign(claims, this.signingKey);
+    }
+
+    public String sign(JWTClaimsSet claims, JOSEObjectType type) {
+        return sign(claims, this.signingKey, type);
+    }
+
+    public static String sign(JWTClaimsSet claims, RSAKey key) {
+        return sign(claims, key, JOSEObjectType.JWT);
+    }
+
+    private static String sign(JWTClaimsSet claims, RSAKey key, JOSEObjectType type) {
+        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.RS256)
+                .type(type)
+                .keyID(key.getKeyID())
+                .build();
+        SignedJWT jwt = new SignedJWT(header, claims);
+        try {
+            jwt.sign(new RSASSASigner(key));
+        }
+        catch (JOSEException ex) {
+            throw new IllegalStateException("Failed to sign token", ex);
+        }
+        return jwt.serialize();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private String realmPath() {
+        return "/realms/" + realm;
+    }
+
+    private void handleDiscovery(HttpExchange exchange) throws IOException {
+        discoveryRequests.incrementAndGet();
+        String body = "{\"issuer\":\"" + getIssuerUri() + "\",\"jwks_uri\":\"" + getJwkSetUri() + "\","
+                + "\"token_endpoint\":\"" + getTokenUri() + "\",\"subject_types_supported\":[\"public\"]}";
+        respond(exchange, body);
+    }
+
+    private void handleKeySet(HttpExchange exchange) throws IOException {
+        keySetRequests.incrementAndGet();
+        Duration delay = keySetDelay;
+        if (!delay.isZero()) {
+            try {
+                Thread.sleep(delay.toMillis());
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<JWK> keys = new ArrayList<>();
+        publishedKeys.forEach(key -> keys.add(key.toPublicJWK()));
+        respond(exchange, new JWKSet(keys).toString());
+    }
+
+    private void handleToken(HttpExchange exchange) throws IOException {
+        tokenRequests.incrementAndGet();
+        Map<String, String> form = parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null && authorization.startsWith("Basic ")) {
+            String[] credentials = new String(Base64.getDecoder().decode(authorization.substring(6)), StandardCharsets.UTF_8)
+                    .split(":", 2);
+            form.putIfAbsent("client_id", URLDecoder.decode(credentials[0], StandardCharsets.UTF_8));
+            form.putIfAbsent("client_secret", URLDecoder.decode(credentials[1], StandardCharsets.UTF_8));
+        }
+
+        String clientId = form.getOrDefault("client_id", "");
+        RoleSpec client = clients.get(clientId);
+        JWTClaimsSet claims = null;
+        if ("client_credentials".equals(form.get("grant_type"))) {
+            if (client != null && client.secret().equals(form.get("client_secret"))) {
+                claims = claims("service-account-" + clientId, clientId, client.realmRoles(), client.clientRoles());
+            }
+        }
+        else if ("password".equals(form.get("grant_type"))) {
+            RoleSpec user = users.get(form.getOrDefault("username", ""));
+            // Public clients send no secret; confidential ones must send theirs
+            boolean clientValid = client == null || client.secret().equals(form.get("client_secret"));
+            if (user != null && clientValid && user.secret().equals(form.get("password"))) {
+                claims = claims(form.get("username"), clientId, user.realmRoles(), user.clientRoles());
+            }
+        }
+        if (claims == null) {
+            byte[] error = "{\"error\":\"invalid_grant\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(401, error.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(error);
+            }
+            return;
+        }
+        long expiresIn = Duration.between(Instant.now(), claims.getExpirationTime().toInstant()).toSeconds();
+        respond(exchange, "{\"access_token\":\"" + sign(claims) + "\",\"expires_in\":" + expiresIn
+                + ",\"token_type\":\"Bearer\"}");
+    }
+
+    private void handleEvents(HttpExchange exchange, List<Map<String, Object>> events) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            exchange.sendResponseHeaders(401, -1);
+            exchange.close();
+            return;
+        }
+        String query = exchange.getRequestURI().getRawQuery();
+        Map<String, String> parameters = parseForm(query != null ? query : "");
+        int first = Integer.parseInt(parameters.getOrDefault("first", "0"));
+        int max = Integer.parseInt(parameters.getOrDefault("max", "100"));
+        List<Map<String, Object>> page = events.stream().skip(first).limit(max).toList();
+        respond(exchange, new ObjectMapper().writeValueAsString(page));
+    }
+
+    private void handleUser(HttpExchange exchange) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            exchange.sendResponseHeaders(401, -1);
+            exchange.close();
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        String userId = path.substring(path.lastIndexOf('/') + 1);
+        Boolean enabled = userAccounts.get(userId);
+        if (enabled == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        respond(exchange, new ObjectMapper().writeValueAsString(Map.of("id", userId, "username", userId, "enabled", enabled)));
+    }
+
+    private static Map<String, String> parseForm(String body) {
+        Map<String, String> form = new HashMap<>();
+        for (String pair : body.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return form;
+    }
+
+    private void respond(HttpExchange exchange, String body) throws IOException {
+        if (!available) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static RSAKey generateKey() {
+        try {
+            return new RSAKeyGenerator(2048)
+                    .keyID(UUID.randomUUID().toString())
+                    .keyUse(KeyUse.SIGNATURE)
+                    .algorithm(JWSAlgorithm.RS256)
+                    .generate();
+        }
+        catch (JOSEException ex) {
+            throw new IllegalStateException("Failed to generate signing key", ex);
+        }
+    }
+
+    /**
+     * Credential and roles of a registered client or user
+     * @param secret Client secret or user password
+     * @param realmRoles Roles placed in realm_access
+     * @param clientRoles Roles per client placed in resource_access
+     */
+    public record RoleSpec(String secret, List<String> realmRoles, Map<String, List<String>> clientRoles) {
+    }
+}
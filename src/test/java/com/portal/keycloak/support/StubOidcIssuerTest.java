@@ -0,0 +1,82 @@
+package com.portal.keycloak.support;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.portal.keycloak.init.KeycloakContainerInitializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class StubOidcIssuerTest {
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    private StubOidcIssuer issuer;
+
+    @BeforeEach
+    void startIssuer() throws Exception {
+        issuer = StubOidcIssuer.fromRealmExport("customer-copy", KeycloakContainerInitializer.realmRepresentation("customer"));
+    }
+
+    @AfterEach
+    void stopIssuer() {
+        issuer.close();
+    }
+
+    @Test
+    void issuesServiceAccountTokensForClientsOfTheRealmExport() throws Exception {
+        Map<?, ?> response = requestToken(Map.of("grant_type", "client_credentials",
+                "client_id", "department", "client_secret", "**********"));
+
+        JWTClaimsSet claims = SignedJWT.parse((String) response.get("access_token")).getJWTClaimsSet();
+        assertThat(claims.getIssuer()).isEqualTo(issuer.getIssuerUri()).endsWith("/realms/customer-copy");
+        assertThat(claims.getStringClaim("azp")).isEqualTo("department");
+        assertThat(claims.getJSONObjectClaim("resource_access"))
+                .isEqualTo(Map.of("department", Map.of("roles", List.of("products:read"))));
+        assertThat(claims.getJSONObjectClaim("realm_access"))
+                .isEqualTo(Map.of("roles", List.of("default-roles-customer")));
+    }
+
+    @Test
+    void issuesPasswordGrantTokensForDeclaredUsers() throws Exception {
+        issuer.registerUser("alice", new StubOidcIssuer.RoleSpec("wonderland", List.of("offline_access"),
+                Map.of("department", List.of("orders:write"))));
+
+        Map<?, ?> response = requestToken(Map.of("grant_type", "password", "client_id", "frontend",
+                "username", "alice", "password", "wonderland"));
+
+        JWTClaimsSet claims = SignedJWT.parse((String) response.get("access_token")).getJWTClaimsSet();
+        assertThat(claims.getSubject()).isEqualTo("alice");
+        assertThat(claims.getStringClaim("azp")).isEqualTo("frontend");
+        assertThat(claims.getJSONObjectClaim("resource_access"))
+                .isEqualTo(Map.of("department", Map.of("roles", List.of("orders:write"))));
+    }
+
+    @Test
+    void rejectsWrongCredentials() {
+        assertThatExceptionOfType(HttpClientErrorException.Unauthorized.class)
+                .isThrownBy(() -> requestToken(Map.of("grant_type", "client_credentials",
+                        "client_id", "department", "client_secret", "wrong")));
+    }
+
+    private Map<?, ?> requestToken(Map<String, String> parameters) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        parameters.forEach(form::add);
+        return restTemplate.postForObject(issuer.getTokenUri(), new HttpEntity<>(form, headers), Map.class);
+    }
+}
@@ -0,0 +1,273 @@
+package com.portal.keycloak.support;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pre-minted access tokens for load tests, so that generating load never waits on the issuer.
+ * <p>
+ * {@link #fill} obtains one token per request in parallel, with a bounded number of token requests in flight, and
+ * every token is then renewed in the background once a share of its lifetime has passed, with its refresh token
+ * when the issuer returned one, which spares Keycloak the password hashing of another password grant. Tokens are
+ * handed out round-robin by sequence number or from a per-thread cursor; both are plain reads of the current
+ * token of a slot, so load threads never contend with each other or with the renewals.
+ */
+public class TokenPool implements AutoCloseable {
+
+    private final RestTemplate restTemplate;
+
+    private final String tokenUri;
+
+    private int concurrency = 16;
+
+    private double renewAfter = 0.75;
+
+    private final LongAdder mints = new LongAdder();
+
+    private final LongAdder renewals = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private List<TokenRequest> requests = List.of();
+
+    private AtomicReferenceArray<String> tokens = new AtomicReferenceArray<>(0);
+
+    // Only touched by the renewal of the slot, which never runs twice at once
+    private Grant[] grants = new Grant[0];
+
+    private final ThreadLocal<int[]> cursor = ThreadLocal.withInitial(
+            () -> new int[]{ThreadLocalRandom.current().nextInt(Math.max(1, this.tokens.length()))});
+
+    private ExecutorService workers;
+
+    private ScheduledExecutorService scheduler;
+
+    private Semaphore inFlight;
+
+    public TokenPool(RestTemplate restTemplate, String tokenUri) {
+        this.restTemplate = restTemplate;
+        this.tokenUri = tokenUri;
+    }
+
+    /**
+     * Set the number of token requests in flight at once, capped by the admin client's connection pool
+     * @param concurrency Concurrent token requests
+     * @return This pool
+     */
+    public TokenPool concurrency(int concurrency) {
+        this.concurrency = Math.min(concurrency, KeycloakAdminClient.MAX_CONNECTIONS);
+        return this;
+    }
+
+    /**
+     * Set when tokens are renewed
+     * @param renewAfter Share of a token's lifetime after which it is renewed, between 0 and 1
+     * @return This pool
+     */
+    public TokenPool renewAfter(double renewAfter) {
+        this.renewAfter = renewAfter;
+        return this;
+    }
+
+    /**
+     * Obtain a token for every request and keep renewing them until the pool is closed
+     * @param requests Token requests, one per slot of the pool
+     * @return This pool
+     * @throws IllegalStateException if a token cannot be obtained
+     */
+    public TokenPool fill(List<TokenRequest> requests) throws InterruptedException {
+        this.requests = List.copyOf(requests);
+        this.tokens = new AtomicReferenceArray<>(requests.size());
+        this.grants = new Grant[requests.size()];
+        this.inFlight = new Semaphore(this.concurrency);
+        this.workers = Executors.newVirtualThreadPerTaskExecutor();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("token-pool").daemon(true).factory());
+
+        List<Future<?>> minted = new ArrayList<>();
+        for (int slot = 0; slot < requests.size(); slot++) {
+            int current = slot;
+            minted.add(this.workers.submit(() -> {
+                obtain(current, false);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : minted) {
+                future.get();
+            }
+        }
+        catch (ExecutionException ex) {
+            close();
+            throw new IllegalStateException("Failed to fill the token pool", ex.getCause());
+        }
+        return this;
+    }
+
+    /**
+     * Get the token for a request sequence number, as passed by {@link LoadGenerator}
+     * @param sequence Sequence number of the request
+     * @return Currently valid token of the slot the sequence number falls on
+     */
+    public String token(int sequence) {
+        return this.tokens.get(Math.floorMod(sequence, this.tokens.length()));
+    }
+
+    /**
+     * Get the next token of the calling thread, which walks the slots from its own random start
+     * @return Currently valid token
+     */
+    public String next() {
+        int[] position = this.cursor.get();
+        int slot = position[0];
+        position[0] = slot + 1 == this.tokens.length() ? 0 : slot + 1;
+        return this.tokens.get(slot);
+    }
+
+    public int size() {
+        return this.tokens.length();
+    }
+
+    public long getMintCount() {
+        return this.mints.sum();
+    }
+
+    public long getRenewalCount() {
+        return this.renewals.sum();
+    }
+
+    public long getFailureCount() {
+        return this.failures.sum();
+    }
+
+    @Override
+    public void close() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+        if (this.workers != null) {
+            this.workers.shutdownNow();
+        }
+    }
+
+    private void obtain(int slot, boolean renewal) throws InterruptedException {
+        String refreshToken = renewal ? this.grants[slot].refreshToken() : null;
+        this.inFlight.acquire();
+        Grant grant;
+        try {
+            grant = refreshToken != null ? renew(slot, refreshToken) : request(this.requests.get(slot).form());
+        }
+        finally {
+            this.inFlight.release();
+        }
+        this.tokens.set(slot, grant.accessToken());
+        this.grants[slot] = grant;
+        if (renewal) {
+            this.renewals.increment();
+        }
+        else {
+            this.mints.increment();
+        }
+        scheduleRenewal(slot, (long) (grant.expiresInSeconds() * 1000 * this.renewAfter));
+    }
+
+    private Grant renew(int slot, String refreshToken) {
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("grant_type", "refresh_token");
+        form.put("refresh_token", refreshToken);
+        form.put("client_id", this.requests.get(slot).form().get("client_id"));
+        if (this.requests.get(slot).form().containsKey("client_secret")) {
+            form.put("client_secret", this.requests.get(slot).form().get("client_secret"));
+        }
+        try {
+            return request(form);
+        }
+        catch (RestClientException ex) {
+            // An expired or revoked refresh token falls back to the original grant
+            return request(this.requests.get(slot).form());
+        }
+    }
+
+    private void scheduleRenewal(int slot, long delayMillis) {
+        try {
+            this.scheduler.schedule(() -> this.workers.execute(() -> renewSlot(slot)), Math.max(delayMillis, 100),
+                    TimeUnit.MILLISECONDS);
+        }
+        catch (RuntimeException ex) {
+            // The pool has been closed
+        }
+    }
+
+    private void renewSlot(int slot) {
+        try {
+            obtain(slot, true);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (RuntimeException ex) {
+            // The current token stays in use while it is valid, the renewal is retried shortly
+            this.failures.increment();
+            scheduleRenewal(slot, 1000);
+        }
+    }
+
+    private Grant request(Map<String, String> parameters) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        parameters.forEach(form::add);
+        Map<?, ?> response = this.restTemplate.postForObject(this.tokenUri, new HttpEntity<>(form, headers), Map.class);
+        if (response == null || !(response.get("access_token") instanceof String accessToken)) {
+            throw new IllegalStateException("The token response of " + this.tokenUri + " has no access_token");
+        }
+        long expiresIn = response.get("expires_in") instanceof Number number ? number.longValue() : 60;
+        return new Grant(accessToken, (String) response.get("refresh_token"), expiresIn);
+    }
+
+    /**
+     * Form parameters of a token request
+     * @param form Parameters sent to the token endpoint
+     */
+    public record TokenRequest(Map<String, String> form) {
+
+        public static TokenRequest password(String clientId, String clientSecret, String username, String password) {
+            Map<String, String> form = new LinkedHashMap<>();
+            form.put("grant_type", "password");
+            form.put("client_id", clientId);
+            if (clientSecret != null) {
+                form.put("client_secret", clientSecret);
+            }
+            form.put("username", username);
+            form.put("password", password);
+            return new TokenRequest(Map.copyOf(form));
+        }
+
+        public static TokenRequest clientCredentials(String clientId, String clientSecret) {
+            return new TokenRequest(Map.of("grant_type", "client_credentials", "client_id", clientId,
+                    "client_secret", clientSecret));
+        }
+    }
+
+    private record Grant(String accessToken, String refreshToken, long expiresInSeconds) {
+    }
+}
@@ -0,0 +1,96 @@
+package com.portal.keycloak.support;
+
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.awaitility.Awaitility.await;
+
+class TokenPoolTest {
+
+    private static final int USERS = 50;
+
+    private final StubOidcIssuer issuer = new StubOidcIssuer("customer");
+
+    private TokenPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+        issuer.close();
+    }
+
+    @Test
+    void mintsOneTokenPerUserWithTheirOwnRoles() throws Exception {
+        pool = new TokenPool(new RestTemplate(), issuer.getTokenUri()).concurrency(8).fill(users());
+
+        assertThat(pool.size()).isEqualTo(USERS);
+        assertThat(pool.getMintCount()).isEqualTo(USERS);
+        Set<String> subjects = new HashSet<>();
+        for (int i = 0; i < USERS; i++) {
+            SignedJWT token = SignedJWT.parse(pool.token(i));
+            subjects.add(token.getJWTClaimsSet().getSubject());
+            assertThat(token.getJWTClaimsSet().getJSONObjectClaim("resource_access"))
+                    .isEqualTo(Map.of("department", Map.of("roles", List.of("role-" + (i % 5)))));
+        }
+        assertThat(subjects).hasSize(USERS);
+    }
+
+    @Test
+    void handsOutEverySlotRoundRobinFromEachThread() throws Exception {
+        pool = new TokenPool(new RestTemplate(), issuer.getTokenUri()).fill(users());
+
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < USERS; i++) {
+            tokens.add(pool.next());
+        }
+
+        assertThat(tokens).hasSize(USERS);
+        assertThat(pool.token(-1)).isEqualTo(pool.token(USERS - 1));
+    }
+
+    @Test
+    void renewsTokensBeforeTheyExpire() throws Exception {
+        issuer.setTokenLifetime(Duration.ofSeconds(2));
+        pool = new TokenPool(new RestTemplate(), issuer.getTokenUri()).renewAfter(0.5).fill(users());
+        List<String> first = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            first.add(pool.token(i));
+        }
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> pool.getRenewalCount() >= USERS);
+
+        for (int i = 0; i < USERS; i++) {
+            assertThat(pool.token(i)).isNotEqualTo(first.get(i));
+        }
+        assertThat(pool.getFailureCount()).isZero();
+    }
+
+    @Test
+    void failsToFillWithWrongCredentials() {
+        assertThatIllegalStateException().isThrownBy(() -> new TokenPool(new RestTemplate(), issuer.getTokenUri())
+                .fill(List.of(TokenPool.TokenRequest.password("frontend", null, "nobody", "secret"))));
+    }
+
+    private List<TokenPool.TokenRequest> users() {
+        List<TokenPool.TokenRequest> requests = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            issuer.registerUser("user-" + i, new StubOidcIssuer.RoleSpec("password-" + i, List.of(),
+                    Map.of("department", List.of("role-" + (i % 5)))));
+            requests.add(TokenPool.TokenRequest.password("frontend", null, "user-" + i, "password-" + i));
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,176 @@
+package com.portal.keycloak.web;
+
+import com.portal.keycloak.init.StubIssuerInitializer;
+import com.portal.keycloak.security.DeferredJwtDecoder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PostAuthorize;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@ContextConfiguration(initializers = StubIssuerInitializer.class)
+class ResponseCacheTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private DeferredJwtDecoder jwtDecoder;
+
+    @BeforeEach
+    void setUp() {
+        await().atMost(Duration.ofSeconds(30)).until(jwtDecoder::isReady);
+        responseCache.invalidateAll();
+    }
+
+    @Test
+    void answersAMatchingETagWith304() {
+        ResponseEntity<String> first = get("/api/v2/customers", null, null);
+        String eTag = first.getHeaders().getETag();
+
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(eTag).isNotNull();
+        assertThat(first.getHeaders().getCacheControl()).isEqualTo(ResponseCache.CACHE_CONTROL);
+        assertThat(first.getHeaders().getVary()).contains(HttpHeaders.ACCEPT);
+
+        long hits = responseCache.getHitCount();
+        ResponseEntity<String> cached = get("/api/v2/customers", null, null);
+        assertThat(cached.getBody()).isEqualTo("Hello Customers");
+        assertThat(cached.getHeaders().getETag()).isEqualTo(eTag);
+        assertThat(cached.getHeaders().getContentType()).isEqualTo(first.getHeaders().getContentType());
+        assertThat(cached.getHeaders().getVary()).contains(HttpHeaders.ACCEPT);
+        assertThat(responseCache.getHitCount()).isEqualTo(hits + 1);
+
+        ResponseEntity<String> notModified = get("/api/v2/customers", null, "W/" + eTag);
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(notModified.getBody()).isNull();
+    }
+
+    @Test
+    void answersAMatchingETagWith304AfterAMiss() {
+        String eTag = get("/api/v2/customers", null, null).getHeaders().getETag();
+        responseCache.invalidateAll();
+
+        ResponseEntity<String> notModified = get("/api/v2/customers", null, eTag);
+
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(notModified.getHeaders().getETag()).isEqualTo(eTag);
+        assertThat(notModified.getHeaders().getCacheControl()).isEqualTo(ResponseCache.CACHE_CONTROL);
+        assertThat(responseCache.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    void checksPreAuthorizeBeforeAnsweringFromTheCache() {
+        String reader = StubIssuerInitializer.getIssuer().mintToken("reader", List.of(),
+                Map.of("department", List.of("products:read")));
+        String other = StubIssuerInitializer.getIssuer().mintToken("other", List.of(),
+                Map.of("department", List.of("customers:read")));
+
+        String eTag = get("/api/v2/products", reader, null).getHeaders().getETag();
+        assertThat(get("/api/v2/products", reader, eTag).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        assertThat(get("/api/v2/products", other, eTag).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(get("/api/v2/products", null, eTag).getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    void keepsLargeBodiesGzippedWithTheirOwnETag() {
+        byte[] body = "Hello Products ".repeat(100).getBytes();
+        ResponseCache.Entry entry = ResponseCache.Entry.of("text/plain", body, 1, 256);
+        ResponseCache.Entry small = ResponseCache.Entry.of("text/plain", "Hello".getBytes(), 1, 256);
+
+        assertThat(entry.isGzipped()).isTrue();
+        assertThat(entry.getBody(true).length).isLessThan(body.length);
+        assertThat(entry.getETag(true)).isNotEqualTo(entry.getETag(false));
+        assertThat(entry.matches("\"other\", " + entry.getETag(true))).isTrue();
+        assertThat(entry.matches("W/" + entry.getETag(false))).isTrue();
+        assertThat(entry.matches("\"other\"")).isFalse();
+        assertThat(small.isGzipped()).isFalse();
+        assertThat(small.getBody(true)).isEqualTo("Hello".getBytes());
+        assertThat(entry.getVary()).isEqualTo("Accept, Accept-Encoding");
+        assertThat(small.getVary()).isEqualTo("Accept");
+    }
+
+    @Test
+    void sendsGzipOnlyWhereItIsAccepted() {
+        assertThat(ResponseCacheInterceptor.acceptsGzip("gzip, deflate, br")).isTrue();
+        assertThat(ResponseCacheInterceptor.acceptsGzip("br;q=1.0, gzip;q=0.5")).isTrue();
+        assertThat(ResponseCacheInterceptor.acceptsGzip("*")).isTrue();
+        assertThat(ResponseCacheInterceptor.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(ResponseCacheInterceptor.acceptsGzip("gzip ; q=0.000, *")).isFalse();
+        assertThat(ResponseCacheInterceptor.acceptsGzip("identity, *;q=0")).isFalse();
+        assertThat(ResponseCacheInterceptor.acceptsGzip("deflate")).isFalse();
+        assertThat(ResponseCacheInterceptor.acceptsGzip(null)).isFalse();
+    }
+
+    @Test
+    void refusesEndpointsWhoseMethodSecurityNeedsTheInvocation() throws Exception {
+        ResponseCache cache = new ResponseCache(10, Duration.ofMinutes(1), 256);
+
+        assertThatThrownBy(() -> cache.policy(PostAuthorizedEndpoint.class.getMethod("get"), PostAuthorizedEndpoint.class))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("@PostAuthorize");
+    }
+
+    @Test
+    void keysOnTheCallerOnlyWhereTheContentDependsOnIt() {
+        ResponseCache.Policy shared = new ResponseCache.Policy(true, 1, CachedResponse.Vary.NONE);
+        ResponseCache.Policy perAuthorities = new ResponseCache.Policy(true, 1, CachedResponse.Vary.AUTHORITIES);
+        ResponseCache.Policy perPrincipal = new ResponseCache.Policy(true, 1, CachedResponse.Vary.PRINCIPAL);
+        TestingAuthenticationToken alice = new TestingAuthenticationToken("alice", null, "products:read");
+        TestingAuthenticationToken bob = new TestingAuthenticationToken("bob", null, "products:read");
+        TestingAuthenticationToken reordered = new TestingAuthenticationToken("carol", null, "products:read", "customers:read");
+        TestingAuthenticationToken carol = new TestingAuthenticationToken("carol", null, "customers:read", "products:read");
+
+        assertThat(ResponseCache.key(shared, "/p", null, null, alice)).isEqualTo(ResponseCache.key(shared, "/p", null, null, bob));
+        assertThat(ResponseCache.key(perAuthorities, "/p", null, null, alice))
+                .isEqualTo(ResponseCache.key(perAuthorities, "/p", null, null, bob));
+        assertThat(ResponseCache.key(perAuthorities, "/p", null, null, reordered))
+                .isEqualTo(ResponseCache.key(perAuthorities, "/p", null, null, carol))
+                .isNotEqualTo(ResponseCache.key(perAuthorities, "/p", null, null, alice));
+        assertThat(ResponseCache.key(perPrincipal, "/p", null, null, alice))
+                .isNotEqualTo(ResponseCache.key(perPrincipal, "/p", null, null, bob));
+    }
+
+    static class PostAuthorizedEndpoint {
+
+        @CachedResponse
+        @PostAuthorize("returnObject == authentication.name")
+        public String get() {
+            return "alice";
+        }
+    }
+
+    private ResponseEntity<String> get(String path, String token, String ifNoneMatch) {
+        HttpHeaders headers = new HttpHeaders();
+        if (token != null) {
+            headers.setBearerAuth(token);
+        }
+        if (ifNoneMatch != null) {
+            headers.setIfNoneMatch(ifNoneMatch);
+        }
+        return restTemplate.exchange(path, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+}